@@ -1,7 +1,11 @@
+import hashtable.Flow;
 import hashtable.HashTable;
+import hashtable.HashTableIngester;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.util.AbstractMap;
+import java.util.Map;
 import java.util.Scanner;
 
 public class HashTableDriver
@@ -30,14 +34,76 @@ public class HashTableDriver
 			e.printStackTrace();
 		}
 		
-		while (input1.hasNext())
+		putFrom(input1, h);
+		putFrom(input2, h);
+	}
+	
+	/**
+	 * Puts every word of a scanner into a table, as both key and value. Words are read only as the table's ingester requests them.
+	 * @param input The scanner.
+	 * @param h The table.
+	 */
+	private static void putFrom(final Scanner input, final HashTable h)
+	{
+		final HashTableIngester ingester = new HashTableIngester(h);
+		new WordPublisher(input).subscribe(ingester);
+		ingester.getCompletion().join();
+	}
+	
+	/**
+	 * Publishes the words of a scanner to a single subscriber, reading a word only once it has been requested. Words are sent on the requesting thread.
+	 */
+	private static final class WordPublisher implements Flow.Publisher<Map.Entry<String, String>>, Flow.Subscription
+	{
+		private final Scanner input;
+		private Flow.Subscriber<? super Map.Entry<String, String>> subscriber;
+		private long demand;		// Number of words requested and not yet sent
+		private boolean sending;	// Set while words are being sent, so that requests made from onNext only add to the demand
+		private boolean done;
+		
+		WordPublisher(final Scanner input)
 		{
-			h.put(input1.next());
+			this.input = input;
+		}
+		
+		@Override
+		public void subscribe(final Flow.Subscriber<? super Map.Entry<String, String>> subscriber)
+		{
+			this.subscriber = subscriber;
+			subscriber.onSubscribe(this);
+		}
+		
+		@Override
+		public void request(final long n)
+		{
+			demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+			if (sending)
+			{
+				return;
+			}
+		
+			sending = true;
+			while (!done && demand > 0)
+			{
+				if (!input.hasNext())
+				{
+					done = true;
+					subscriber.onComplete();
+				}
+				else
+				{
+					demand--;
+					final String word = input.next();
+					subscriber.onNext(new AbstractMap.SimpleImmutableEntry<>(word, word));
+				}
+			}
+			sending = false;
 		}
 		
-		while (input2.hasNext())
+		@Override
+		public void cancel()
 		{
-			h.put(input2.next());
+			done = true;
 		}
 	}
 }
\ No newline at end of file
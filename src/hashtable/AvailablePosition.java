@@ -0,0 +1,9 @@
+package hashtable;
+
+class AvailablePosition extends Position
+{
+	public AvailablePosition(final int index)
+	{
+		super(null, index);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,176 @@
+package hashtable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs the background resizes of a HashTable. A resize rehashes a snapshot of the positions into a larger table on an executor, while the writer keeps
+ * putting and removing on the current table. Every update made meanwhile is recorded, and replayed onto the larger table once it is done, which
+ * corrects the entries the snapshot read before they were updated.
+ *
+ * Every method is called by the table's writer, under its write lock, so only the rehash itself runs on another thread.
+ */
+class BackgroundResize
+{
+	/**
+	 * A put or remove made while a background resize was running, to be replayed on the resized table.
+	 */
+	private static final class PendingUpdate
+	{
+		private final String key;			// Key of the updated entry
+		private final KeyValuePair pair;	// The updated entry itself; null if it was removed
+
+		private PendingUpdate(final String key, final KeyValuePair pair)
+		{
+			this.key = key;
+			this.pair = pair;
+		}
+	}
+
+
+	private Executor executor;					// Runs background resizes; null if resizing in the foreground
+	private double hardRehashThreshold;			// Load factor at which a put waits for the background resize
+	private FutureTask<HashTable> pending;		// The running background resize; null if none
+	private List<PendingUpdate> updates;		// Updates made since the running background resize took its snapshot
+
+
+	/**
+	 * Sets the executor and the hard rehash threshold. The running resize, if any, is kept.
+	 * @param executor The executor to run background resizes on, or null to resize in the foreground.
+	 * @param hardRehashThreshold The load factor at which puts wait for the background resize.
+	 */
+	void configure(final Executor executor, final double hardRehashThreshold)
+	{
+		this.executor = executor;
+		this.hardRehashThreshold = hardRehashThreshold;
+	}
+
+
+	/**
+	 * Checks if background resizing is enabled.
+	 * @return True if and only if there is an executor to resize on.
+	 */
+	boolean isEnabled()
+	{
+		return executor != null;
+	}
+
+
+	/**
+	 * Checks if a background resize is running, or done but not yet installed.
+	 * @return True if and only if there is a background resize to install or cancel.
+	 */
+	boolean isRunning()
+	{
+		return pending != null;
+	}
+
+
+	/**
+	 * Checks if the running background resize should be installed: either it is done, or the table is too full to wait for it.
+	 * @param loadFactor The load factor of the table.
+	 * @return True if and only if a background resize is running and should be installed now.
+	 */
+	boolean isDue(final double loadFactor)
+	{
+		return pending != null && (pending.isDone() || loadFactor >= hardRehashThreshold);
+	}
+
+
+	/**
+	 * Starts a background resize on the executor, and starts recording updates. Background resizing must be enabled, and no resize running.
+	 * @param rehash Builds the resized table from a snapshot of the positions.
+	 */
+	void start(final Callable<HashTable> rehash)
+	{
+		pending = new FutureTask<HashTable>(rehash);
+		updates = new ArrayList<PendingUpdate>();
+
+		executor.execute(pending);
+	}
+
+
+	/**
+	 * Records an update for replay, if a background resize is running.
+	 * @param key The key of the updated entry.
+	 * @param pair The updated entry, or null if it was removed.
+	 */
+	void record(final String key, final KeyValuePair pair)
+	{
+		if (updates != null)
+		{
+			updates.add(new PendingUpdate(key, pair));
+		}
+	}
+
+
+	/**
+	 * Waits for the running background resize, and replays the updates recorded since its snapshot onto the resized table. An interrupt while waiting
+	 * does not stop the wait, as the resize must still be installed; it is restored afterwards.
+	 * @return The resized table, or null if the background resize failed, in which case the table must expand in the foreground.
+	 */
+	HashTable finish()
+	{
+		HashTable newHashTable = null;
+		boolean interrupted = false;
+
+		while (newHashTable == null)
+		{
+			try
+			{
+				newHashTable = pending.get();
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+			catch (ExecutionException e)
+			{
+				break;
+			}
+		}
+
+		final List<PendingUpdate> replayed = updates;
+		pending = null;
+		updates = null;
+
+		if (newHashTable != null)
+		{
+			for (PendingUpdate update : replayed)
+			{
+				if (update.pair == null)
+				{
+					newHashTable.removeEntry(update.key);
+				}
+				else
+				{
+					newHashTable.storePair(update.pair);	// The writer's own entry object; it is no longer updated through the old table
+				}
+			}
+		}
+
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return newHashTable;
+	}
+
+
+	/**
+	 * Abandons the running background resize, if any.
+	 */
+	void cancel()
+	{
+		if (pending != null)
+		{
+			pending.cancel(false);
+			pending = null;
+			updates = null;
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package hashtable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A position holding every entry whose key compresses to its index, under separate chaining. A bin is never changed once built: adding, replacing or
+ * removing an entry builds a new bin, which the table stores in place of the old one, so that an optimistic reader always sees a whole bin.
+ *
+ * Short bins are unsorted chains, searched one entry after another. A bin that reaches TREEIFY_THRESHOLD entries is sorted by hash code and then by
+ * key, and searched by bisection, so that a search takes O(log n) comparisons even when every key in the bin has the same hash code. It stays sorted
+ * as entries are added and removed.
+ *
+ * A bin holds no single entry, so get() returns null; its entries are read by slot.
+ */
+class Bin extends Position
+{
+	static final int TREEIFY_THRESHOLD = 8;	// Number of entries from which a bin is kept sorted
+
+	private static final Comparator<KeyValuePair> ORDER = Comparator.comparingInt(KeyValuePair::hashCode).thenComparing(KeyValuePair::getKey);
+
+	private final KeyValuePair[] entries;	// The entries of the bin; sorted by hash code and key if there are at least TREEIFY_THRESHOLD
+	private final int[] hashes;				// Hash code of each entry's key, so that most mismatches are rejected without comparing keys
+
+
+	/**
+	 * Constructor. Creates a bin holding a single entry.
+	 * @param pair The entry.
+	 * @param index The index of the bin in the table.
+	 */
+	Bin(final KeyValuePair pair, final int index)
+	{
+		this(new KeyValuePair[] { pair }, new int[] { pair.hashCode() }, index);
+	}
+
+
+	private Bin(final KeyValuePair[] entries, final int[] hashes, final int index)
+	{
+		super(null, index);
+		this.entries = entries;
+		this.hashes = hashes;
+	}
+
+
+	/**
+	 * Returns the number of entries in the bin.
+	 * @return The number of entries, at least 1.
+	 */
+	int size()
+	{
+		return entries.length;
+	}
+
+
+	/**
+	 * Returns the entry in a given slot.
+	 * @param slot The slot, between 0 and size() - 1.
+	 * @return The entry.
+	 */
+	KeyValuePair get(final int slot)
+	{
+		return entries[slot];
+	}
+
+
+	/**
+	 * Checks if the bin is sorted and searched by bisection.
+	 * @return True if and only if the bin holds at least TREEIFY_THRESHOLD entries.
+	 */
+	boolean isTreeified()
+	{
+		return entries.length >= TREEIFY_THRESHOLD;
+	}
+
+
+	/**
+	 * Finds the slot of the entry with a key given in any of the forms accepted by HashTable.get.
+	 * @param key The key: a CharSequence, a char[] or a ByteBuffer.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @param hash The hash code of the key.
+	 * @param countCollisions True to count a collision against every entry compared with the key; only the writer may count.
+	 * @return The slot of the entry if it is found, -1 otherwise.
+	 */
+	int find(final Object key, final int offset, final int length, final int hash, final boolean countCollisions)
+	{
+		if (!isTreeified())
+		{
+			for (int slot = 0; slot < entries.length; slot++)
+			{
+				if (countCollisions)
+				{
+					entries[slot].incrementCollisions();
+				}
+
+				if (hashes[slot] == hash && HashTable.keyEquals(entries[slot].getKey(), key, offset, length))
+				{
+					return slot;
+				}
+			}
+			return -1;
+		}
+
+		int low = 0;
+		int high = entries.length - 1;
+		while (low <= high)
+		{
+			final int middle = (low + high) >>> 1;
+			if (countCollisions)
+			{
+				entries[middle].incrementCollisions();
+			}
+
+			final int order = compare(hashes[middle], entries[middle].getKey(), hash, key, offset, length);
+			if (order < 0)
+			{
+				low = middle + 1;
+			}
+			else if (order > 0)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Computes the number of entries a search compared with the key, for probe length statistics.
+	 * @param slot The result of the search.
+	 * @return The number of entries compared; for a sorted bin, the most a bisection compares.
+	 */
+	int searchLength(final int slot)
+	{
+		if (isTreeified())
+		{
+			return Integer.SIZE - Integer.numberOfLeadingZeros(entries.length);
+		}
+
+		return slot >= 0 ? slot + 1 : entries.length;
+	}
+
+
+	/**
+	 * Builds a bin holding this bin's entries and a new one. Sorts the entries if the bin reaches TREEIFY_THRESHOLD.
+	 * @param pair The new entry; no entry with the same key may be in the bin.
+	 * @return The new bin.
+	 */
+	Bin with(final KeyValuePair pair)
+	{
+		final int n = entries.length;
+		final int hash = pair.hashCode();
+		final KeyValuePair[] newEntries = new KeyValuePair[n + 1];
+		final int[] newHashes = new int[n + 1];
+
+		if (n + 1 < TREEIFY_THRESHOLD)		// A short chain: append
+		{
+			System.arraycopy(entries, 0, newEntries, 0, n);
+			System.arraycopy(hashes, 0, newHashes, 0, n);
+			newEntries[n] = pair;
+			newHashes[n] = hash;
+		}
+		else if (n + 1 == TREEIFY_THRESHOLD)	// Long enough to sort
+		{
+			System.arraycopy(entries, 0, newEntries, 0, n);
+			newEntries[n] = pair;
+			Arrays.sort(newEntries, ORDER);
+			for (int slot = 0; slot <= n; slot++)
+			{
+				newHashes[slot] = newEntries[slot].hashCode();
+			}
+		}
+		else								// Already sorted: insert in order
+		{
+			final String key = pair.getKey();
+			int low = 0;
+			int high = n;
+			while (low < high)
+			{
+				final int middle = (low + high) >>> 1;
+				if (compare(hashes[middle], entries[middle].getKey(), hash, key, 0, key.length()) < 0)
+				{
+					low = middle + 1;
+				}
+				else
+				{
+					high = middle;
+				}
+			}
+
+			System.arraycopy(entries, 0, newEntries, 0, low);
+			System.arraycopy(hashes, 0, newHashes, 0, low);
+			newEntries[low] = pair;
+			newHashes[low] = hash;
+			System.arraycopy(entries, low, newEntries, low + 1, n - low);
+			System.arraycopy(hashes, low, newHashes, low + 1, n - low);
+		}
+
+		return new Bin(newEntries, newHashes, getIndex());
+	}
+
+
+	/**
+	 * Builds a bin with the entry in a given slot replaced by another with the same key.
+	 * @param slot The slot of the replaced entry.
+	 * @param pair The replacing entry.
+	 * @return The new bin.
+	 */
+	Bin replacing(final int slot, final KeyValuePair pair)
+	{
+		final KeyValuePair[] newEntries = entries.clone();
+		newEntries[slot] = pair;
+		return new Bin(newEntries, hashes, getIndex());
+	}
+
+
+	/**
+	 * Builds a bin without the entry in a given slot, keeping the others in order.
+	 * @param slot The slot of the removed entry.
+	 * @return The new bin, or null if the removed entry was the only one.
+	 */
+	Bin without(final int slot)
+	{
+		final int n = entries.length;
+		if (n == 1)
+		{
+			return null;
+		}
+
+		final KeyValuePair[] newEntries = new KeyValuePair[n - 1];
+		final int[] newHashes = new int[n - 1];
+		System.arraycopy(entries, 0, newEntries, 0, slot);
+		System.arraycopy(hashes, 0, newHashes, 0, slot);
+		System.arraycopy(entries, slot + 1, newEntries, slot, n - slot - 1);
+		System.arraycopy(hashes, slot + 1, newHashes, slot, n - slot - 1);
+		return new Bin(newEntries, newHashes, getIndex());
+	}
+
+
+	/**
+	 * Compares a stored entry with a key given in any of the forms accepted by HashTable.get, in the order of a sorted bin.
+	 * @param storedHash The hash code of the stored key.
+	 * @param stored The stored key.
+	 * @param hash The hash code of the key.
+	 * @param key The key: a CharSequence, a char[] or a ByteBuffer.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @return A negative number, zero or a positive number as the stored entry comes before, with or after the key.
+	 */
+	private static int compare(final int storedHash, final String stored, final int hash, final Object key, final int offset, final int length)
+	{
+		if (storedHash != hash)
+		{
+			return Integer.compare(storedHash, hash);
+		}
+
+		final int common = Math.min(stored.length(), length);
+		for (int i = 0; i < common; i++)
+		{
+			final int difference = stored.charAt(i) - charAt(key, offset + i);
+			if (difference != 0)
+			{
+				return difference;
+			}
+		}
+		return stored.length() - length;
+	}
+
+
+	/**
+	 * Reads a character of a key given in any of the forms accepted by HashTable.get.
+	 * @param key The key: a CharSequence, a char[] or a ByteBuffer, whose bytes are read as ISO-8859-1 characters.
+	 * @param index The index of the character.
+	 * @return The character.
+	 */
+	private static char charAt(final Object key, final int index)
+	{
+		if (key instanceof char[])
+		{
+			return ((char[]) key)[index];
+		}
+		else if (key instanceof ByteBuffer)
+		{
+			return (char) (((ByteBuffer) key).get(index) & 0xFF);
+		}
+		else
+		{
+			return ((CharSequence) key).charAt(index);
+		}
+	}
+}
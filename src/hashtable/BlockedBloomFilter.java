@@ -0,0 +1,171 @@
+package hashtable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A blocked Bloom filter over string keys. The bit array is split into 512-bit blocks, the size of a typical cache line, and all of a key's bits are
+ * set within one block chosen by its hash, so each query reads a single cache line. A negative answer is definite; a positive answer may be false
+ * with a small probability.
+ *
+ * Bits cannot be cleared when keys are removed, as they may be shared with other keys. Instead, removals are counted, and the owner of the filter is
+ * expected to rebuild it once isStale() reports that too many removed keys still occupy bits.
+ */
+class BlockedBloomFilter
+{
+	private static final int BITS_PER_KEY = 10;			// Gives a false positive rate of about 1% for blocked filters
+	private static final int NUM_HASHES = 7;			// Number of bits set per key
+	private static final int WORDS_PER_BLOCK = 8;		// 8 longs make a 64-byte block
+	private static final int BLOCK_BITS_MASK = 511;		// Selects a bit within a block
+	private static final double STALE_FRACTION = 0.25;	// Fraction of removed keys, relative to the capacity, at which the filter should be rebuilt
+
+	private final long seed;		// Seed of the key hash function
+	private final long[] words;		// The bits of the filter
+	private final int numBlocks;	// Number of 512-bit blocks
+	private final int capacity;		// Number of keys the filter was sized for
+	private int removals;			// Number of removed keys whose bits are still set
+
+
+	/**
+	 * Constructor. Creates an empty filter sized for a given number of keys.
+	 * @param capacity The number of keys the filter is expected to hold. Must be a non-negative integer.
+	 */
+	BlockedBloomFilter(final int capacity)
+	{
+		if (capacity < 0)
+		{
+			throw new IllegalArgumentException("Capacity must be a non-negative integer.");
+		}
+
+		this.capacity = capacity;
+		this.numBlocks = Math.max(1, (int) (((long) capacity * BITS_PER_KEY + BLOCK_BITS_MASK) / (BLOCK_BITS_MASK + 1)));
+		this.words = new long[numBlocks * WORDS_PER_BLOCK];
+		this.seed = 0x5bd1e9955bd1e995L;
+		this.removals = 0;
+	}
+
+
+	/**
+	 * Adds a key to the filter.
+	 * @param key The key to add.
+	 */
+	void add(final CharSequence key)
+	{
+		add(Hashing.hash64(key, seed));
+	}
+
+
+	/**
+	 * Checks whether a key may have been added to the filter.
+	 * @param key The key to check.
+	 * @return False if the key has definitely not been added, true if it may have been.
+	 */
+	boolean mightContain(final CharSequence key)
+	{
+		return mightContain(Hashing.hash64(key, seed));
+	}
+
+
+	/**
+	 * Checks whether a key made of a range of a character array may have been added to the filter.
+	 * @param key The array holding the characters of the key.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 * @return False if the key has definitely not been added, true if it may have been.
+	 */
+	boolean mightContain(final char[] key, final int offset, final int length)
+	{
+		return mightContain(Hashing.hash64(key, offset, length, seed));
+	}
+
+
+	/**
+	 * Checks whether a key made of a range of a byte buffer, read as ISO-8859-1 characters, may have been added to the filter.
+	 * @param key The buffer holding the bytes of the key.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @return False if the key has definitely not been added, true if it may have been.
+	 */
+	boolean mightContain(final ByteBuffer key, final int offset, final int length)
+	{
+		return mightContain(Hashing.hash64(key, offset, length, seed));
+	}
+
+
+	/**
+	 * Sets the bits of a key hash in its block.
+	 * @param hash The key hash.
+	 */
+	private void add(final long hash)
+	{
+		final int block = Hashing.reduce(hash, numBlocks) * WORDS_PER_BLOCK;
+		final int h1 = (int) hash;
+		final int h2 = (int) Hashing.mix(hash) | 1;	// Odd, so the bit positions cycle through the whole block
+
+		for (int i = 0; i < NUM_HASHES; i++)
+		{
+			final int bit = (h1 + i * h2) & BLOCK_BITS_MASK;
+			words[block + (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+
+	/**
+	 * Checks the bits of a key hash in its block.
+	 * @param hash The key hash.
+	 * @return True if and only if all of the bits are set.
+	 */
+	private boolean mightContain(final long hash)
+	{
+		final int block = Hashing.reduce(hash, numBlocks) * WORDS_PER_BLOCK;
+		final int h1 = (int) hash;
+		final int h2 = (int) Hashing.mix(hash) | 1;
+
+		boolean present = true;
+		for (int i = 0; present && i < NUM_HASHES; i++)
+		{
+			final int bit = (h1 + i * h2) & BLOCK_BITS_MASK;
+			present = (words[block + (bit >>> 6)] & (1L << bit)) != 0;
+		}
+
+		return present;
+	}
+
+
+	/**
+	 * Records that a key has been removed from the owning table. Its bits stay set until the filter is rebuilt.
+	 */
+	void recordRemoval()
+	{
+		removals++;
+	}
+
+
+	/**
+	 * Checks whether enough keys have been removed that the filter should be rebuilt to restore its false positive rate.
+	 * @return True if and only if the filter should be rebuilt.
+	 */
+	boolean isStale()
+	{
+		return removals > STALE_FRACTION * capacity;
+	}
+
+
+	/**
+	 * Returns the number of keys the filter was sized for.
+	 * @return The capacity of the filter.
+	 */
+	int getCapacity()
+	{
+		return capacity;
+	}
+
+
+	/**
+	 * Returns the size of the filter.
+	 * @return The number of bits in the filter.
+	 */
+	long getNumberOfBits()
+	{
+		return (long) words.length * Long.SIZE;
+	}
+}
@@ -0,0 +1,116 @@
+package hashtable;
+
+/**
+ * Chooses the entries a HashTable evicts in cache mode, with the CLOCK algorithm: a hand sweeps over the positions, and every entry it passes that has
+ * been put or found since the hand last passed it is spared, once; the first entry not used since is evicted. The reference marks live on the entries
+ * themselves, so the hand is the only state besides the capacity.
+ *
+ * The table calls evict under its write lock, so the hand needs no synchronization of its own.
+ */
+class ClockEviction
+{
+	private int capacity;		// Maximum number of entries before evicting; 0 if the table is unbounded
+	private int hand;			// Index at which the next search for an entry to evict starts
+	private int numEvictions;	// The number of entries evicted so far
+
+
+	/**
+	 * Returns the cache capacity.
+	 * @return The maximum number of entries, or 0 if cache mode is disabled.
+	 */
+	int getCapacity()
+	{
+		return capacity;
+	}
+
+
+	/**
+	 * Sets the cache capacity. Entries beyond it are evicted by the table.
+	 * @param capacity The maximum number of entries, or 0 to disable cache mode.
+	 */
+	void setCapacity(final int capacity)
+	{
+		this.capacity = capacity;
+	}
+
+
+	/**
+	 * Checks whether a table holds more entries than the cache capacity.
+	 * @param numElements The number of entries in the table.
+	 * @return True if and only if cache mode is enabled and an entry must be evicted.
+	 */
+	boolean isOverCapacity(final int numElements)
+	{
+		return capacity > 0 && numElements > capacity;
+	}
+
+
+	/**
+	 * Computes the largest size the table may expand to: the smallest size holding the cache capacity below the rehash threshold.
+	 * @param rehashThreshold The rehash threshold of the table.
+	 * @return The maximum size of the table, or Integer.MAX_VALUE if cache mode is disabled.
+	 */
+	int maximumSize(final double rehashThreshold)
+	{
+		return capacity > 0 ? (int) Math.ceil(capacity / rehashThreshold) + 1 : Integer.MAX_VALUE;
+	}
+
+
+	/**
+	 * Returns the number of entries evicted so far.
+	 * @return The number of evictions.
+	 */
+	int getNumberOfEvictions()
+	{
+		return numEvictions;
+	}
+
+
+	/**
+	 * Moves the hand back to the first position, after the table was resized.
+	 */
+	void reset()
+	{
+		hand = 0;
+	}
+
+
+	/**
+	 * Evicts one entry from a table. After one full turn of the hand every entry has lost its mark, so the search ends within two turns. Must be called
+	 * by the writer, on a table holding at least one entry.
+	 * @param table The table to evict from.
+	 */
+	void evict(final HashTable table)
+	{
+		int victimSlot;
+		while ((victimSlot = findUnreferencedAt(table, hand)) < 0)
+		{
+			hand = (hand + 1) % table.size();
+		}
+
+		final int victim = hand;
+		hand = (hand + 1) % table.size();
+		numEvictions++;
+		table.removeAt(victim, victimSlot);
+	}
+
+
+	/**
+	 * Finds an entry at a given index not used since the hand last passed it, clearing the reference marks of the used entries passed on the way.
+	 * @param table The table to evict from.
+	 * @param index The index of the position under the hand.
+	 * @return The slot of the unused entry, or -1 if there is none.
+	 */
+	private static int findUnreferencedAt(final HashTable table, final int index)
+	{
+		for (int slot = 0, n = table.entriesAt(index); slot < n; slot++)
+		{
+			if (!table.entryAt(index, slot).clearReferenced())
+			{
+				return slot;
+			}
+		}
+
+		return -1;
+	}
+}
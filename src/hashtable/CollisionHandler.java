@@ -4,19 +4,51 @@ abstract class CollisionHandler
 {
 	enum CollisionHandlingScheme
 	{
-		DOUBLE		('D'),
-		QUADRATIC	('Q');
+		DOUBLE		('D', true, 1),
+		QUADRATIC	('Q', true, 1),
+		CHAINING	('C', false, 8),
+		HOPSCOTCH	('H', false, 1),
+		DLEFT		('L', false, 1);
 		
-		private char representation;	// Character representation of the enum value
+		private char representation;			// Character representation of the enum value
+		private boolean probing;				// True if collisions are resolved by walking a probe sequence of positions
+		private double maxRehashThreshold;		// Highest load factor the scheme can be run at
 		
 		
 		/**
 		 * Constructor. Associates each value with a character representation.
 		 * @param representation The character representation of the enum value.
+		 * @param probing True if the scheme resolves collisions by walking a probe sequence of positions.
+		 * @param maxRehashThreshold The highest load factor the scheme can be run at.
 		 */
-		private CollisionHandlingScheme(final char representation)
+		private CollisionHandlingScheme(final char representation, final boolean probing, final double maxRehashThreshold)
 		{
 			this.representation = representation;
+			this.probing = probing;
+			this.maxRehashThreshold = maxRehashThreshold;
+		}
+		
+		
+		/**
+		 * Checks if the scheme resolves collisions by walking the probe sequence given by CollisionHandler.probe, stopping at the first never-filled
+		 * position. Only such schemes can be searched by the table's generic probing code and simulated by the workload sampler; the others keep
+		 * their own structure within the positions array.
+		 * @return True if and only if the scheme probes.
+		 */
+		boolean isProbing()
+		{
+			return probing;
+		}
+		
+		
+		/**
+		 * Returns the highest rehash threshold the scheme can be run at: 1 for schemes holding one entry per position, more under separate chaining,
+		 * whose bins hold several.
+		 * @return The highest rehash threshold.
+		 */
+		double getMaxRehashThreshold()
+		{
+			return maxRehashThreshold;
 		}
 		
 		
@@ -55,9 +87,65 @@ abstract class CollisionHandler
 		reset(0);
 	}
 	
-	abstract public int nextHash();
+	/**
+	 * Creates a collision handler of the given scheme for a table of the given size.
+	 * @param scheme The collision handling scheme.
+	 * @param size The size of the table the handler probes.
+	 * @return The collision handler.
+	 */
+	static CollisionHandler create(final CollisionHandlingScheme scheme, final int size)
+	{
+		switch (scheme)
+		{
+			case DOUBLE:
+				return new DoubleHasher(size);
+			case QUADRATIC:
+				return new QuadraticProbe(size);
+			case CHAINING:
+				return new SeparateChaining();
+			case HOPSCOTCH:
+				return new Hopscotch(size);
+			case DLEFT:
+				return new DLeft(size);
+			default:
+				throw new IllegalArgumentException("Unsupported collision handling scheme " + scheme + ".");
+		}
+	}
+	
+	/**
+	 * Computes a given step of a probe sequence. Keeps no state, so that any number of searches may use the same handler at once.
+	 * @param rawHash The unmodified hash code the sequence starts from.
+	 * @param attempt The number of positions already tried; 0 for the first.
+	 * @return The hash code to try at this step.
+	 */
+	abstract public int probe(final int rawHash, final int attempt);
 	abstract public CollisionHandlingScheme getType();
 	
+	/**
+	 * Computes the index a given step of a probe sequence tries. By default, the step's hash code is compressed; handlers whose sequences are meant
+	 * to reach every position instead step from the home index within the table, where the compressor cannot scramble the sequence.
+	 * @param compressor The compressor of the table.
+	 * @param size The size of the table.
+	 * @param rawHash The unmodified hash code the sequence starts from.
+	 * @param attempt The number of positions already tried; 0 for the first.
+	 * @return The index to try at this step.
+	 */
+	public int probeIndex(final Compressor compressor, final int size, final int rawHash, final int attempt)
+	{
+		return compressor.compress(probe(rawHash, attempt));
+	}
+	
+	/**
+	 * Computes the next step of the probe sequence started by reset, and advances the counter.
+	 * @return The hash code to try next.
+	 */
+	public int nextHash()
+	{
+		final int hashCode = probe(rawHash, counter);
+		incrementCounter();
+		return hashCode;
+	}
+	
 	public final void reset(final int rawHash)
 	{
 		this.rawHash = rawHash;
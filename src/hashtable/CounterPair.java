@@ -0,0 +1,42 @@
+package hashtable;
+
+/**
+ * An entry holding a count as a primitive number, so that counting neither parses nor creates strings. Its value is the count in decimal.
+ */
+class CounterPair extends KeyValuePair
+{
+	private long count;
+	
+	public CounterPair(final String key, final long count)
+	{
+		super(key);
+		this.count = count;
+	}
+	
+	public long getCount()
+	{
+		return count;
+	}
+	
+	public void add(final long delta)
+	{
+		count += delta;
+	}
+	
+	public String getValue()
+	{
+		return Long.toString(count);
+	}
+	
+	public void setValue(final String value)
+	{
+		count = Long.parseLong(value);
+	}
+	
+	public KeyValuePair copy()
+	{
+		final CounterPair copy = new CounterPair(getKey(), count);
+		copy.setExpirationTime(getExpirationTime());
+		return copy;
+	}
+}
@@ -0,0 +1,148 @@
+package hashtable;
+
+import java.util.Random;
+
+/**
+ * Resolves collisions by d-left hashing: the positions are split into NUM_SUBTABLES subtables of buckets of BUCKET_SIZE consecutive positions, and
+ * every key has one candidate bucket in each subtable, chosen by an independent hash function. A new entry goes to the least loaded of its candidate
+ * buckets, and to the leftmost of them on a tie. Choosing among several buckets keeps the fullest bucket within O(log log n) of the average, where a
+ * single choice would let it grow as O(log n / log log n), so a search examines at most NUM_SUBTABLES * BUCKET_SIZE positions however large the
+ * table grows. Breaking ties to the left balances the load further than breaking them at random. With four subtables of four-position buckets, a
+ * table fills to about 80% before some new entry finds all of its candidate buckets full, against 75% with two subtables of eight-position buckets,
+ * for the same 16 positions searched.
+ *
+ * A search examines every candidate bucket, as the entry may be in any of them. The handler keeps the raw hash of the entry at every position, so
+ * a search scans the hashes of a bucket, which lie next to each other, and compares only the keys whose hashes match. The table grows if every candidate bucket of a new entry is full.
+ * Growing cannot separate keys with the same hash code, so a table whose candidate buckets are full of keys sharing a new key's hash code switches to
+ * separate chaining. Positions beyond the last whole bucket of the last subtable are never used.
+ *
+ * The handler holds the geometry and hash seeds of the table it was created for, so it is replaced along with the positions on every resize. Probe
+ * sequences are not used: probe returns the raw hash.
+ */
+class DLeft extends CollisionHandler
+{
+	static final int NUM_SUBTABLES = 4;		// Number of candidate buckets of every key, one per subtable
+	static final int BUCKET_SIZE = 4;		// Number of positions of a bucket, in a table large enough
+
+	private final int bucketSize;			// Number of positions of a bucket; smaller than BUCKET_SIZE in tiny tables
+	private final int numBuckets;			// Number of buckets of each subtable
+	private final int[] seeds;				// Seed of the hash function of each subtable
+	private final int[] hashes;				// Raw hash of the entry at each position; meaningless for empty positions
+
+
+	/**
+	 * Constructor. Lays out the subtables of a table and draws their hash functions.
+	 * @param size The size of the table; at least NUM_SUBTABLES.
+	 */
+	DLeft(final int size)
+	{
+		if (size < NUM_SUBTABLES)
+		{
+			throw new IllegalArgumentException("A d-left table needs at least " + NUM_SUBTABLES + " positions, one per subtable.");
+		}
+
+		this.bucketSize = Math.min(BUCKET_SIZE, size / NUM_SUBTABLES);
+		this.numBuckets = size / (NUM_SUBTABLES * bucketSize);
+		this.seeds = new int[NUM_SUBTABLES];
+		this.hashes = new int[size];
+
+		final Random rand = new Random();
+		for (int subtable = 0; subtable < NUM_SUBTABLES; subtable++)
+		{
+			seeds[subtable] = rand.nextInt();
+		}
+	}
+
+
+	public int probe(final int rawHash, final int attempt)
+	{
+		return rawHash;
+	}
+
+
+	public CollisionHandlingScheme getType()
+	{
+		return CollisionHandlingScheme.DLEFT;
+	}
+
+
+	/**
+	 * Returns the raw hash of the entry at a position.
+	 * @param index The index of the position. Must hold an entry for the result to be meaningful.
+	 * @return The raw hash.
+	 */
+	int getHash(final int index)
+	{
+		return hashes[index];
+	}
+
+
+	/**
+	 * Records the raw hash of an entry placed at a position.
+	 * @param index The index of the position.
+	 * @param rawHash The raw hash of the entry.
+	 */
+	void setHash(final int index, final int rawHash)
+	{
+		hashes[index] = rawHash;
+	}
+
+
+	/**
+	 * Returns the number of positions of a bucket.
+	 * @return The bucket size.
+	 */
+	int getBucketSize()
+	{
+		return bucketSize;
+	}
+
+
+	/**
+	 * Returns the number of buckets of each subtable.
+	 * @return The number of buckets per subtable.
+	 */
+	int getNumberOfBuckets()
+	{
+		return numBuckets;
+	}
+
+
+	/**
+	 * Computes the index of the first position of a key's candidate bucket in a subtable. The raw hash is mixed with the subtable's seed, so that keys
+	 * sharing a bucket in one subtable are spread over the buckets of the others.
+	 * @param rawHash The raw hash of the key.
+	 * @param subtable The subtable, between 0 and NUM_SUBTABLES - 1.
+	 * @return The index of the bucket's first position.
+	 */
+	int bucketStart(final int rawHash, final int subtable)
+	{
+		int mixed = rawHash ^ seeds[subtable];	// fmix32, the finalizer of MurmurHash3, so that every bit of the raw hash affects the bucket
+		mixed ^= mixed >>> 16;
+		mixed *= 0x85EBCA6B;
+		mixed ^= mixed >>> 13;
+		mixed *= 0xC2B2AE35;
+		mixed ^= mixed >>> 16;
+
+		final int bucket = (int) (((mixed & 0xFFFFFFFFL) * numBuckets) >>> 32);	// Scales to a bucket without a division
+		return (subtable * numBuckets + bucket) * bucketSize;
+	}
+
+
+	/**
+	 * Computes the number of positions a search examined, for probe length statistics. Candidate buckets are searched from left to right.
+	 * @param rawHash The raw hash of the key searched for.
+	 * @param index The index of the entry found, or -1 if none was.
+	 * @return The number of positions up to and including the entry found, or those of every candidate bucket if none was.
+	 */
+	int searchLength(final int rawHash, final int index)
+	{
+		if (index < 0)
+		{
+			return NUM_SUBTABLES * bucketSize;
+		}
+
+		final int subtable = Math.min(index / (numBuckets * bucketSize), NUM_SUBTABLES - 1);
+		return subtable * bucketSize + index - bucketStart(rawHash, subtable) + 1;
+	}
+}
@@ -8,19 +8,31 @@ class DoubleHasher extends CollisionHandler
 	
 	DoubleHasher(final HashTable implementingTable)
 	{
-		q = Prime.nextSmallestPrime(implementingTable.size());
+		this(implementingTable.size());
 	}
 	
-	private int secondaryHash()
+	DoubleHasher(final int size)
 	{
-		return q - getRawHash() % q;
+		q = size > Prime.nextLargestPrime(0) ? Prime.nextSmallestPrime(size - 1) : 1;	// Strictly less than the size, so that steps are never a multiple of it
 	}
 	
-	public int nextHash()
+	private int secondaryHash(final int rawHash)
 	{
-		final int hashCode = getRawHash() + getCounter() * secondaryHash();
-		incrementCounter();
-		return hashCode;
+		return q - Math.floorMod(rawHash, q);	// In [1, q], even for negative hashes
+	}
+	
+	public int probe(final int rawHash, final int attempt)
+	{
+		return rawHash + attempt * secondaryHash(rawHash);
+	}
+	
+	/**
+	 * Steps from the home index by the secondary hash, which lies in [1, q] and so is coprime with the prime size: the sequence tries every position
+	 * of the table once in size steps.
+	 */
+	public int probeIndex(final Compressor compressor, final int size, final int rawHash, final int attempt)
+	{
+		return (int) ((compressor.compress(rawHash) + (long) attempt * secondaryHash(rawHash)) % size);
 	}
 	
 	public CollisionHandlingScheme getType()
@@ -0,0 +1,831 @@
+package hashtable;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The DurableHashTable class keeps a HashTable in memory and records every put and remove in an append-only log on disk, so that the table survives a
+ * crash. The table lives in a directory holding two files: a snapshot of the whole table, and a log of the updates made since the snapshot was taken.
+ * Opening the directory loads the snapshot and replays the log on top of it; a record torn by a crash is detected by its checksum and cut off.
+ *
+ * Updates are made durable by group commit. Writers append their records to a shared buffer and wait, while a single flusher thread writes the buffer
+ * with one sequential write and forces it to disk with one fsync. Records appended while an fsync is in progress are gathered into the next batch, so
+ * the more writers there are, the more updates share each fsync. A short group commit delay may be set to gather larger batches at the cost of latency,
+ * and synchronous commit may be turned off so that writers do not wait at all.
+ *
+ * Taking a snapshot writes the current entries to a new snapshot file, replaces the old one, and empties the log, so that the log, and the time taken to
+ * replay it, stays bounded. Both files begin with the generation of the snapshot, counting the snapshots taken. A crash after a new snapshot replaces
+ * the old one but before the log is emptied leaves a log of an older generation, whose updates the snapshot already holds along with later ones that
+ * were never logged; such a log is discarded rather than replayed. Readers are never blocked by writers, the flusher or snapshots.
+ */
+public class DurableHashTable implements Closeable
+{
+	private static final String SNAPSHOT_FILE_NAME = "snapshot";		// Name of the snapshot file within the directory
+	private static final String LOG_FILE_NAME = "log";				// Name of the log file within the directory
+	private static final String TEMPORARY_SUFFIX = ".tmp";			// Suffix of a snapshot being written
+	private static final byte PUT = 1;								// Record type of a put
+	private static final byte REMOVE = 2;							// Record type of a remove
+	private static final byte GENERATION = 3;						// Record type of the generation at the start of each file
+	private static final int GENERATION_PAYLOAD_LENGTH = 1 + Long.BYTES;	// Record type and generation
+	private static final int HEADER_LENGTH = 8;						// Payload length and checksum preceding each record's payload
+	private static final int INITIAL_BUFFER_SIZE = 1 << 16;			// Initial size of the record buffers
+
+	private final HashTable table;		// The entries
+	private final Path snapshotFile;	// The snapshot of the table
+	private final Path logFile;			// The log of updates made since the snapshot
+	private final FileChannel log;		// Open on the log file; written only under ioLock
+	private final Object ioLock;		// Held while writing to the log, so that the flusher and snapshots do not interleave
+	private final Thread flusher;		// Writes and forces batches of records
+	private final CRC32 checksum;		// Checksum of records being appended; guarded by this
+
+	private ByteBuffer pending;			// Records appended but not yet handed to the flusher; guarded by this
+	private long appendedSequence;		// Number of records appended; guarded by this
+	private long durableSequence;		// Number of records known to be on disk; guarded by this
+	private long generation;			// Generation of the current snapshot; records appended before a snapshot must not reach the new log
+	private long groupCommitDelay;		// Nanoseconds the flusher waits for more records before writing a batch
+	private boolean synchronousCommit;	// True if writers wait for their records to be on disk
+	private long numBatches;			// Number of batches forced to disk
+	private IOException failure;		// The error that stopped the flusher, if any
+	private boolean closed;				// True once close() has been called
+
+
+	/**
+	 * Constructor. Opens the durable table stored in a directory, creating the directory if it does not exist. Loads the snapshot, if any, and replays
+	 * the log on top of it unless the log is of an older generation, then starts the flusher thread.
+	 * @param directory The directory holding the snapshot and the log.
+	 * @throws IOException If the directory cannot be read or written, or the snapshot is damaged.
+	 */
+	public DurableHashTable(final Path directory) throws IOException
+	{
+		Files.createDirectories(directory);
+		this.snapshotFile = directory.resolve(SNAPSHOT_FILE_NAME);
+		this.logFile = directory.resolve(LOG_FILE_NAME);
+		this.table = new HashTable();
+		table.setConcurrentReadsEnabled(true);	// Readers do not wait for writers, which wait for each other on this object
+
+		this.generation = 0;
+		if (Files.exists(snapshotFile))
+		{
+			generation = readGeneration(snapshotFile);
+			if (generation < 0 || replay(snapshotFile) != Files.size(snapshotFile))
+			{
+				throw new IOException("Snapshot " + snapshotFile + " is damaged.");
+			}
+		}
+
+		this.log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (readGeneration(logFile) == generation)
+		{
+			final long validLength = replay(logFile);
+			if (validLength < log.size())
+			{
+				log.truncate(validLength);	// Cut off a record torn by a crash, so that new records follow the valid ones
+				log.force(true);
+			}
+			log.position(validLength);
+		}
+		else
+		{
+			startLog();	// The log is empty, or predates the snapshot and holds only updates the snapshot already has
+		}
+
+		this.ioLock = new Object();
+		this.checksum = new CRC32();
+		this.pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		this.appendedSequence = 0;
+		this.durableSequence = 0;
+		this.groupCommitDelay = 0;
+		this.synchronousCommit = true;
+		this.numBatches = 0;
+		this.failure = null;
+		this.closed = false;
+
+		this.flusher = new Thread(this::flushBatches, "DurableHashTable flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+
+	/**
+	 * Adds a new entry to the table, or replaces the value of the entry with the same key, and logs the update. If synchronous commit is on, returns
+	 * only once the update is on disk.
+	 * @param key The key of the entry to add.
+	 * @param value The value of the entry to add.
+	 * @return Null if a new entry was added, the old value if it was replaced.
+	 * @throws UncheckedIOException If the log cannot be written.
+	 */
+	public String put(final String key, final String value)
+	{
+		final String oldValue;
+		final long sequence;
+		final boolean waitForDisk;
+
+		synchronized (this)
+		{
+			checkOpen();
+			oldValue = table.put(key, value);
+			sequence = append(PUT, key, value);
+			waitForDisk = synchronousCommit;
+		}
+
+		if (waitForDisk)
+		{
+			awaitDurable(sequence);
+		}
+
+		return oldValue;
+	}
+
+
+	/**
+	 * Convenience method. Puts an entry with the same key and value.
+	 * @param keyValue The key and the value of the entry to add.
+	 * @return Null if a new entry was added, the old value if it was replaced.
+	 * @throws UncheckedIOException If the log cannot be written.
+	 */
+	public String put(final String keyValue)
+	{
+		return put(keyValue, keyValue);
+	}
+
+
+	/**
+	 * Searches for an entry with the given key, and removes and returns the associated value if one is found, logging the update. If synchronous
+	 * commit is on, returns only once the update is on disk.
+	 * @param key The key of the entry to remove.
+	 * @return The value of the removed entry if one is found, null otherwise.
+	 * @throws UncheckedIOException If the log cannot be written.
+	 */
+	public String remove(final String key)
+	{
+		final String oldValue;
+		long sequence = 0;
+		final boolean waitForDisk;
+
+		synchronized (this)
+		{
+			checkOpen();
+			oldValue = table.remove(key);
+			if (oldValue != null)	// Nothing to log if nothing changed
+			{
+				sequence = append(REMOVE, key, null);
+			}
+			waitForDisk = synchronousCommit;
+		}
+
+		if (waitForDisk && sequence > 0)
+		{
+			awaitDurable(sequence);
+		}
+
+		return oldValue;
+	}
+
+
+	/**
+	 * Searches the table for an entry with the given key and returns the associated value. Never waits for writers or for the disk.
+	 * @param key The key of the entry to search for.
+	 * @return The associated value if it is found, null otherwise.
+	 */
+	public String get(final String key)
+	{
+		return table.get(key);
+	}
+
+
+	/**
+	 * Checks if the table holds an entry with the given key. Never waits for writers or for the disk.
+	 * @param key The key to search for.
+	 * @return True if and only if an entry with the key is held.
+	 */
+	public boolean containsKey(final CharSequence key)
+	{
+		return table.containsKey(key);
+	}
+
+
+	/**
+	 * Waits until every update made so far is on disk. Useful when synchronous commit is off.
+	 * @throws UncheckedIOException If the log cannot be written.
+	 */
+	public void sync()
+	{
+		final long sequence;
+		synchronized (this)
+		{
+			sequence = appendedSequence;
+		}
+
+		awaitDurable(sequence);
+	}
+
+
+	/**
+	 * Writes the current entries to a new snapshot, replaces the old snapshot with it, and empties the log. Writers wait until the snapshot is done;
+	 * readers do not. Every update made before the snapshot is on disk once it returns.
+	 * @throws IOException If the snapshot or the log cannot be written.
+	 */
+	public synchronized void snapshot() throws IOException
+	{
+		checkOpen();
+
+		synchronized (ioLock)
+		{
+			final Path temporaryFile = snapshotFile.resolveSibling(SNAPSHOT_FILE_NAME + TEMPORARY_SUFFIX);
+			try (FileChannel out = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+			{
+				final ByteBuffer[] buffer = { ByteBuffer.allocate(INITIAL_BUFFER_SIZE) };
+				final CRC32 snapshotChecksum = new CRC32();
+				final IOException[] writeFailure = { null };
+
+				buffer[0].put(encodeGeneration(generation + 1, snapshotChecksum));
+
+				table.forEachEntry((key, value) ->
+				{
+					buffer[0] = encode(buffer[0], PUT, key, value, snapshotChecksum);
+					if (buffer[0].position() >= INITIAL_BUFFER_SIZE && writeFailure[0] == null)
+					{
+						writeFailure[0] = drain(buffer[0], out);
+					}
+				});
+
+				if (writeFailure[0] == null)
+				{
+					writeFailure[0] = drain(buffer[0], out);
+				}
+				if (writeFailure[0] != null)
+				{
+					throw writeFailure[0];
+				}
+
+				out.force(true);
+			}
+
+			// The snapshot may hold updates that are still pending and were never logged, so replaying the old log on top of it would bring back
+			// older values. The old log keeps the old generation until it is emptied, so a crash before then discards it on opening.
+			Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			syncDirectory();
+
+			generation++;	// Batches the flusher has already taken hold updates that are in the snapshot
+			startLog();
+		}
+
+		pending.clear();
+		durableSequence = appendedSequence;
+		notifyAll();
+	}
+
+
+	/**
+	 * Schedules snapshots at a fixed rate, keeping the log short. A snapshot that fails is reported by the next write.
+	 * @param executor The executor to take the snapshots on.
+	 * @param period The time between snapshots.
+	 * @param unit The unit of the period.
+	 * @return The scheduled snapshots; cancel it to stop taking them.
+	 */
+	public ScheduledFuture<?> scheduleSnapshots(final ScheduledExecutorService executor, final long period, final TimeUnit unit)
+	{
+		return executor.scheduleAtFixedRate(() ->
+		{
+			try
+			{
+				snapshot();
+			}
+			catch (IOException e)
+			{
+				fail(e);
+			}
+		}, period, period, unit);
+	}
+
+
+	/**
+	 * Sets the time the flusher waits, once a record is appended, for more records to join the batch. Longer delays give larger batches and fewer
+	 * fsyncs, and make every synchronous write take longer.
+	 * @param delay The delay; zero writes each batch as soon as the previous one is on disk.
+	 * @param unit The unit of the delay.
+	 */
+	public synchronized void setGroupCommitDelay(final long delay, final TimeUnit unit)
+	{
+		if (delay < 0)
+		{
+			throw new IllegalArgumentException("Group commit delay must be non-negative.");
+		}
+
+		groupCommitDelay = unit.toNanos(delay);
+	}
+
+
+	/**
+	 * Turns synchronous commit on or off. When off, writers return as soon as their records are appended, and an update may be lost if the process
+	 * crashes before the next batch is on disk; call sync() to wait for it.
+	 * @param enabled True if writers should wait for their updates to be on disk.
+	 */
+	public synchronized void setSynchronousCommit(final boolean enabled)
+	{
+		synchronousCommit = enabled;
+	}
+
+
+	/**
+	 * Returns the number of entries stored in the table.
+	 * @return The number of entries.
+	 */
+	public int getNumberOfElements()
+	{
+		return table.getNumberOfElements();
+	}
+
+
+	/**
+	 * Returns the number of batches written to the log, each with a single fsync.
+	 * @return The number of batches.
+	 */
+	public synchronized long getNumberOfBatches()
+	{
+		return numBatches;
+	}
+
+
+	/**
+	 * Returns the number of updates logged since the table was opened.
+	 * @return The number of updates.
+	 */
+	public synchronized long getNumberOfUpdates()
+	{
+		return appendedSequence;
+	}
+
+
+	/**
+	 * Waits for every update to be on disk, stops the flusher, and closes the log. The table may not be updated afterwards.
+	 * @throws IOException If the log cannot be written or closed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		synchronized (this)
+		{
+			if (closed)
+			{
+				return;
+			}
+			closed = true;	// The flusher writes what is pending, then stops
+			notifyAll();
+		}
+
+		boolean interrupted = false;
+		while (flusher.isAlive())
+		{
+			try
+			{
+				flusher.join();
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized (ioLock)
+		{
+			log.close();
+		}
+
+		synchronized (this)
+		{
+			if (failure != null)
+			{
+				throw failure;
+			}
+		}
+	}
+
+
+	/**
+	 * Appends a record to the pending buffer and wakes the flusher. Must be called while holding this object's lock.
+	 * @param type The record type, PUT or REMOVE.
+	 * @param key The key of the update.
+	 * @param value The value of a put, null for a remove.
+	 * @return The sequence number of the record.
+	 */
+	private long append(final byte type, final String key, final String value)
+	{
+		pending = encode(pending, type, key, value, checksum);
+		notifyAll();
+		return ++appendedSequence;
+	}
+
+
+	/**
+	 * Waits until the record with a given sequence number is on disk. Interrupts are remembered and restored rather than abandoning the wait, as the
+	 * update has already been made.
+	 * @param sequence The sequence number of the record.
+	 * @throws UncheckedIOException If the flusher failed before the record reached the disk.
+	 */
+	private synchronized void awaitDurable(final long sequence)
+	{
+		boolean interrupted = false;
+
+		while (durableSequence < sequence && failure == null)
+		{
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		if (durableSequence < sequence)
+		{
+			throw new UncheckedIOException("Update could not be logged.", failure);
+		}
+	}
+
+
+	/**
+	 * Body of the flusher thread. Repeatedly takes every pending record as one batch, writes it to the log and forces it to disk, then wakes the
+	 * writers waiting for it. Writers keep appending to a fresh buffer meanwhile, forming the next batch. Stops once closed and drained, or on error.
+	 */
+	private void flushBatches()
+	{
+		ByteBuffer batch = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+		while (true)
+		{
+			final long batchEnd;
+			final long batchGeneration;
+
+			synchronized (this)
+			{
+				try
+				{
+					while (pending.position() == 0 && !closed)
+					{
+						wait();
+					}
+
+					// Give other writers a chance to join the batch
+					final long deadline = System.nanoTime() + groupCommitDelay;
+					for (long remaining = groupCommitDelay; remaining > 0 && !closed; remaining = deadline - System.nanoTime())
+					{
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					}
+				}
+				catch (InterruptedException e)
+				{
+					// Only close() stops the flusher; carry on with what is pending
+				}
+
+				if (pending.position() == 0)	// Only possible once closed
+				{
+					return;
+				}
+
+				final ByteBuffer full = pending;	// Swap buffers, so that writers fill the empty one while this batch is written
+				batch.clear();
+				pending = batch;
+				batch = full;
+				batchEnd = appendedSequence;
+				batchGeneration = generation;
+			}
+
+			batch.flip();
+			try
+			{
+				synchronized (ioLock)
+				{
+					if (batchGeneration == generation)	// Otherwise a snapshot has captured these updates and emptied the log
+					{
+						while (batch.hasRemaining())
+						{
+							log.write(batch);
+						}
+						log.force(false);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				fail(e);
+				return;
+			}
+
+			synchronized (this)
+			{
+				durableSequence = Math.max(durableSequence, batchEnd);
+				numBatches++;
+				notifyAll();
+			}
+		}
+	}
+
+
+	/**
+	 * Records an error that keeps updates from reaching the disk, and wakes the writers waiting for them.
+	 * @param e The error.
+	 */
+	private synchronized void fail(final IOException e)
+	{
+		if (failure == null)
+		{
+			failure = e;
+		}
+		notifyAll();
+	}
+
+
+	/**
+	 * Checks that the table may still be updated.
+	 */
+	private void checkOpen()
+	{
+		if (closed)
+		{
+			throw new IllegalStateException("Table has been closed.");
+		}
+
+		if (failure != null)
+		{
+			throw new UncheckedIOException("Log can no longer be written.", failure);
+		}
+	}
+
+
+	/**
+	 * Empties the log and starts it with the current generation. Must be called while holding ioLock, or before the flusher starts.
+	 * @throws IOException If the log cannot be written.
+	 */
+	private void startLog() throws IOException
+	{
+		log.truncate(0);
+		log.position(0);
+
+		final ByteBuffer header = encodeGeneration(generation, new CRC32());
+		while (header.hasRemaining())
+		{
+			log.write(header);
+		}
+		log.force(true);
+	}
+
+
+	/**
+	 * Reads the generation record at the start of a snapshot or log file.
+	 * @param file The file.
+	 * @return The generation, or -1 if the file does not start with a valid generation record.
+	 * @throws IOException If the file cannot be read.
+	 */
+	private static long readGeneration(final Path file) throws IOException
+	{
+		if (Files.size(file) < HEADER_LENGTH + GENERATION_PAYLOAD_LENGTH)
+		{
+			return -1;
+		}
+
+		final ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + GENERATION_PAYLOAD_LENGTH);
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(file)))
+		{
+			in.readFully(record.array());
+		}
+
+		final CRC32 recordChecksum = new CRC32();
+		recordChecksum.update(record.array(), HEADER_LENGTH, GENERATION_PAYLOAD_LENGTH);
+		if (record.getInt(0) != GENERATION_PAYLOAD_LENGTH || record.getInt(Integer.BYTES) != (int) recordChecksum.getValue()
+			|| record.get(HEADER_LENGTH) != GENERATION)
+		{
+			return -1;
+		}
+		return record.getLong(HEADER_LENGTH + 1);
+	}
+
+
+	/**
+	 * Reads the records of a file and applies them to the table, stopping at the end of the file or at the first record that is cut short or fails its
+	 * checksum.
+	 * @param file The snapshot or log file.
+	 * @return The length of the file's valid records, in bytes.
+	 * @throws IOException If the file cannot be read.
+	 */
+	private long replay(final Path file) throws IOException
+	{
+		final long fileLength = Files.size(file);
+		final CRC32 recordChecksum = new CRC32();
+		byte[] payload = new byte[256];
+		long validLength = 0;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), INITIAL_BUFFER_SIZE)))
+		{
+			while (fileLength - validLength >= HEADER_LENGTH)
+			{
+				final int payloadLength = in.readInt();
+				final int expectedChecksum = in.readInt();
+
+				if (payloadLength < 1 || payloadLength > fileLength - validLength - HEADER_LENGTH)
+				{
+					break;	// Torn or damaged record
+				}
+
+				if (payload.length < payloadLength)
+				{
+					payload = new byte[Math.max(payloadLength, 2 * payload.length)];
+				}
+				in.readFully(payload, 0, payloadLength);
+
+				recordChecksum.reset();
+				recordChecksum.update(payload, 0, payloadLength);
+				if ((int) recordChecksum.getValue() != expectedChecksum)
+				{
+					break;
+				}
+
+				apply(ByteBuffer.wrap(payload, 0, payloadLength));
+				validLength += HEADER_LENGTH + payloadLength;
+			}
+		}
+		catch (EOFException e)
+		{
+			// The file ended inside a record; its valid records have been applied
+		}
+
+		return validLength;
+	}
+
+
+	/**
+	 * Applies the update held by a record's payload to the table. Generation records hold no update.
+	 * @param payload The payload, positioned at its start.
+	 */
+	private void apply(final ByteBuffer payload)
+	{
+		final byte type = payload.get();
+		if (type == GENERATION)
+		{
+			return;
+		}
+
+		final String key = readString(payload);
+		if (type == PUT)
+		{
+			table.put(key, readString(payload));
+		}
+		else
+		{
+			table.remove(key);
+		}
+	}
+
+
+	/**
+	 * Encodes a record and appends it to a buffer, growing the buffer if needed. A record is the length of its payload and the payload's CRC-32,
+	 * followed by the payload: the record type, then the key and, for a put, the value, each as a length and UTF-8 bytes.
+	 * @param buffer The buffer to append to, in write mode.
+	 * @param type The record type, PUT or REMOVE.
+	 * @param key The key of the update.
+	 * @param value The value of a put, null for a remove.
+	 * @param recordChecksum The checksum to compute with.
+	 * @return The buffer holding the record; a new one if the given one was too small.
+	 */
+	private static ByteBuffer encode(ByteBuffer buffer, final byte type, final String key, final String value, final CRC32 recordChecksum)
+	{
+		final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		final byte[] valueBytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+		final int payloadLength = 1 + Integer.BYTES + keyBytes.length + (valueBytes == null ? 0 : Integer.BYTES + valueBytes.length);
+
+		if (buffer.remaining() < HEADER_LENGTH + payloadLength)
+		{
+			final ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + HEADER_LENGTH + payloadLength));
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+
+		final int start = buffer.position();
+		buffer.putInt(payloadLength);
+		buffer.putInt(0);	// Checksum, filled in below
+		buffer.put(type);
+		buffer.putInt(keyBytes.length);
+		buffer.put(keyBytes);
+		if (valueBytes != null)
+		{
+			buffer.putInt(valueBytes.length);
+			buffer.put(valueBytes);
+		}
+
+		recordChecksum.reset();
+		recordChecksum.update(buffer.array(), buffer.arrayOffset() + start + HEADER_LENGTH, payloadLength);
+		buffer.putInt(start + Integer.BYTES, (int) recordChecksum.getValue());
+
+		return buffer;
+	}
+
+
+	/**
+	 * Encodes a generation record, which starts every snapshot and log file. Its payload is the record type, then the generation as a long.
+	 * @param generation The generation.
+	 * @param recordChecksum The checksum to compute with.
+	 * @return A buffer holding the record, ready to be read.
+	 */
+	private static ByteBuffer encodeGeneration(final long generation, final CRC32 recordChecksum)
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + GENERATION_PAYLOAD_LENGTH);
+		buffer.putInt(GENERATION_PAYLOAD_LENGTH);
+		buffer.putInt(0);	// Checksum, filled in below
+		buffer.put(GENERATION);
+		buffer.putLong(generation);
+
+		recordChecksum.reset();
+		recordChecksum.update(buffer.array(), HEADER_LENGTH, GENERATION_PAYLOAD_LENGTH);
+		buffer.putInt(Integer.BYTES, (int) recordChecksum.getValue());
+
+		buffer.flip();
+		return buffer;
+	}
+
+
+	/**
+	 * Reads a string written by encode.
+	 * @param payload The payload, positioned at the string's length.
+	 * @return The string.
+	 */
+	private static String readString(final ByteBuffer payload)
+	{
+		final int length = payload.getInt();
+		final String string = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+		payload.position(payload.position() + length);
+		return string;
+	}
+
+
+	/**
+	 * Writes the contents of a buffer to a channel and empties the buffer.
+	 * @param buffer The buffer, in write mode.
+	 * @param out The channel.
+	 * @return Null if the contents were written, the error otherwise.
+	 */
+	private static IOException drain(final ByteBuffer buffer, final FileChannel out)
+	{
+		buffer.flip();
+		try
+		{
+			while (buffer.hasRemaining())
+			{
+				out.write(buffer);
+			}
+			return null;
+		}
+		catch (IOException e)
+		{
+			return e;
+		}
+		finally
+		{
+			buffer.clear();
+		}
+	}
+
+
+	/**
+	 * Forces the directory's entries to disk, so that a renamed snapshot survives a crash. Not every platform can open a directory for this; there,
+	 * the rename is left to the file system.
+	 */
+	private void syncDirectory()
+	{
+		try (FileChannel directory = FileChannel.open(snapshotFile.getParent(), StandardOpenOption.READ))
+		{
+			directory.force(true);
+		}
+		catch (IOException e)
+		{
+			// Directories cannot be opened on this platform
+		}
+	}
+}
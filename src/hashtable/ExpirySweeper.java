@@ -0,0 +1,71 @@
+package hashtable;
+
+/**
+ * Sweeps a HashTable for expired entries in bounded slices, and counts the expired entries the table removes, whether by a sweep, lazily when a
+ * search finds one, or by a resize that leaves them behind. Successive sweeps continue where the last one stopped, wrapping around, so sweeping
+ * regularly with a small slice cleans the whole table without ever pausing for a full scan.
+ *
+ * The table calls sweep and recordExpirations under its write lock, so the sweeper needs no synchronization of its own.
+ */
+class ExpirySweeper
+{
+	private int sweepIndex;			// Index at which the next sweep starts
+	private int numExpirations;		// The number of expired entries removed so far
+
+
+	/**
+	 * Sweeps a slice of a table's positions, removing the expired entries found. Must be called by the writer.
+	 * @param table The table to sweep.
+	 * @param maxPositions The maximum number of positions to examine, a positive integer.
+	 * @return The number of expired entries removed.
+	 */
+	int sweep(final HashTable table, final int maxPositions)
+	{
+		int removed = 0;
+		final int slice = Math.min(maxPositions, table.size());
+
+		for (int i = 0; i < slice; i++)
+		{
+			sweepIndex = sweepIndex % table.size();		// The table may have been rehashed by the last removal
+
+			// Removing an entry from a bin moves the later ones down a slot, so the slot only advances past live entries
+			for (int slot = 0; slot < table.entriesAt(sweepIndex); )
+			{
+				if (table.entryAt(sweepIndex, slot).isExpired())
+				{
+					table.removeAt(sweepIndex, slot);
+					numExpirations++;
+					removed++;
+				}
+				else
+				{
+					slot++;
+				}
+			}
+
+			sweepIndex++;
+		}
+
+		return removed;
+	}
+
+
+	/**
+	 * Counts expired entries the table removed outside a sweep.
+	 * @param count The number of expired entries removed.
+	 */
+	void recordExpirations(final int count)
+	{
+		numExpirations += count;
+	}
+
+
+	/**
+	 * Returns the number of expired entries removed so far.
+	 * @return The number of expirations.
+	 */
+	int getNumberOfExpirations()
+	{
+		return numExpirations;
+	}
+}
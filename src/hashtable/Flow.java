@@ -0,0 +1,72 @@
+package hashtable;
+
+/**
+ * Interfaces for streams with demand-based backpressure, with the same names, methods and contracts as those of java.util.concurrent.Flow, which
+ * is not available on the Java version this project targets. A subscriber receives items only as fast as it requests them, so a slow consumer
+ * throttles a fast source instead of being flooded by it. Code written against these interfaces moves to java.util.concurrent.Flow by changing its
+ * imports.
+ */
+public final class Flow
+{
+	private Flow() {}
+
+
+	/**
+	 * A source of items, which it sends to each subscriber no faster than the subscriber requests them.
+	 * @param <T> The type of the items.
+	 */
+	@FunctionalInterface
+	public interface Publisher<T>
+	{
+		/**
+		 * Adds a subscriber, which is then passed its subscription through onSubscribe.
+		 * @param subscriber The subscriber.
+		 */
+		void subscribe(Subscriber<? super T> subscriber);
+	}
+
+
+	/**
+	 * A receiver of items. Its methods are called one at a time for each subscription: onSubscribe first, then onNext no more often than
+	 * requested, then at most one of onError and onComplete.
+	 * @param <T> The type of the items.
+	 */
+	public interface Subscriber<T>
+	{
+		void onSubscribe(Subscription subscription);
+
+		void onNext(T item);
+
+		void onError(Throwable throwable);
+
+		void onComplete();
+	}
+
+
+	/**
+	 * The link between a publisher and one of its subscribers, through which the subscriber requests items or stops receiving them.
+	 */
+	public interface Subscription
+	{
+		/**
+		 * Adds to the number of items the subscriber is ready to receive.
+		 * @param n The number of items; must be positive.
+		 */
+		void request(long n);
+
+		/**
+		 * Stops the sending of items, which may not stop at once.
+		 */
+		void cancel();
+	}
+
+
+	/**
+	 * A stage that is both a subscriber and a publisher.
+	 * @param <T> The type of the items received.
+	 * @param <R> The type of the items published.
+	 */
+	public interface Processor<T, R> extends Subscriber<T>, Publisher<R>
+	{
+	}
+}
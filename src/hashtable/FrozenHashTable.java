@@ -0,0 +1,295 @@
+package hashtable;
+
+import java.util.Random;
+
+/**
+ * The FrozenHashTable class is an immutable, read-only copy of a HashTable, obtained through HashTable.freeze(). Its entries are laid out with a
+ * minimal perfect hash function: every key is assigned its own slot in an array exactly as long as the number of entries, so no space is left empty and
+ * every lookup reads exactly one slot, whether the key is present or not.
+ *
+ * The perfect hash function is built in the style of PTHash. Keys are hashed with a seeded 64-bit hash and distributed into buckets, with about 60% of
+ * the keys sent to 30% of the buckets. Buckets are then placed from largest to smallest: for each bucket, the smallest "pilot" number is searched for
+ * such that re-hashing every key of the bucket with the pilot sends it to a slot not yet taken. Only the pilot of each bucket is stored, at about
+ * one integer per few keys. A lookup hashes the key, reads the pilot of its bucket, and computes its slot directly.
+ */
+public final class FrozenHashTable
+{
+	private static final double BUCKET_DENSITY = 5.0;			// Average number of buckets per log2(n) keys; more buckets build faster but take more space
+	private static final double DENSE_KEY_FRACTION = 0.6;		// Fraction of keys sent to the dense buckets
+	private static final double DENSE_BUCKET_FRACTION = 0.3;	// Fraction of buckets that are dense
+	private static final long DENSE_THRESHOLD = (long) (DENSE_KEY_FRACTION * (1L << 32));
+	private static final int MAX_SEED_ATTEMPTS = 32;			// Number of seeds to try before giving up
+
+	private long seed;					// Seed of the key hash function; fixed once the table is built
+	private final int numBuckets;		// Number of buckets
+	private final int numDenseBuckets;	// Number of buckets receiving the dense fraction of the keys
+	private final int[] pilots;			// Pilot of each bucket
+	private final String[] keys;		// Key of the entry held by each slot
+	private final String[] values;		// Value of the entry held by each slot
+
+
+	/**
+	 * Constructor. Builds a minimal perfect hash table over the given entries. Used by HashTable.freeze().
+	 * @param entryKeys The keys of the entries. Must be distinct.
+	 * @param entryValues The values of the entries, in the same order as the keys.
+	 */
+	FrozenHashTable(final String[] entryKeys, final String[] entryValues)
+	{
+		final int n = entryKeys.length;
+
+		this.numBuckets = Math.max(1, (int) Math.ceil(BUCKET_DENSITY * n / (log2(n) + 1)));
+		this.numDenseBuckets = Math.max(1, (int) (DENSE_BUCKET_FRACTION * numBuckets));
+		this.pilots = new int[numBuckets];
+		this.keys = new String[n];
+		this.values = new String[n];
+
+		final Random rand = new Random();
+		final long[] hashes = new long[n];
+		boolean built = n == 0;
+
+		// Each attempt fails only if two keys share a full 64-bit hash or a pilot search runs away, so a second seed is almost never needed
+		for (int attempt = 0; !built && attempt < MAX_SEED_ATTEMPTS; attempt++)
+		{
+			seed = rand.nextLong();
+
+			for (int i = 0; i < n; i++)
+			{
+				hashes[i] = Hashing.hash64(entryKeys[i], seed);
+			}
+
+			built = searchPilots(hashes, entryKeys, entryValues);
+		}
+
+		if (!built)
+		{
+			throw new IllegalArgumentException("Could not build a perfect hash function; keys may not be distinct.");
+		}
+	}
+
+
+	/**
+	 * Finds a pilot for each bucket, placing the entries into their slots.
+	 * @param hashes The hash of each key, under the current seed.
+	 * @param entryKeys The keys of the entries.
+	 * @param entryValues The values of the entries.
+	 * @return True if and only if every bucket was placed.
+	 */
+	private boolean searchPilots(final long[] hashes, final String[] entryKeys, final String[] entryValues)
+	{
+		final int n = hashes.length;
+
+		// Group the keys by bucket: bucketStart[b] is the start of bucket b's keys in members
+		final int[] bucketStart = new int[numBuckets + 1];
+		final int[] bucketOfKey = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			bucketOfKey[i] = bucket(hashes[i]);
+			bucketStart[bucketOfKey[i] + 1]++;
+		}
+
+		int maxBucketSize = 0;
+		for (int b = 0; b < numBuckets; b++)
+		{
+			maxBucketSize = Math.max(maxBucketSize, bucketStart[b + 1]);
+			bucketStart[b + 1] += bucketStart[b];
+		}
+
+		final int[] members = new int[n];
+		final int[] fill = new int[numBuckets];
+		for (int i = 0; i < n; i++)
+		{
+			final int b = bucketOfKey[i];
+			members[bucketStart[b] + fill[b]++] = i;
+		}
+
+		// Order the buckets from largest to smallest with a counting sort on their sizes
+		final int[] sizeStart = new int[maxBucketSize + 2];
+		for (int b = 0; b < numBuckets; b++)
+		{
+			sizeStart[maxBucketSize - (bucketStart[b + 1] - bucketStart[b]) + 1]++;
+		}
+		for (int s = 0; s <= maxBucketSize; s++)
+		{
+			sizeStart[s + 1] += sizeStart[s];
+		}
+		final int[] order = new int[numBuckets];
+		for (int b = 0; b < numBuckets; b++)
+		{
+			order[sizeStart[maxBucketSize - (bucketStart[b + 1] - bucketStart[b])]++] = b;
+		}
+
+		final boolean[] taken = new boolean[n];
+		final int[] slots = new int[maxBucketSize];
+		final long maxPilot = 64L * n + 1024;	// The last buckets see only a few free slots, so expect up to about n attempts for each
+
+		for (final int b : order)
+		{
+			final int start = bucketStart[b];
+			final int size = bucketStart[b + 1] - start;
+
+			if (size == 0)
+			{
+				break;	// Buckets are sorted by size, so all remaining buckets are empty
+			}
+
+			int pilot = 0;
+			while (!tryPilot(pilot, hashes, members, start, size, taken, slots))
+			{
+				if (++pilot > maxPilot)
+				{
+					return false;
+				}
+			}
+
+			pilots[b] = pilot;
+			for (int j = 0; j < size; j++)
+			{
+				final int i = members[start + j];
+				keys[slots[j]] = entryKeys[i];
+				values[slots[j]] = entryValues[i];
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Attempts to place a bucket with a given pilot. Marks the slots as taken if and only if every key of the bucket lands in a distinct free slot.
+	 * @param pilot The pilot to try.
+	 * @param hashes The hash of each key.
+	 * @param members The keys grouped by bucket.
+	 * @param start The start of the bucket in members.
+	 * @param size The number of keys in the bucket.
+	 * @param taken Which slots are already taken.
+	 * @param slots Receives the slot of each key of the bucket.
+	 * @return True if and only if the bucket was placed.
+	 */
+	private boolean tryPilot(final int pilot, final long[] hashes, final int[] members, final int start, final int size, final boolean[] taken, final int[] slots)
+	{
+		for (int j = 0; j < size; j++)
+		{
+			final int slot = slot(hashes[members[start + j]], pilot);
+
+			if (taken[slot])	// Collides with a placed bucket, or with an earlier key of the same bucket; release this bucket's slots
+			{
+				for (int k = 0; k < j; k++)
+				{
+					taken[slots[k]] = false;
+				}
+				return false;
+			}
+
+			taken[slot] = true;
+			slots[j] = slot;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Searches the table for an entry with the given key and returns the associated value. Returns null if the entry is not found.
+	 * @param key The key of the entry to search for.
+	 * @return The associated value if it is found, null otherwise.
+	 */
+	public String get(final String key)
+	{
+		String foundValue = null;
+
+		if (keys.length > 0)
+		{
+			final long hash = Hashing.hash64(key, seed);
+			final int slot = slot(hash, pilots[bucket(hash)]);
+
+			if (keys[slot].equals(key))
+			{
+				foundValue = values[slot];
+			}
+		}
+
+		return foundValue;
+	}
+
+
+	/**
+	 * Checks if the table holds an entry with the given key.
+	 * @param key The key to search for.
+	 * @return True if and only if an entry with the key is held.
+	 */
+	public boolean containsKey(final String key)
+	{
+		return get(key) != null;
+	}
+
+
+	/**
+	 * Returns the number of entries held by the table. As the table is minimal, this is also the number of slots.
+	 * @return The number of entries.
+	 */
+	public int size()
+	{
+		return keys.length;
+	}
+
+
+	/**
+	 * Checks if the table is empty.
+	 * @return True if and only if the table has no entries.
+	 */
+	public boolean isEmpty()
+	{
+		return keys.length == 0;
+	}
+
+
+	/**
+	 * Returns the number of buckets, each of which stores one pilot.
+	 * @return The number of buckets.
+	 */
+	public int getNumberOfBuckets()
+	{
+		return numBuckets;
+	}
+
+
+	/**
+	 * Maps a key hash to its bucket. Hashes whose upper half falls below the dense threshold go to the first, dense, buckets.
+	 * @param hash The key hash.
+	 * @return The bucket index.
+	 */
+	private int bucket(final long hash)
+	{
+		if ((hash >>> 32) < DENSE_THRESHOLD)
+		{
+			return Hashing.reduce(hash << 32, numDenseBuckets);
+		}
+		else
+		{
+			return numDenseBuckets + Hashing.reduce(hash << 32, numBuckets - numDenseBuckets);
+		}
+	}
+
+
+	/**
+	 * Maps a key hash and its bucket's pilot to a slot.
+	 * @param hash The key hash.
+	 * @param pilot The pilot of the key's bucket.
+	 * @return The slot index.
+	 */
+	private int slot(final long hash, final int pilot)
+	{
+		return Hashing.reduce(Hashing.mix(hash ^ Hashing.mix(pilot + seed)), keys.length);
+	}
+
+
+	/**
+	 * Computes the base 2 logarithm of a non-negative integer, as a floating-point number.
+	 * @param n The integer.
+	 * @return The base 2 logarithm of n, or 0 if n is 0.
+	 */
+	private static double log2(final int n)
+	{
+		return n == 0 ? 0 : Math.log(n) / Math.log(2);
+	}
+}
@@ -0,0 +1,528 @@
+package hashtable;
+
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Set;
+
+import prime.Prime;
+
+/**
+ * The HashQualityAnalyzer class measures how well a combination of hash function, compressor and collision handling scheme spreads a given set of
+ * keys, without building a HashTable, so that configurations can be compared before they are deployed. It reads the distinct words of a key file and
+ * reports:
+ * <ul>
+ * <li>Hash codes shared by several keys, which no compressor or table size can separate; Key.hashCode only reads a prefix of each key.</li>
+ * <li>The distribution of keys over the table's home indices: the chi-square statistic against a uniform distribution, empty and fullest indices.</li>
+ * <li>Avalanche behavior: the share of hash bits that change when one bit of one character of a key is flipped, ideally one half.</li>
+ * <li>Probe lengths of a simulated table filled with the keys, against those expected of uniform hashing at the same load.</li>
+ * <li>Hot clusters: the longest runs of consecutive occupied positions, against the longest expected at random.</li>
+ * </ul>
+ *
+ * Options are given as --name=value:
+ * <ul>
+ * <li>--keys: the key file, one or more words per line (default hash_test_file1.txt).</li>
+ * <li>--hash: key (Key.hashCode, the table's own), full (the same polynomial over every character), string (String.hashCode) or fnv (the
+ * 64-bit Hashing.hash64, folded to 32 bits). Default key.</li>
+ * <li>--compressor: mad (the table's own Compressor), mod (the hash code modulo the size) or multiply (the upper bits of the hash code times the
+ * size). Default mad.</li>
+ * <li>--collision: D or Q (default D); --threshold: the load the table is sized for (default 0.75), or --size: the table size, rounded up to a prime.</li>
+ * <li>--avalanche-keys: the number of keys sampled for avalanche (default 1000); --clusters: the number of clusters listed (default 5); --seed (default 42).</li>
+ * </ul>
+ */
+public class HashQualityAnalyzer
+{
+	private static final int AVALANCHE_CHARACTERS = 16;	// Leading characters of each sampled key whose bits are flipped
+	private static final int AVALANCHE_BITS = 8;		// Low bits flipped in each of those characters
+
+	private final Map<String, String> options;	// Command line options, by name
+
+
+	/**
+	 * A hash function from keys to 32-bit hash codes.
+	 */
+	private interface HashFunction
+	{
+		int hash(String key);
+	}
+
+
+	/**
+	 * Constructor. Reads the options.
+	 * @param args The command line arguments, each of the form --name=value.
+	 */
+	public HashQualityAnalyzer(final String[] args)
+	{
+		this.options = new LinkedHashMap<String, String>();
+
+		for (String arg : args)
+		{
+			final int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0)
+			{
+				throw new IllegalArgumentException("Options must be given as --name=value: " + arg);
+			}
+			options.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+	}
+
+
+	/**
+	 * Runs the analysis and prints the report.
+	 * @throws FileNotFoundException If the key file cannot be read.
+	 */
+	public void run() throws FileNotFoundException
+	{
+		final String[] keys = readKeys(option("keys", "hash_test_file1.txt"));
+		final HashFunction hashFunction = hashFunction(option("hash", "key"));
+		final CollisionHandler.CollisionHandlingScheme scheme = CollisionHandler.CollisionHandlingScheme.fromChar(option("collision", "D").charAt(0));
+		final double threshold = doubleOption("threshold", 0.75);
+		final Random rand = new Random(Long.parseLong(option("seed", "42")));
+
+		if (keys.length == 0)
+		{
+			throw new IllegalArgumentException("The key file holds no keys.");
+		}
+		if (!scheme.isProbing())
+		{
+			throw new IllegalArgumentException("Only the probing schemes, D and Q, can be simulated.");
+		}
+		if (!(0 < threshold && threshold <= 1))
+		{
+			throw new IllegalArgumentException("Threshold must be greater than 0 and at most 1.");
+		}
+
+		final int size = Prime.nextLargestPrime(options.containsKey("size") ? intOption("size", 0) : (int) Math.ceil(keys.length / threshold));
+		if (size < keys.length)
+		{
+			throw new IllegalArgumentException("A table of size " + size + " cannot hold " + keys.length + " keys.");
+		}
+		final Compressor compressor = compressor(option("compressor", "mad"), size, rand);
+		final CollisionHandler handler = CollisionHandler.create(scheme, size);
+
+		final int[] hashes = new int[keys.length];
+		for (int i = 0; i < keys.length; i++)
+		{
+			hashes[i] = hashFunction.hash(keys[i]);
+		}
+
+		System.out.println("--------HASH QUALITY--------");
+		System.out.println("Options: " + options);
+		System.out.println("Keys: " + keys.length + ", table size: " + size + ", load factor: " + format((double) keys.length / size));
+		System.out.println();
+		reportSharedHashes(keys, hashes);
+		reportDistribution(keys, hashes, compressor, size);
+		reportAvalanche(keys, hashFunction, intOption("avalanche-keys", 1000));
+		final boolean[] occupied = reportProbeLengths(keys, hashFunction, hashes, compressor, handler, size);
+		reportClusters(occupied, keys.length, intOption("clusters", 5));
+	}
+
+
+	/**
+	 * Reports the hash codes shared by several keys.
+	 * @param keys The keys.
+	 * @param hashes The hash code of each key.
+	 */
+	private static void reportSharedHashes(final String[] keys, final int[] hashes)
+	{
+		final Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+		int largest = 0;
+		int largestHash = 0;
+		for (int hash : hashes)
+		{
+			final int count = counts.merge(hash, 1, Integer::sum);
+			if (count > largest)
+			{
+				largest = count;
+				largestHash = hash;
+			}
+		}
+
+		int sharing = 0;	// Keys whose hash code some other key also has
+		for (int count : counts.values())
+		{
+			sharing += count > 1 ? count : 0;
+		}
+
+		System.out.println("Distinct hash codes: " + counts.size() + " (" + format(100.0 * counts.size() / keys.length) + "% of keys)");
+		System.out.println("Keys sharing a hash code: " + sharing + ", largest group: " + largest + exampleKeys(keys, hashes, largestHash));
+		System.out.println();
+	}
+
+
+	/**
+	 * Reports how the keys are spread over the home indices.
+	 * @param keys The keys.
+	 * @param hashes The hash code of each key.
+	 * @param compressor The compressor.
+	 * @param size The table size.
+	 */
+	private static void reportDistribution(final String[] keys, final int[] hashes, final Compressor compressor, final int size)
+	{
+		final int[] counts = new int[size];
+		for (int hash : hashes)
+		{
+			counts[compressor.compress(hash)]++;
+		}
+
+		final double expected = (double) keys.length / size;
+		double chiSquare = 0;
+		int empty = 0;
+		int fullest = 0;
+		for (int index = 0; index < size; index++)
+		{
+			chiSquare += (counts[index] - expected) * (counts[index] - expected) / expected;
+			empty += counts[index] == 0 ? 1 : 0;
+			fullest = counts[index] > counts[fullest] ? index : fullest;
+		}
+
+		final int degreesOfFreedom = size - 1;
+		final double z = (chiSquare - degreesOfFreedom) / Math.sqrt(2.0 * degreesOfFreedom);	// The statistic is close to normal for so many indices
+		System.out.println("Home index chi-square: " + format(chiSquare) + " with " + degreesOfFreedom + " degrees of freedom, z = " + format(z)
+			+ (Math.abs(z) < 3 ? " (consistent with uniform)" : " (not uniform)"));
+		System.out.println("Empty home indices: " + empty + ", expected " + format(size * Math.exp(-expected)));
+		System.out.println("Fullest home index: " + fullest + " with " + counts[fullest] + " keys" + exampleHomes(keys, hashes, compressor, fullest));
+		System.out.println();
+	}
+
+
+	/**
+	 * Reports the avalanche behavior of the hash function: flips, one at a time, each of the low bits of each of the leading characters of a sample
+	 * of the keys, and counts the hash bits that change.
+	 * @param keys The keys.
+	 * @param hashFunction The hash function.
+	 * @param numSamples The number of keys to sample.
+	 */
+	private static void reportAvalanche(final String[] keys, final HashFunction hashFunction, final int numSamples)
+	{
+		final long[] bitFlips = new long[Integer.SIZE];	// Number of flips of an input bit that changed each hash bit
+		long trials = 0;
+		long totalFlips = 0;
+		long unchanged = 0;								// Flips of an input bit that left the hash code as it was
+
+		final int stride = Math.max(1, keys.length / Math.max(1, numSamples));
+		for (int i = 0; i < keys.length; i += stride)
+		{
+			final char[] characters = keys[i].toCharArray();
+			final int hash = hashFunction.hash(keys[i]);
+			for (int c = 0; c < Math.min(characters.length, AVALANCHE_CHARACTERS); c++)
+			{
+				for (int bit = 0; bit < AVALANCHE_BITS; bit++)
+				{
+					characters[c] ^= 1 << bit;
+					final int difference = hash ^ hashFunction.hash(new String(characters));
+					characters[c] ^= 1 << bit;
+
+					trials++;
+					totalFlips += Integer.bitCount(difference);
+					unchanged += difference == 0 ? 1 : 0;
+					for (int b = 0; b < Integer.SIZE; b++)
+					{
+						bitFlips[b] += (difference >>> b) & 1;
+					}
+				}
+			}
+		}
+
+		if (trials == 0)
+		{
+			return;
+		}
+
+		double weakest = 1;
+		double strongest = 0;
+		for (long flips : bitFlips)
+		{
+			weakest = Math.min(weakest, (double) flips / trials);
+			strongest = Math.max(strongest, (double) flips / trials);
+		}
+
+		System.out.println("Avalanche: " + trials + " single-bit flips, " + format((double) totalFlips / (trials * Integer.SIZE))
+			+ " of hash bits changed on average (ideal 0.5)");
+		System.out.println("Change probability per hash bit: from " + format(weakest) + " to " + format(strongest) + "; flips with no effect: "
+			+ unchanged + " (" + format(100.0 * unchanged / trials) + "%)");
+		System.out.println();
+	}
+
+
+	/**
+	 * Fills a simulated table with the keys, and reports the probe lengths of hits and of misses against those of uniform hashing. The misses are
+	 * the keys with a character appended.
+	 * @param keys The keys.
+	 * @param hashFunction The hash function.
+	 * @param hashes The hash code of each key.
+	 * @param compressor The compressor.
+	 * @param handler The collision handler.
+	 * @param size The table size.
+	 * @return The positions occupied once every key is in.
+	 */
+	private static boolean[] reportProbeLengths(final String[] keys, final HashFunction hashFunction, final int[] hashes, final Compressor compressor,
+		final CollisionHandler handler, final int size)
+	{
+		final boolean[] occupied = new boolean[size];
+		long hitProbes = 0;
+		int longestHit = 0;
+		for (int hash : hashes)
+		{
+			int attempt = 0;
+			while (occupied[handler.probeIndex(compressor, size, hash, attempt)])
+			{
+				attempt++;
+			}
+			occupied[handler.probeIndex(compressor, size, hash, attempt)] = true;
+			hitProbes += attempt + 1;
+			longestHit = Math.max(longestHit, attempt + 1);
+		}
+
+		long missProbes = 0;
+		int longestMiss = 0;
+		for (String key : keys)
+		{
+			final int hash = hashFunction.hash(key + '#');
+			int attempt = 0;
+			while (attempt < size && occupied[handler.probeIndex(compressor, size, hash, attempt)])
+			{
+				attempt++;
+			}
+			missProbes += Math.min(attempt + 1, size);
+			longestMiss = Math.max(longestMiss, Math.min(attempt + 1, size));
+		}
+
+		final double load = (double) keys.length / size;
+		final double expectedHit = load < 1 ? Math.log(1 / (1 - load)) / load : Double.POSITIVE_INFINITY;
+		final double expectedMiss = load < 1 ? 1 / (1 - load) : size;
+		System.out.println("Collision handling scheme: " + handler.getType());
+		System.out.println("Hit probe length: average " + format((double) hitProbes / keys.length) + ", expected " + format(expectedHit) + ", longest "
+			+ longestHit);
+		System.out.println("Miss probe length: average " + format((double) missProbes / keys.length) + ", expected " + format(expectedMiss)
+			+ ", longest " + longestMiss);
+		System.out.println();
+		return occupied;
+	}
+
+
+	/**
+	 * Reports the longest runs of consecutive occupied positions, which lengthen the probes of every key whose sequence enters them.
+	 * @param occupied The occupied positions.
+	 * @param numKeys The number of keys in the table.
+	 * @param numClusters The number of runs to list.
+	 */
+	private static void reportClusters(final boolean[] occupied, final int numKeys, final int numClusters)
+	{
+		final int size = occupied.length;
+		int first = 0;
+		while (first < size && occupied[first])	// Start after a free position, so that no run wraps around the end
+		{
+			first++;
+		}
+		if (first == size)
+		{
+			System.out.println("Hot clusters: the table is full.");
+			return;
+		}
+
+		final List<int[]> runs = new ArrayList<int[]>();	// Start and length of each run
+		for (int offset = 1, start = -1; offset <= size; offset++)
+		{
+			final int index = (first + offset) % size;
+			if (occupied[index] && start < 0)
+			{
+				start = index;
+			}
+			else if (!occupied[index] && start >= 0)
+			{
+				runs.add(new int[] { start, (index - start + size) % size });
+				start = -1;
+			}
+		}
+		runs.sort((a, b) -> Integer.compare(b[1], a[1]));
+
+		final double load = (double) numKeys / size;
+		final double expectedLongest = Math.log(size * (1 - load)) / Math.log(1 / load);	// Longest run of occupied positions chosen at random
+		final StringBuilder listed = new StringBuilder();
+		for (int i = 0; i < Math.min(numClusters, runs.size()); i++)
+		{
+			listed.append(i == 0 ? "" : ", ").append(runs.get(i)[1]).append(" at ").append(runs.get(i)[0]);
+		}
+		System.out.println("Hot clusters: " + runs.size() + " runs of occupied positions; longest " + listed + "; expected longest about "
+			+ format(expectedLongest));
+		System.out.println();
+	}
+
+
+	/**
+	 * Lists a few of the keys with a given hash code.
+	 * @param keys The keys.
+	 * @param hashes The hash code of each key.
+	 * @param hash The hash code.
+	 * @return The keys, for a report.
+	 */
+	private static String exampleKeys(final String[] keys, final int[] hashes, final int hash)
+	{
+		final List<String> examples = new ArrayList<String>();
+		for (int i = 0; i < keys.length && examples.size() < 3; i++)
+		{
+			if (hashes[i] == hash)
+			{
+				examples.add(keys[i]);
+			}
+		}
+		return " " + examples;
+	}
+
+
+	/**
+	 * Lists a few of the keys with a given home index.
+	 * @param keys The keys.
+	 * @param hashes The hash code of each key.
+	 * @param compressor The compressor.
+	 * @param home The home index.
+	 * @return The keys, for a report.
+	 */
+	private static String exampleHomes(final String[] keys, final int[] hashes, final Compressor compressor, final int home)
+	{
+		final List<String> examples = new ArrayList<String>();
+		for (int i = 0; i < keys.length && examples.size() < 3; i++)
+		{
+			if (compressor.compress(hashes[i]) == home)
+			{
+				examples.add(keys[i]);
+			}
+		}
+		return " " + examples;
+	}
+
+
+	/**
+	 * Reads the distinct words of a file.
+	 * @param fileName The name of the file.
+	 * @return The words, in the order of their first occurrence.
+	 * @throws FileNotFoundException If the file cannot be read.
+	 */
+	private static String[] readKeys(final String fileName) throws FileNotFoundException
+	{
+		final Set<String> keys = new LinkedHashSet<String>();
+		try (Scanner input = new Scanner(new FileReader(fileName)))
+		{
+			while (input.hasNext())
+			{
+				keys.add(input.next());
+			}
+		}
+		return keys.toArray(new String[keys.size()]);
+	}
+
+
+	/**
+	 * Creates a hash function by name.
+	 * @param name key, full, string or fnv.
+	 * @return The hash function.
+	 */
+	private static HashFunction hashFunction(final String name)
+	{
+		switch (name)
+		{
+			case "key":
+				return Key::hash;
+			case "full":
+				return key ->
+				{
+					int code = 0;
+					for (int i = key.length() - 1; i >= 0; i--)
+					{
+						code = key.charAt(i) + code * Key.HASH_BASE;
+					}
+					return code;
+				};
+			case "string":
+				return String::hashCode;
+			case "fnv":
+				return key ->
+				{
+					final long hash = Hashing.hash64(key, 0);
+					return (int) (hash ^ (hash >>> 32));
+				};
+			default:
+				throw new IllegalArgumentException("Unknown hash " + name + "; expected key, full, string or fnv.");
+		}
+	}
+
+
+	/**
+	 * Creates a compressor by name.
+	 * @param name mad, mod or multiply.
+	 * @param size The table size.
+	 * @param rand The source of the table compressor's parameters.
+	 * @return The compressor.
+	 */
+	private static Compressor compressor(final String name, final int size, final Random rand)
+	{
+		switch (name)
+		{
+			case "mad":
+				return new Compressor(size, rand.nextInt(size - 1) + 1, rand.nextInt(size));
+			case "mod":
+				return new Compressor(size, 1, 0)
+				{
+					public int compress(final int hashCode)
+					{
+						return Math.floorMod(hashCode, size);
+					}
+				};
+			case "multiply":
+				return new Compressor(size, 1, 0)
+				{
+					public int compress(final int hashCode)
+					{
+						return (int) (((hashCode & 0xFFFFFFFFL) * size) >>> 32);
+					}
+				};
+			default:
+				throw new IllegalArgumentException("Unknown compressor " + name + "; expected mad, mod or multiply.");
+		}
+	}
+
+
+	private static String format(final double value)
+	{
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+
+	private String option(final String name, final String defaultValue)
+	{
+		final String value = options.get(name);
+		return value == null ? defaultValue : value;
+	}
+
+
+	private int intOption(final String name, final int defaultValue)
+	{
+		return Integer.parseInt(option(name, Integer.toString(defaultValue)));
+	}
+
+
+	private double doubleOption(final String name, final double defaultValue)
+	{
+		return Double.parseDouble(option(name, Double.toString(defaultValue)));
+	}
+
+
+	/**
+	 * Runs the analysis from the command line.
+	 * @param args The options, each of the form --name=value.
+	 * @throws Exception If the analysis fails.
+	 */
+	public static void main(final String[] args) throws Exception
+	{
+		new HashQualityAnalyzer(args).run();
+	}
+}
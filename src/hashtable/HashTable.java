@@ -1,5 +1,19 @@
 package hashtable;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
 import prime.Prime;
 import hashtable.CollisionHandler.CollisionHandlingScheme;
 
@@ -13,6 +27,11 @@ import hashtable.CollisionHandler.CollisionHandlingScheme;
  * 
  * There are two methods for resolving hash collisions: By default, collisions are resolved by double hashing - multiples of a secondary hash function are added to the key's raw hash until an empty
  * array index is found. The alternative is quadratic hashing, where the images of a quadratic integer function are added to the raw hash until a suitable location is found.
+ * A third method, separate chaining, keeps every entry in a bin at its key's home index; bins that grow long are sorted so that searching them stays
+ * logarithmic, and the load factor may exceed 1. A fourth, hopscotch hashing, keeps every entry within a small neighborhood of positions after its
+ * home index, so that a search only examines neighboring positions; a table with more keys sharing one hash code than a neighborhood holds switches
+ * to separate chaining. A fifth, d-left hashing, places every entry in the least loaded of four candidate buckets, so that the fullest bucket, and
+ * with it the longest search, stays close to the average however large the table grows.
  * 
  * To accelerate searching, removed entries are dealt with in one of three ways: By default, a special object (of type AvailablePosition) is placed in place of each entry. Alternatively, any key
  * string which begins with the symbol '-' can be considered a removed position. Finally, removed entries can simply be replaced with other entries whose keys would have had them out into the same
@@ -29,7 +48,7 @@ public class HashTable
 	 * 
 	 * AVAILABLE: Removed elements are replaced with AvailablePosition objects.
 	 * NEGATIVE: Removed elements have a '-' character placed at the head of their keys.
-	 * REPLACE: Removed elements are replaced with other elements that would have been placed in the same spot.
+	 * REPLACE: Removed elements are replaced with other elements that would have been placed in the same spot, or with AvailablePosition objects if none.
 	 *
 	 */
 	private enum EmptyMarkerScheme
@@ -88,6 +107,10 @@ public class HashTable
 	private static final boolean DEFAULT_EXPAND_BY_FACTOR = true;														// Default to expanding by a factor
 	private static final double DEFAULT_REHASH_FACTOR = 2;																// Default expansion factor
 	private static final int DEFAULT_REHASH_NUMBER = 100;																// Default expansion number
+	private static final int OPTIMISTIC_READ_ATTEMPTS = 2;																// Optimistic searches to try before waiting for the writer
+	private static final int DEFAULT_LONG_PROBE_THRESHOLD = 16;															// Default probe length reported to the listener
+	private static final int DEFAULT_MAX_PROBE_LENGTH = 64;																// Default probe length at which a put expands the table
+	private static final int MIN_PARALLEL_REHASH_ELEMENTS = 1 << 15;													// Fewest entries worth rehashing in parallel
 	
 	private static final CollisionHandlingScheme DEFAULT_COLLISION_HANDLING_SCHEME = CollisionHandlingScheme.DOUBLE;	// Default initial collision handling scheme
 	private static final EmptyMarkerScheme DEFAULT_EMPTY_MARKER_SCHEME = EmptyMarkerScheme.AVAILABLE;					// Default initial empty marker scheme
@@ -102,8 +125,29 @@ public class HashTable
 	private CollisionHandler collisionHandler;		// Iterates through array indices to find an empty spot, when hash collisions occur
 	private EmptyMarkerScheme emptyMarkerScheme;	// The current empty marker scheme being used
 	private int numElements;						// The number of elements held by the hash table; starts at 0
+	private int numFormerlyOccupied;				// The number of positions marked as formerly occupied
 	private double loadFactor;						// The ratio of held elements to array size
 	private double rehashThreshold;					// Maximum load factor before rehashing; between 0 and 1 inclusive
+	private BlockedBloomFilter membershipFilter;	// Answers "definitely absent" for most missing keys; null if disabled
+	private WorkloadSampler workloadSampler;		// Samples lookups to choose the scheme and threshold at the next resize; null if disabled
+	private HashTableListener listener;				// Receives resize, purge and long probe events; null if none
+	private int longProbeThreshold;					// Probe length from which searches are reported to the listener
+	private int maxProbeLength;						// Probe length at which a put expands the table instead of probing on
+	private int chainSlot;							// Under separate chaining, the slot within its bin of the entry last located by the writer
+	private volatile StampedLock lock;				// Serializes writers and validates optimistic readers; null unless concurrent reads are enabled
+	
+	// Background resizing variables
+	private final BackgroundResize backgroundResize = new BackgroundResize();	// Runs resizes on another thread, if enabled
+	private ForkJoinPool rehashPool;				// Rehashes large tables in parallel when resizing; null to rehash serially
+	private final SnapshotRegistry snapshots = new SnapshotRegistry();	// The open snapshots, whose chunks are copied before being written to
+	private final MemoryBudget memoryBudget = new MemoryBudget();	// Keeps the table below a memory budget, if one is set
+	private InternPool internPool;					// Deduplicates the values stored; null to store values as given
+	
+	// Cache variables
+	private final ClockEviction eviction = new ClockEviction();	// Chooses the entries to evict in cache mode
+	
+	// Expiration variables
+	private final ExpirySweeper expirySweeper = new ExpirySweeper();	// Sweeps for expired entries, and counts them
 	
 	// Expansion variables
 	private boolean expandByFactor;					// True if expanding table size by a given factor, false if expanding by a given addition  
@@ -154,6 +198,8 @@ public class HashTable
 		this.emptyMarkerScheme = emptyMarkerScheme;
 		this.numElements = 0;
 		this.rehashThreshold = initialRehashThreshold;
+		this.longProbeThreshold = DEFAULT_LONG_PROBE_THRESHOLD;
+		this.maxProbeLength = DEFAULT_MAX_PROBE_LENGTH;
 		
 		this.expandByFactor = DEFAULT_EXPAND_BY_FACTOR;
 		if (expandByFactor)
@@ -181,221 +227,2508 @@ public class HashTable
 	 * @return Null if a new entry was added, the old value if it was replaced.
 	 */
 	public String put(final String key, final String value)
-	{		
-		final KeyValuePair kvp = new KeyValuePair(key, value);	// Create a new key-value pair with the given strings
-		collisionHandler.reset(kvp.hashCode());					// Prepare the collisionHandler with the new pair; reset the counter
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			return putEntry(key, value, KeyValuePair.NO_EXPIRATION);
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Adds a new entry to the hash table which expires after a given time to live, or replaces the value and time to live of the entry with the same key.
+	 * Once expired, the entry is treated as absent: get returns null for it, and put treats it as new. Expired entries are removed when a put probes past
+	 * them, when the table is resized, or when swept by sweepExpired.
+	 * @param key The key of the entry to add.
+	 * @param value The value of the entry to add.
+	 * @param timeToLive The time after which the entry expires. Must be positive.
+	 * @param unit The unit of the time to live.
+	 * @return Null if a new entry was added or an expired one replaced, the old value if a live entry was replaced.
+	 */
+	public String put(final String key, final String value, final long timeToLive, final TimeUnit unit)
+	{
+		if (timeToLive <= 0)
+		{
+			throw new IllegalArgumentException("Time to live must be positive.");
+		}
+		
+		final long expirationTime = System.nanoTime() + unit.toNanos(timeToLive);
+		
+		final long stamp = lockForWriting();
+		try
+		{
+			return putEntry(key, value, expirationTime);
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Adds or replaces a batch of entries under a single acquisition of the write lock. Used by HashTableIngester.
+	 * @param keys The keys of the entries.
+	 * @param values The values of the entries, in the same order as the keys.
+	 * @param count The number of entries, taken from the start of the arrays.
+	 */
+	void putAll(final String[] keys, final String[] values, final int count)
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			for (int i = 0; i < count; i++)
+			{
+				putEntry(keys[i], values[i], KeyValuePair.NO_EXPIRATION);
+			}
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Adds or replaces an entry. Must be called by the writer.
+	 * @param key The key of the entry to add.
+	 * @param value The value of the entry to add.
+	 * @param expirationTime The time at which the entry expires, or KeyValuePair.NO_EXPIRATION.
+	 * @return Null if a new entry was added or an expired one replaced, the old value if a live entry was replaced.
+	 */
+	private String putEntry(final String key, final String value, final long expirationTime)
+	{
+		final int located = probeForPut(key);
+		
+		String oldValue = null;			// If no old value is found, will return null
+		if (located >= 0 && !(entryAt(located) instanceof CounterPair))
+		{
+			final KeyValuePair existing = entryAt(located);	// The position has the same key as the put entry
+			if (!existing.isExpired())
+			{
+				oldValue = existing.getValue();
+			}
+			preserve(located);
+			existing.setValue(canonicalValue(existing.getKey(), value));	// So, replace and return the old value
+			existing.setExpirationTime(expirationTime);
+			existing.markReferenced();
+			recordPendingUpdate(key, existing);
+		}
+		else if (located >= 0)			// Counters hold no string; replace the whole entry
+		{
+			if (!entryAt(located).isExpired())
+			{
+				oldValue = entryAt(located).getValue();
+			}
+			replaceAt(located, new KeyValuePair(key, canonicalValue(key, value), expirationTime));
+		}
+		else							// Otherwise, a new entry is created
+		{
+			insertAt(-located - 1, new KeyValuePair(key, canonicalValue(key, value), expirationTime));
+		}
+		
+		return oldValue;
+	}
+	
+	
+	/**
+	 * Returns the string to store as the value of an entry. While values are interned, a value equal to the entry's key is stored as the key itself,
+	 * and any other value as its canonical instance from the intern pool; otherwise, the value is stored as given.
+	 * @param key The key of the entry, as stored.
+	 * @param value The value to store.
+	 * @return The string to store.
+	 */
+	private String canonicalValue(final String key, final String value)
+	{
+		if (internPool == null || value == null)	// A null value is rejected by the entry
+		{
+			return value;
+		}
+		
+		return value.equals(key) ? key : internPool.intern(value);
+	}
+	
+	
+	/**
+	 * Searches for the entry with a given key, or the position a new entry with that key should take, in a single pass along the key's probe sequence.
+	 * Counts a collision for every entry passed, and removes expired entries passed along the way. Must be called by the writer.
+	 * @param key The key to search for.
+	 * @return The index of the entry with the key if there is one, which may have expired; otherwise -(i + 1), where i is the index for a new entry.
+	 */
+	private int probeForPut(final String key)
+	{
+		if (collisionHandler.getType() == CollisionHandlingScheme.CHAINING)
+		{
+			return locateInBin(key, true);
+		}
+		else if (collisionHandler.getType() == CollisionHandlingScheme.HOPSCOTCH)
+		{
+			return probeNeighborhood(key);
+		}
+		else if (collisionHandler.getType() == CollisionHandlingScheme.DLEFT)
+		{
+			return probeBuckets(key);
+		}
 		
-		// Iterate through the indices until an empty index or one holding an entry with the desired key is found
-		int index;
-		do
+		final int rawHash = Key.hash(key);
+		collisionHandler.reset(rawHash);	// Prepare the collisionHandler with the key; reset the counter
+		
+		// Iterate through the indices until a never-filled index or one holding an entry with the desired key is found. Formerly occupied indices
+		// are passed over, since an entry with the same key may lie beyond them, but the first of them is remembered as the place for a new entry.
+		// The probe sequence tries every index once in as many steps as the table holds, so the search ends even if no index is free.
+		int index = -1;
+		int freeIndex = -1;
+		boolean found = false;
+		for (int attempt = 0; !found && attempt < positions.length; attempt++)
 		{
-			index = compressor.compress(collisionHandler.nextHash());
+			if (attempt == maxProbeLength && growForLongProbe(rawHash))	// Rather than walk on, make the table roomier and search it afresh
+			{
+				return probeForPut(key);
+			}
+			
+			index = collisionHandler.probeIndex(compressor, positions.length, rawHash, attempt);
+			collisionHandler.incrementCounter();
 			
-			if (!positionIsEmpty(index))
+			if (positions[index] == null)
+			{
+				break;
+			}
+			else if (positionIsFormerlyOccupied(index))
+			{
+				if (freeIndex < 0)
+				{
+					freeIndex = index;
+				}
+			}
+			else if (positions[index].get().isExpired() && emptyMarkerScheme != EmptyMarkerScheme.REPLACE && !positions[index].get().getKey().equals(key))
+			{
+				expireAt(index);	// Clean up expired entries along the way; rolling back under REPLACE would move entries under the probe
+				if (freeIndex < 0)
+				{
+					freeIndex = index;
+				}
+			}
+			else
 			{
 				positions[index].get().incrementCollisions();
+				found = positions[index].get().getKey().equals(key);
 			}
 		}
-		while (!positionIsEmpty(index) && !positions[index].get().getKey().toString().equals(key));
 		
-		String oldValue = null;			// If no old value is found, will return null
-		if (positionIsEmpty(index))		// If the position is empty, a new entry is created
+		if (listener != null && collisionHandler.getCounter() >= longProbeThreshold)
+		{
+			listener.longProbe(collisionHandler.getCounter(), found);
+		}
+		
+		if (found)
+		{
+			return index;
+		}
+		else if (freeIndex < 0 && positions[index] != null)	// Every position holds a live entry
 		{
-			positions[index] = new Position(kvp, index);
-			addElement();				// Increment the number of elements; update load factor.
+			resizeTable(Math.max(nextExpandedSize(), size() + 1), collisionHandler.getType(), emptyMarkerScheme);
+			return probeForPut(key);
 		}
 		else
-		{			
-			oldValue = positions[index].get().getValue();	// If the position is not empty, it must have the same key as the put entry
-			positions[index].get().setValue(value);			// So, replace and return the old value 
+		{
+			return -((freeIndex >= 0 ? freeIndex : index) + 1);
+		}
+	}
+	
+	
+	/**
+	 * Expands the table after a put's probe reached the maximum probe length, if expanding can shorten it: the table must be allowed to grow, be at
+	 * least half as full as its rehash threshold, and at least half the entries the probe passed must have keys with other hash codes: keys sharing the
+	 * new key's hash code have the same probe sequence in a table of any size, and formerly occupied positions are not made fewer by growing. Must be called by the writer.
+	 * @param rawHash The hash code of the new key.
+	 * @return True if and only if the table was resized.
+	 */
+	private boolean growForLongProbe(final int rawHash)
+	{
+		if (size() >= maximumSize() || loadFactor < rehashThreshold / 2)
+		{
+			return false;
 		}
 		
-		return oldValue;
+		int otherHash = 0;	// Entries passed whose keys have other hash codes; a larger table would spread them out
+		for (int attempt = 0; attempt < maxProbeLength; attempt++)
+		{
+			final Position p = positions[collisionHandler.probeIndex(compressor, positions.length, rawHash, attempt)];
+			if (p != null && !isFormerlyOccupied(p) && p.get().hashCode() != rawHash)
+			{
+				otherHash++;
+			}
+		}
+		if (otherHash < maxProbeLength / 2)
+		{
+			return false;
+		}
+		
+		final Position[] oldPositions = positions;
+		expandTable();
+		return positions != oldPositions;	// The memory budget may have raised the rehash threshold instead
 	}
 	
 	
 	/**
-	 * Convenience method. Puts an entry with the same key and value.
-	 * @param keyValue The key and the value of the entry to add.
-	 * @return Null if a new entry was added, the old value if it was replaced.
+	 * Places a new entry at a position found by probeForPut, and updates the number of elements.
+	 * @param index The index of the position; never filled, or formerly occupied.
+	 * @param pair The new entry.
 	 */
-	public String put(final String keyValue)
+	private void insertAt(final int index, final KeyValuePair pair)
 	{
-		return put(keyValue, keyValue);
+		if (memoryBudget.isAtCapacity(numElements) && eviction.getCapacity() == 0)	// In cache mode, an entry is evicted instead
+		{
+			throw new IllegalStateException("The memory budget of " + memoryBudget.getBytes() + " bytes leaves no room for another entry.");
+		}
+		
+		preserve(index);
+		if (collisionHandler.getType() == CollisionHandlingScheme.CHAINING)	// Joining the bin at the index
+		{
+			positions[index] = positions[index] == null ? new Bin(pair, index) : ((Bin) positions[index]).with(pair);
+		}
+		else
+		{
+			if (positions[index] != null)	// Reusing a formerly occupied position
+			{
+				numFormerlyOccupied--;
+			}
+			
+			positions[index] = new Position(pair, index);
+			if (collisionHandler.getType() == CollisionHandlingScheme.HOPSCOTCH)
+			{
+				final int home = homeOf(pair);
+				((Hopscotch) collisionHandler).occupy(home, distance(home, index));
+			}
+			else if (collisionHandler.getType() == CollisionHandlingScheme.DLEFT)
+			{
+				((DLeft) collisionHandler).setHash(index, pair.hashCode());
+			}
+		}
+		if (membershipFilter != null)
+		{
+			membershipFilter.add(pair.getKey());
+		}
+		recordPendingUpdate(pair.getKey(), pair);	// Before the load factor is checked, which may install a background resize
+		addElement();				// Increment the number of elements; update load factor.
 	}
 	
 	
 	/**
-	 * Searches the table for an entry with the given key and returns the associated value. Returns null if the entry is not found.
+	 * Replaces the entry at a given position with another entry with the same key.
+	 * @param index The index of the position. Must hold an entry.
+	 * @param pair The replacing entry.
+	 */
+	private void replaceAt(final int index, final KeyValuePair pair)
+	{
+		preserve(index);
+		positions[index] = positions[index] instanceof Bin ? ((Bin) positions[index]).replacing(chainSlot, pair) : new Position(pair, index);
+		recordPendingUpdate(pair.getKey(), pair);
+	}
+	
+	
+	/**
+	 * Returns the entry at an index found by probeForPut or locate. Under separate chaining, this is the entry they found within the bin.
+	 * @param index The index of the entry. Must hold an entry.
+	 * @return The entry.
+	 */
+	private KeyValuePair entryAt(final int index)
+	{
+		final Position p = positions[index];
+		return p instanceof Bin ? ((Bin) p).get(chainSlot) : p.get();
+	}
+	
+	
+	/**
+	 * Searches the bin at a key's home index for the entry with the key, under separate chaining, and remembers its slot for entryAt, replaceAt and
+	 * removeAt. Must be called by the writer.
+	 * @param key The key to search for.
+	 * @param countCollisions True to count a collision against every entry compared with the key, as a put does.
+	 * @return The index of the bin if it holds an entry with the key, which may have expired; otherwise -(i + 1), where i is the index of the bin.
+	 */
+	private int locateInBin(final String key, final boolean countCollisions)
+	{
+		final int rawHash = Key.hash(key);
+		final int index = compressor.compress(collisionHandler.probe(rawHash, 0));
+		final Bin bin = (Bin) positions[index];
+		
+		chainSlot = bin == null ? -1 : bin.find(key, 0, key.length(), rawHash, countCollisions);
+		
+		if (listener != null && bin != null && bin.searchLength(chainSlot) >= longProbeThreshold)
+		{
+			listener.longProbe(bin.searchLength(chainSlot), chainSlot >= 0);
+		}
+		
+		return chainSlot >= 0 ? index : -(index + 1);
+	}
+	
+	
+	/**
+	 * Finds the index of the entry with the given key, without counting collisions or removing expired entries. Under separate chaining, also
+	 * remembers the entry's slot within its bin. Must be called by the writer.
 	 * @param key The key of the entry to search for.
-	 * @return The associated value if it is found, null otherwise
+	 * @return The index of the entry if it is found, -1 otherwise.
 	 */
-	public String get(final String key)
+	private int locate(final String key)
+	{
+		if (collisionHandler.getType() == CollisionHandlingScheme.CHAINING)
+		{
+			final int located = locateInBin(key, false);
+			return located >= 0 ? located : -1;
+		}
+		else if (collisionHandler.getType() == CollisionHandlingScheme.HOPSCOTCH)
+		{
+			final int home = compressor.compress(collisionHandler.probe(Key.hash(key), 0));
+			return findInNeighborhood(key, 0, key.length(), home, positions, (Hopscotch) collisionHandler, false);
+		}
+		else if (collisionHandler.getType() == CollisionHandlingScheme.DLEFT)
+		{
+			return findInBuckets(key, 0, key.length(), Key.hash(key), positions, (DLeft) collisionHandler);
+		}
+		
+		return findIndex(key, positions, compressor, collisionHandler);
+	}
+	
+	
+	/**
+	 * Searches the neighborhood of a key's home index for the entry with the key, under hopscotch hashing. If there is none, makes room for one within
+	 * the neighborhood, moving other entries if needed, and growing the table if there is no way to. Must be called by the writer.
+	 * @param key The key to search for.
+	 * @return The index of the entry with the key if there is one, which may have expired; otherwise -(i + 1), where i is the index for a new entry.
+	 */
+	private int probeNeighborhood(final String key)
 	{
-		final Key target = new Key(key);			// Create a new key-value pair with the given strings
-		collisionHandler.reset(target.hashCode());	// Prepare the collision handler
+		final Hopscotch hopscotch = (Hopscotch) collisionHandler;
+		final int rawHash = Key.hash(key);
+		final int home = compressor.compress(hopscotch.probe(rawHash, 0));
+		final int index = findInNeighborhood(key, 0, key.length(), home, positions, hopscotch, true);
+		final int probeLength = Hopscotch.searchLength(hopscotch.getNeighborhood(home), index < 0 ? -1 : distance(home, index));
 		
-		// Iterate until the entry is found, an empty location is found, or all elements have been searched.
-		int index;
-		int elementsSearched = 0;
-		do
+		if (listener != null && probeLength >= longProbeThreshold)
 		{
-			index = compressor.compress(collisionHandler.nextHash());
-			elementsSearched++;
+			listener.longProbe(probeLength, index >= 0);
 		}
-		while (elementsSearched <= numElements && !positionIsEmpty(index) && !positions[index].get().getKey().toString().equals(key));
 		
-		String foundValue = null;											// If the entry is not found, return null
-		if (elementsSearched <= numElements && !positionIsEmpty(index))
+		if (index >= 0)
 		{
-			foundValue = positions[index].get().getValue().toString();		// If the entry is found, return the value
+			return index;
 		}
 		
-		return foundValue;
+		final int freeIndex = makeRoom(home);
+		if (freeIndex < 0 && isFullOfHash(home, rawHash))
+		{
+			// Growing spreads out entries with different hash codes, but never those with the same one; only bins can hold more of them
+			resizeTable(size(), CollisionHandlingScheme.CHAINING, emptyMarkerScheme);
+			return probeForPut(key);
+		}
+		else if (freeIndex < 0)	// No entry can move out of the way; a larger table spreads the homes out
+		{
+			resizeTable(Math.max(nextExpandedSize(), size() + 1), CollisionHandlingScheme.HOPSCOTCH, emptyMarkerScheme);
+			return probeForPut(key);
+		}
+		
+		return -(freeIndex + 1);
 	}
 	
 	
 	/**
-	 * Searches for an entry with the given key, and removes and returns the associated value if one is found. Returns null otherwise.
-	 * @param key The key of the entry to remove.
-	 * @return The value of the removed entry if one is found, null otherwise.
+	 * Finds a free position within the neighborhood of a home index, under hopscotch hashing. Takes the nearest free position after the home index;
+	 * while it lies outside the neighborhood, moves into it the farthest entry before it whose own neighborhood still covers it, which brings the free
+	 * position closer to the home index.
+	 * @param home The home index.
+	 * @return The index of the free position, or -1 if none can be brought within the neighborhood.
 	 */
-	public String remove(final String key)
+	private int makeRoom(final int home)
 	{
-		final Key target = new Key(key);
-		collisionHandler.reset(target.hashCode());
+		final Hopscotch hopscotch = (Hopscotch) collisionHandler;
+		final int reach = Math.min(Hopscotch.NEIGHBORHOOD_SIZE, positions.length);	// A small table wraps around within one neighborhood
 		
-		int index;
-		int elementsSearched = 0;
+		int free = 0;	// Distance of the free position from the home index
+		while (free < positions.length && !positionIsEmpty((home + free) % positions.length))
+		{
+			free++;
+		}
 		
-		// Iterate through table contents until an empty location is found, all elements are searched, or an entry with a matching key is found
-		do
+		if (free == positions.length)
 		{
-			index = compressor.compress(collisionHandler.nextHash());
-			elementsSearched++;
+			return -1;
 		}
-		while (elementsSearched <= numElements && !positionIsEmpty(index) && !positions[index].get().getKey().toString().equals(key));
 		
-		String foundValue = null;	// If no matching entry is found, return null
-		if (elementsSearched <= numElements && !positionIsEmpty(index))	// Otherwise, return the matching value and delete the entry
+		while (free >= reach)
+		{
+			final int freeIndex = (home + free) % positions.length;
+			boolean moved = false;
+			
+			// Every position between the home index and the free one holds an entry
+			for (int back = reach - 1; back > 0 && !moved; back--)
+			{
+				final int candidate = (home + free - back) % positions.length;
+				final KeyValuePair pair = positions[candidate].get();
+				final int candidateHome = homeOf(pair);
+				
+				if (distance(candidateHome, freeIndex) < reach)
+				{
+					// Fill the free position before vacating the old one, so that the entry is never missing from the positions
+					preserve(freeIndex);
+					preserve(candidate);
+					positions[freeIndex] = new Position(pair, freeIndex);
+					hopscotch.occupy(candidateHome, distance(candidateHome, freeIndex));
+					hopscotch.vacate(candidateHome, distance(candidateHome, candidate));
+					positions[candidate] = null;
+					hopscotch.recordDisplacement();
+					
+					free -= back;
+					moved = true;
+				}
+			}
+			
+			if (!moved)
+			{
+				return -1;
+			}
+		}
+		
+		return (home + free) % positions.length;
+	}
+	
+	
+	/**
+	 * Checks if every position of a neighborhood holds an entry from its home with a given hash code, under hopscotch hashing.
+	 * @param home The home index.
+	 * @param rawHash The hash code.
+	 * @return True if and only if no entry with the hash code can ever be added to the neighborhood, whatever the size of the table.
+	 */
+	private boolean isFullOfHash(final int home, final int rawHash)
+	{
+		final int neighborhood = ((Hopscotch) collisionHandler).getNeighborhood(home);
+		if (Integer.bitCount(neighborhood) < Math.min(Hopscotch.NEIGHBORHOOD_SIZE, positions.length))
 		{
-			foundValue = positions[index].get().getValue().toString();
-			makePositionAvailable(index);	// Marks the position as formerly occupied, but now available
-			addElements(-1);
+			return false;
 		}
 		
-		return foundValue;
+		for (int distance = 0; distance < Math.min(Hopscotch.NEIGHBORHOOD_SIZE, positions.length); distance++)
+		{
+			if (positions[(home + distance) % positions.length].get().hashCode() != rawHash)
+			{
+				return false;
+			}
+		}
+		
+		return true;
 	}
 	
 	
 	/**
-	 * Marks the position as available according to the empty marker scheme of the hash table
-	 * @param index
+	 * Computes the home index of an entry, under hopscotch hashing.
+	 * @param pair The entry.
+	 * @return The home index.
 	 */
-	private void makePositionAvailable(final int index)
+	private int homeOf(final KeyValuePair pair)
 	{
-		switch (emptyMarkerScheme)
+		return compressor.compress(collisionHandler.probe(pair.hashCode(), 0));
+	}
+	
+	
+	/**
+	 * Computes how far a position lies after a home index, wrapping around the end of the positions.
+	 * @param home The home index.
+	 * @param index The index of the position.
+	 * @return The distance, between 0 and size() - 1.
+	 */
+	private int distance(final int home, final int index)
+	{
+		return Math.floorMod(index - home, positions.length);
+	}
+	
+	
+	/**
+	 * Finds the entry with a key given in any of the forms accepted by get within the neighborhood of its home index, under hopscotch hashing. Only
+	 * the positions marked in the home index's bitmap are examined.
+	 * @param key The key of the entry to search for: a CharSequence, a char[] or a ByteBuffer.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @param home The home index of the key.
+	 * @param slots The positions to search.
+	 * @param hopscotch The collision handler holding the bitmaps matching the positions.
+	 * @param countCollisions True to count a collision against every entry compared with the key; only the writer may count.
+	 * @return The index of the entry if it is found, -1 otherwise.
+	 */
+	private static int findInNeighborhood(final Object key, final int offset, final int length, final int home, final Position[] slots,
+		final Hopscotch hopscotch, final boolean countCollisions)
+	{
+		int neighborhood = hopscotch.getNeighborhood(home);
+		
+		while (neighborhood != 0)
 		{
-			case AVAILABLE:
-				positions[index] = new AvailablePosition(index);	// If using the AVAILABLE scheme, replace the positon with an AvailablePosition marker
-				break;
-			case NEGATIVE:
-				final KeyValuePair original = positions[index].get();	// If using the NEGATIVE scheme, place a '-' character at the head of the entry's key
-				final KeyValuePair negated = new KeyValuePair("-" + original.getKey().toString(), original.getValue().toString());
-				positions[index] = new Position(negated, index);
-				break;
-			case REPLACE:	// If using the REPLACE scheme, pull back another entry with the same hash to the removed location
-				rollBack(index);
-				break;
-			default:	// This should not occur; all enum values are accounted for
-				throw new RuntimeException(emptyMarkerScheme + " is an unsupported EmptyMarkerScheme.");
+			final int index = (home + Integer.numberOfTrailingZeros(neighborhood)) % slots.length;
+			final KeyValuePair pair = slots[index] == null ? null : slots[index].get();
+			neighborhood &= neighborhood - 1;	// Clear the lowest set bit
+			
+			if (pair != null)
+			{
+				if (countCollisions)
+				{
+					pair.incrementCollisions();
+				}
+				
+				if (keyEquals(pair.getKey(), key, offset, length))
+				{
+					return index;
+				}
+			}
+		}
+		
+		return -1;
+	}
+	
+	
+	/**
+	 * Searches the candidate buckets of a key for the entry with the key, under d-left hashing, counting a collision for every entry whose key is
+	 * compared. If there is none, picks a free position in the least loaded candidate bucket, the leftmost on a tie. If every candidate bucket is full,
+	 * removes the expired entries in them, or failing that grows the table. Must be called by the writer.
+	 * @param key The key to search for.
+	 * @return The index of the entry with the key if there is one, which may have expired; otherwise -(i + 1), where i is the index for a new entry.
+	 */
+	private int probeBuckets(final String key)
+	{
+		final DLeft dLeft = (DLeft) collisionHandler;
+		final int rawHash = Key.hash(key);
+		final int bucketSize = dLeft.getBucketSize();
+		
+		int freeIndex = -1;
+		int leastLoad = bucketSize;
+		int probeLength = 0;
+		for (int subtable = 0; subtable < DLeft.NUM_SUBTABLES; subtable++)
+		{
+			final int start = dLeft.bucketStart(rawHash, subtable);
+			int load = 0;
+			int bucketFreeIndex = -1;
+			
+			for (int index = start; index < start + bucketSize; index++)
+			{
+				if (positions[index] == null)
+				{
+					if (bucketFreeIndex < 0)
+					{
+						bucketFreeIndex = index;
+					}
+					continue;
+				}
+				
+				load++;
+				probeLength++;
+				if (dLeft.getHash(index) != rawHash)	// Most entries are told apart by their hashes alone
+				{
+					continue;
+				}
+				
+				positions[index].get().incrementCollisions();
+				if (positions[index].get().getKey().equals(key))
+				{
+					if (listener != null && probeLength >= longProbeThreshold)
+					{
+						listener.longProbe(probeLength, true);
+					}
+					return index;
+				}
+			}
+			
+			if (load < leastLoad)
+			{
+				leastLoad = load;
+				freeIndex = bucketFreeIndex;
+			}
+		}
+		
+		if (listener != null && probeLength >= longProbeThreshold)
+		{
+			listener.longProbe(probeLength, false);
+		}
+		
+		if (freeIndex >= 0)
+		{
+			return -(freeIndex + 1);
+		}
+		else if (removeExpiredFromBuckets(rawHash))
+		{
+			return probeBuckets(key);
+		}
+		else if (areBucketsFullOfHash(rawHash))
+		{
+			// Growing spreads out entries with different hash codes, but never those with the same one; only bins can hold more of them
+			resizeTable(size(), CollisionHandlingScheme.CHAINING, emptyMarkerScheme);
+			return probeForPut(key);
+		}
+		
+		resizeTable(Math.max(nextExpandedSize(), size() + 1), CollisionHandlingScheme.DLEFT, emptyMarkerScheme);	// More buckets spread the keys out
+		return probeForPut(key);
+	}
+	
+	
+	/**
+	 * Removes the expired entries from the candidate buckets of a hash code, under d-left hashing.
+	 * @param rawHash The hash code.
+	 * @return True if any entry was removed.
+	 */
+	private boolean removeExpiredFromBuckets(final int rawHash)
+	{
+		final DLeft dLeft = (DLeft) collisionHandler;
+		boolean removed = false;
+		
+		for (int subtable = 0; subtable < DLeft.NUM_SUBTABLES; subtable++)
+		{
+			final int start = dLeft.bucketStart(rawHash, subtable);
+			for (int index = start; index < start + dLeft.getBucketSize(); index++)
+			{
+				if (positions[index] != null && positions[index].get().isExpired())
+				{
+					expireAt(index);
+					removed = true;
+				}
+			}
+		}
+		
+		return removed;
+	}
+	
+	
+	/**
+	 * Checks if every candidate bucket of a hash code holds only entries with that hash code, under d-left hashing. Must be called once the buckets
+	 * are full.
+	 * @param rawHash The hash code.
+	 * @return True if and only if no entry with the hash code can ever be added, whatever the size of the table.
+	 */
+	private boolean areBucketsFullOfHash(final int rawHash)
+	{
+		final DLeft dLeft = (DLeft) collisionHandler;
+		
+		for (int subtable = 0; subtable < DLeft.NUM_SUBTABLES; subtable++)
+		{
+			final int start = dLeft.bucketStart(rawHash, subtable);
+			for (int index = start; index < start + dLeft.getBucketSize(); index++)
+			{
+				if (dLeft.getHash(index) != rawHash)
+				{
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Finds the entry with a key given in any of the forms accepted by get within its candidate buckets, under d-left hashing. Keeps no state, so that
+	 * any number of readers may search at once.
+	 * @param key The key: a CharSequence, a char[] or a ByteBuffer.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @param rawHash The raw hash of the key.
+	 * @param slots The positions to search.
+	 * @param dLeft The collision handler matching the positions.
+	 * @return The index of the entry if it is found, -1 otherwise.
+	 */
+	private static int findInBuckets(final Object key, final int offset, final int length, final int rawHash, final Position[] slots, final DLeft dLeft)
+	{
+		for (int subtable = 0; subtable < DLeft.NUM_SUBTABLES; subtable++)
+		{
+			final int start = dLeft.bucketStart(rawHash, subtable);
+			for (int index = start; index < start + dLeft.getBucketSize(); index++)
+			{
+				final Position p = dLeft.getHash(index) == rawHash ? slots[index] : null;	// Keys are only compared if their hashes match
+				if (p != null && keyEquals(p.get().getKey(), key, offset, length))
+				{
+					return index;
+				}
+			}
+		}
+		
+		return -1;
+	}
+	
+	
+	/**
+	 * Stores an entry object as it is, replacing any entry with the same key. Used to move entries between tables.
+	 * @param pair The entry to store.
+	 */
+	void storePair(final KeyValuePair pair)
+	{
+		final int located = probeForPut(pair.getKey());
+		
+		if (located >= 0)
+		{
+			replaceAt(located, pair);
+		}
+		else
+		{
+			insertAt(-located - 1, pair);
+		}
+	}
+	
+	
+	/**
+	 * Recomputes the value of the entry with the given key, in a single probe. The remapping function receives the key and its current value, or null if
+	 * there is no live entry; if it returns null, the entry is removed, otherwise its value is replaced, keeping its time to live, or a new entry is added.
+	 * The function must not modify the table.
+	 * @param key The key of the entry to compute.
+	 * @param remappingFunction Computes the new value from the key and the current value.
+	 * @return The new value, or null if there is none.
+	 */
+	public String compute(final String key, final BiFunction<String, String, String> remappingFunction)
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			final int located = probeForPut(key);
+			final boolean present = located >= 0 && !entryAt(located).isExpired();
+			final String newValue = remappingFunction.apply(key, present ? entryAt(located).getValue() : null);
+			
+			storeComputed(key, located, newValue);
+			return newValue;
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Returns the value of the entry with the given key; if there is no live entry, computes a value and adds it, in a single probe. The mapping function
+	 * must not modify the table.
+	 * @param key The key of the entry.
+	 * @param mappingFunction Computes a value from the key. If it returns null, no entry is added.
+	 * @return The current or computed value, or null if there is none.
+	 */
+	public String computeIfAbsent(final String key, final Function<String, String> mappingFunction)
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			final int located = probeForPut(key);
+			if (located >= 0 && !entryAt(located).isExpired())
+			{
+				entryAt(located).markReferenced();
+				return entryAt(located).getValue();
+			}
+			
+			final String newValue = mappingFunction.apply(key);
+			if (newValue != null)
+			{
+				storeComputed(key, located, newValue);
+			}
+			return newValue;
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Adds an entry with the given key and value if there is no live entry with the key; otherwise, combines the current value with the given one, in a
+	 * single probe. If the combination is null, the entry is removed. The remapping function must not modify the table.
+	 * @param key The key of the entry.
+	 * @param value The value to add or combine. Must not be null.
+	 * @param remappingFunction Combines the current value with the given value.
+	 * @return The new value, or null if the entry was removed.
+	 */
+	public String merge(final String key, final String value, final BiFunction<String, String, String> remappingFunction)
+	{
+		if (value == null)
+		{
+			throw new IllegalArgumentException("Value must not be null.");
+		}
+		
+		final long stamp = lockForWriting();
+		try
+		{
+			final int located = probeForPut(key);
+			final boolean present = located >= 0 && !entryAt(located).isExpired();
+			final String newValue = present ? remappingFunction.apply(entryAt(located).getValue(), value) : value;
+			
+			storeComputed(key, located, newValue);
+			return newValue;
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Stores the result of a compute or merge at the position found by probeForPut.
+	 * @param key The key of the entry.
+	 * @param located The result of probeForPut for the key.
+	 * @param newValue The new value, or null to remove the entry.
+	 */
+	private void storeComputed(final String key, final int located, final String newValue)
+	{
+		if (located < 0)
+		{
+			if (newValue != null)
+			{
+				insertAt(-located - 1, new KeyValuePair(key, canonicalValue(key, newValue)));
+			}
+		}
+		else if (newValue == null)
+		{
+			if (entryAt(located).isExpired())
+			{
+				expirySweeper.recordExpirations(1);
+			}
+			removeAt(located);
+		}
+		else if (entryAt(located).isExpired() || entryAt(located) instanceof CounterPair)
+		{
+			replaceAt(located, new KeyValuePair(key, canonicalValue(key, newValue)));	// An expired entry is replaced as a new one
+		}
+		else
+		{
+			final KeyValuePair existing = entryAt(located);
+			preserve(located);
+			existing.setValue(canonicalValue(existing.getKey(), newValue));
+			existing.markReferenced();
+			recordPendingUpdate(key, existing);
+		}
+	}
+	
+	
+	/**
+	 * Adds a given amount to the count held by the entry with the given key, in a single probe. Counts are held as primitive numbers, so counting neither
+	 * parses nor creates strings; get returns a count in decimal. If there is no live entry, a counter starting at the given amount is added. If the entry
+	 * holds a string, it is converted to a counter, and must be a decimal integer.
+	 * @param key The key of the counter.
+	 * @param delta The amount to add; may be negative.
+	 * @return The new count.
+	 */
+	public long increment(final String key, final long delta)
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			final int located = probeForPut(key);
+			
+			if (located < 0)
+			{
+				insertAt(-located - 1, new CounterPair(key, delta));
+				return delta;
+			}
+			
+			final KeyValuePair existing = entryAt(located);
+			if (existing.isExpired())
+			{
+				replaceAt(located, new CounterPair(key, delta));
+				return delta;
+			}
+			else if (existing instanceof CounterPair)
+			{
+				final CounterPair counter = (CounterPair) existing;
+				preserve(located);
+				counter.add(delta);
+				counter.markReferenced();
+				recordPendingUpdate(key, counter);
+				return counter.getCount();
+			}
+			else
+			{
+				final CounterPair counter = new CounterPair(key, Long.parseLong(existing.getValue()) + delta);
+				counter.setExpirationTime(existing.getExpirationTime());
+				replaceAt(located, counter);
+				return counter.getCount();
+			}
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Returns the count held by the entry with the given key, without creating a string.
+	 * @param key The key of the counter.
+	 * @return The count, or 0 if there is no live entry with the key.
+	 * @throws NumberFormatException If the entry holds a string that is not a decimal integer.
+	 */
+	public long getCount(final String key)
+	{
+		final StampedLock readLock = lock;
+		final long stamp = readLock == null ? 0 : readLock.readLock();
+		try
+		{
+			final KeyValuePair found = findEntry(key, 0, key.length(), positions, compressor, collisionHandler, null);
+			long count = 0;
+			
+			if (found != null && !found.isExpired())
+			{
+				count = found instanceof CounterPair ? ((CounterPair) found).getCount() : Long.parseLong(found.getValue());
+			}
+			
+			return count;
+		}
+		finally
+		{
+			if (stamp != 0)
+			{
+				readLock.unlockRead(stamp);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Convenience method. Puts an entry with the same key and value.
+	 * @param keyValue The key and the value of the entry to add.
+	 * @return Null if a new entry was added, the old value if it was replaced.
+	 */
+	public String put(final String keyValue)
+	{
+		return put(keyValue, keyValue);
+	}
+	
+	
+	/**
+	 * Searches the table for an entry with the given key and returns the associated value. Returns null if the entry is not found.
+	 * 
+	 * If concurrent reads are enabled, no lock is taken: the search runs optimistically and is only repeated if a write raced with it.
+	 * @param key The key of the entry to search for.
+	 * @return The associated value if it is found, null otherwise
+	 */
+	public String get(final String key)
+	{
+		return lookUp(key, 0, key.length());
+	}
+	
+	
+	/**
+	 * Searches the table for an entry whose key has the given characters and returns the associated value, without creating a string for the key.
+	 * @param key The characters of the key of the entry to search for.
+	 * @return The associated value if it is found, null otherwise
+	 */
+	public String get(final CharSequence key)
+	{
+		return lookUp(key, 0, key.length());
+	}
+	
+	
+	/**
+	 * Searches the table for an entry whose key is made of a range of a character array and returns the associated value, without creating a string
+	 * for the key.
+	 * @param key The array holding the characters of the key of the entry to search for.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @return The associated value if it is found, null otherwise
+	 */
+	public String get(final char[] key, final int offset, final int length)
+	{
+		checkRange(key.length, offset, length);
+		return lookUp(key, offset, length);
+	}
+	
+	
+	/**
+	 * Searches the table for an entry whose key is made of a range of a byte buffer and returns the associated value, without creating a string for
+	 * the key. Each byte is read as one ISO-8859-1 character, so only keys whose characters all lie below 256 can be found this way; ASCII keys read
+	 * from UTF-8 text qualify.
+	 * @param key The buffer holding the bytes of the key of the entry to search for. Its position and limit are neither used nor changed.
+	 * @param offset The index of the first byte of the key.
+	 * @param length The number of bytes of the key.
+	 * @return The associated value if it is found, null otherwise
+	 */
+	public String get(final ByteBuffer key, final int offset, final int length)
+	{
+		checkRange(key.capacity(), offset, length);
+		return lookUp(key, offset, length);
+	}
+	
+	
+	/**
+	 * Checks if the table holds a live entry whose key has the given characters, without creating a string for the key.
+	 * @param key The characters of the key to search for.
+	 * @return True if and only if an entry with the key is held.
+	 */
+	public boolean containsKey(final CharSequence key)
+	{
+		return get(key) != null;
+	}
+	
+	
+	/**
+	 * Checks if the table holds a live entry whose key is made of a range of a character array, without creating a string for the key.
+	 * @param key The array holding the characters of the key to search for.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @return True if and only if an entry with the key is held.
+	 */
+	public boolean containsKey(final char[] key, final int offset, final int length)
+	{
+		return get(key, offset, length) != null;
+	}
+	
+	
+	/**
+	 * Checks if the table holds a live entry whose key is made of a range of a byte buffer, read as ISO-8859-1 characters, without creating a string
+	 * for the key.
+	 * @param key The buffer holding the bytes of the key to search for. Its position and limit are neither used nor changed.
+	 * @param offset The index of the first byte of the key.
+	 * @param length The number of bytes of the key.
+	 * @return True if and only if an entry with the key is held.
+	 */
+	public boolean containsKey(final ByteBuffer key, final int offset, final int length)
+	{
+		return get(key, offset, length) != null;
+	}
+	
+	
+	/**
+	 * Searches the table for a key given in any of the forms accepted by get, taking the read lock, if any, optimistically.
+	 * @param key The key of the entry to search for: a CharSequence, a char[] or a ByteBuffer.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @return The associated value if it is found, null otherwise
+	 */
+	private String lookUp(final Object key, final int offset, final int length)
+	{
+		final StampedLock readLock = lock;
+		if (readLock == null)
+		{
+			return findValue(key, offset, length);
+		}
+		
+		// Search without locking, then check that no write started or finished meanwhile. A search overlapping a write may see a torn table and fail;
+		// its result is discarded along with any exception, as validation will fail.
+		for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++)
+		{
+			final long stamp = readLock.tryOptimisticRead();
+			if (stamp != 0)
+			{
+				String foundValue = null;
+				try
+				{
+					foundValue = findValue(key, offset, length);
+				}
+				catch (RuntimeException e)
+				{
+					// Only possible if a write raced with this search
+				}
+				
+				if (readLock.validate(stamp))
+				{
+					return foundValue;
+				}
+			}
+		}
+		
+		// The writer is busy; wait for it rather than spinning
+		final long stamp = readLock.readLock();
+		try
+		{
+			return findValue(key, offset, length);
+		}
+		finally
+		{
+			readLock.unlockRead(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Searches the table for an entry with the given key and returns the associated value. Does not modify the table in any way, so that readers may
+	 * call it concurrently with each other.
+	 * @param key The key of the entry to search for: a CharSequence, a char[] or a ByteBuffer.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @return The associated value if it is found, null otherwise
+	 */
+	private String findValue(final Object key, final int offset, final int length)
+	{
+		final BlockedBloomFilter filter = membershipFilter;
+		if (filter != null && !mightContain(filter, key, offset, length))	// Most missing keys are rejected without probing
+		{
+			return null;
+		}
+		
+		final Position[] slots = positions;
+		final WorkloadSampler sampler = workloadSampler;
+		final KeyValuePair found = findEntry(key, offset, length, slots, compressor, collisionHandler, sampler != null && sampler.shouldSample() ? sampler : null);
+		
+		String foundValue = null;							// If the entry is not found, return null
+		if (found != null && !found.isExpired())			// Expired entries are left for writers to remove
+		{
+			found.markReferenced();							// A benign race with other readers; only used as a hint for cache eviction
+			foundValue = found.getValue();					// If the entry is found, return the value
+		}
+		
+		return foundValue;
+	}
+	
+	
+	/**
+	 * Finds the index of the entry with the given key. Iterates along the key's probe sequence, passing over formerly occupied positions, until the entry
+	 * is found, a never-filled position is found, or as many positions as the table holds have been searched. Keeps no state, so that any number of
+	 * readers may search at once; the table's components are passed in so that a reader uses one consistent set of them.
+	 * @param key The key of the entry to search for.
+	 * @param slots The positions to search.
+	 * @param slotCompressor The compressor matching the positions.
+	 * @param handler The collision handler matching the positions.
+	 * @return The index of the entry if it is found, -1 otherwise.
+	 */
+	private int findIndex(final String key, final Position[] slots, final Compressor slotCompressor, final CollisionHandler handler)
+	{
+		return findIndex(key, 0, key.length(), slots, slotCompressor, handler, null);
+	}
+	
+	
+	/**
+	 * Finds the index of the entry with a key given in any of the forms accepted by get. Hashes and compares the key in place, allocating nothing.
+	 * @param key The key of the entry to search for: a CharSequence, a char[] or a ByteBuffer.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @param slots The positions to search.
+	 * @param slotCompressor The compressor matching the positions.
+	 * @param handler The collision handler matching the positions.
+	 * @param sampler The sampler to record the search with, or null if it is not sampled.
+	 * @return The index of the entry if it is found, -1 otherwise.
+	 */
+	private int findIndex(final Object key, final int offset, final int length, final Position[] slots, final Compressor slotCompressor,
+		final CollisionHandler handler, final WorkloadSampler sampler)
+	{
+		final int rawHash = hash(key, offset, length);
+		int foundIndex = -1;
+		
+		int attempt = 0;
+		for (; attempt < slots.length; attempt++)
+		{
+			final int index = handler.probeIndex(slotCompressor, slots.length, rawHash, attempt);
+			final Position p = slots[index];
+			
+			if (p == null)
+			{
+				break;
+			}
+			else if (!isFormerlyOccupied(p) && keyEquals(p.get().getKey(), key, offset, length))
+			{
+				foundIndex = index;
+				break;
+			}
+		}
+		
+		recordSearch(sampler, foundIndex >= 0, Math.min(attempt + 1, slots.length), rawHash, slots.length);
+		
+		return foundIndex;
+	}
+	
+	
+	/**
+	 * Finds the entry with a key given in any of the forms accepted by get, under any collision handling scheme. Keeps no state, so that any number of
+	 * readers may search at once.
+	 * @param key The key of the entry to search for: a CharSequence, a char[] or a ByteBuffer.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @param slots The positions to search.
+	 * @param slotCompressor The compressor matching the positions.
+	 * @param handler The collision handler matching the positions.
+	 * @param sampler The sampler to record the search with, or null if it is not sampled.
+	 * @return The entry if it is found, which may have expired; null otherwise.
+	 */
+	private KeyValuePair findEntry(final Object key, final int offset, final int length, final Position[] slots, final Compressor slotCompressor,
+		final CollisionHandler handler, final WorkloadSampler sampler)
+	{
+		if (handler.getType().isProbing())
+		{
+			final int index = findIndex(key, offset, length, slots, slotCompressor, handler, sampler);
+			return index >= 0 ? slots[index].get() : null;
+		}
+		else if (handler.getType() == CollisionHandlingScheme.HOPSCOTCH)
+		{
+			final Hopscotch hopscotch = (Hopscotch) handler;
+			final int rawHash = hash(key, offset, length);
+			final int home = slotCompressor.compress(hopscotch.probe(rawHash, 0));
+			final int index = findInNeighborhood(key, offset, length, home, slots, hopscotch, false);
+			
+			recordSearch(sampler, index >= 0, Hopscotch.searchLength(hopscotch.getNeighborhood(home), index < 0 ? -1 : Math.floorMod(index - home,
+				slots.length)), rawHash, slots.length);
+			
+			return index >= 0 ? slots[index].get() : null;
+		}
+		else if (handler.getType() == CollisionHandlingScheme.DLEFT)
+		{
+			final DLeft dLeft = (DLeft) handler;
+			final int rawHash = hash(key, offset, length);
+			final int index = findInBuckets(key, offset, length, rawHash, slots, dLeft);
+			
+			recordSearch(sampler, index >= 0, dLeft.searchLength(rawHash, index), rawHash, slots.length);
+			
+			return index >= 0 ? slots[index].get() : null;
+		}
+		
+		// Separate chaining: the entry can only be in the bin at the key's home index
+		final int rawHash = hash(key, offset, length);
+		final Bin bin = (Bin) slots[slotCompressor.compress(handler.probe(rawHash, 0))];
+		final int slot = bin == null ? -1 : bin.find(key, offset, length, rawHash, false);
+		
+		recordSearch(sampler, slot >= 0, bin == null ? 1 : bin.searchLength(slot), rawHash, slots.length);
+		
+		return slot >= 0 ? bin.get(slot) : null;
+	}
+	
+	
+	/**
+	 * Reports a search to the workload sampler, if it is sampled, and to the listener, if it was long.
+	 * @param sampler The sampler to record the search with, or null if it is not sampled.
+	 * @param found True if the search found its key.
+	 * @param probeLength The number of positions or entries the search examined.
+	 * @param rawHash The raw hash of the key.
+	 * @param numSlots The number of positions searched over.
+	 */
+	private void recordSearch(final WorkloadSampler sampler, final boolean found, final int probeLength, final int rawHash, final int numSlots)
+	{
+		if (sampler != null)
+		{
+			final int numFree = numSlots - numElements;
+			sampler.recordLookup(found, probeLength, rawHash, numFree > 0 ? (double) numFormerlyOccupied / numFree : 0);
+		}
+		
+		final HashTableListener eventListener = listener;
+		if (eventListener != null && probeLength >= longProbeThreshold)
+		{
+			eventListener.longProbe(probeLength, found);
+		}
+	}
+	
+	
+	/**
+	 * Computes the hash code of a key given in any of the forms accepted by get; the same as that of the equal Key.
+	 * @param key The key: a CharSequence, a char[] or a ByteBuffer.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @return The hash code.
+	 */
+	private static int hash(final Object key, final int offset, final int length)
+	{
+		if (key instanceof char[])
+		{
+			return Key.hash((char[]) key, offset, length);
+		}
+		else if (key instanceof ByteBuffer)
+		{
+			return Key.hash((ByteBuffer) key, offset, length);
+		}
+		else
+		{
+			return Key.hash((CharSequence) key);
+		}
+	}
+	
+	
+	/**
+	 * Checks a key given in any of the forms accepted by get against the membership filter.
+	 * @param filter The membership filter.
+	 * @param key The key: a CharSequence, a char[] or a ByteBuffer.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @return False if the key is definitely not in the table, true if it may be.
+	 */
+	private static boolean mightContain(final BlockedBloomFilter filter, final Object key, final int offset, final int length)
+	{
+		if (key instanceof char[])
+		{
+			return filter.mightContain((char[]) key, offset, length);
+		}
+		else if (key instanceof ByteBuffer)
+		{
+			return filter.mightContain((ByteBuffer) key, offset, length);
+		}
+		else
+		{
+			return filter.mightContain((CharSequence) key);
+		}
+	}
+	
+	
+	/**
+	 * Compares a stored key with a key given in any of the forms accepted by get, character by character.
+	 * @param stored The stored key.
+	 * @param key The key to compare: a CharSequence, a char[] or a ByteBuffer.
+	 * @param offset The index of the first character of the key.
+	 * @param length The number of characters of the key.
+	 * @return True if and only if the keys have the same characters.
+	 */
+	static boolean keyEquals(final String stored, final Object key, final int offset, final int length)
+	{
+		if (stored.length() != length)
+		{
+			return false;
+		}
+		else if (key instanceof char[])
+		{
+			final char[] chars = (char[]) key;
+			for (int i = 0; i < length; i++)
+			{
+				if (stored.charAt(i) != chars[offset + i])
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+		else if (key instanceof ByteBuffer)
+		{
+			final ByteBuffer bytes = (ByteBuffer) key;
+			for (int i = 0; i < length; i++)
+			{
+				if (stored.charAt(i) != (bytes.get(offset + i) & 0xFF))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+		else
+		{
+			return stored.contentEquals((CharSequence) key);
+		}
+	}
+	
+	
+	/**
+	 * Checks that a range lies within an array or buffer.
+	 * @param capacity The length of the array or the capacity of the buffer.
+	 * @param offset The index of the start of the range.
+	 * @param length The length of the range.
+	 */
+	private static void checkRange(final int capacity, final int offset, final int length)
+	{
+		if (offset < 0 || length < 0 || offset > capacity - length)
+		{
+			throw new IllegalArgumentException("Key range must lie within the key's array or buffer.");
+		}
+	}
+	
+	
+	/**
+	 * Searches for an entry with the given key, and removes and returns the associated value if one is found. Returns null otherwise.
+	 * @param key The key of the entry to remove.
+	 * @return The value of the removed entry if one is found, null otherwise.
+	 */
+	public String remove(final String key)
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			return removeEntry(key);
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Removes an entry. Must be called by the writer.
+	 * @param key The key of the entry to remove.
+	 * @return The value of the removed entry if one is found, null otherwise.
+	 */
+	String removeEntry(final String key)
+	{
+		if (membershipFilter != null && !membershipFilter.mightContain(key))
+		{
+			return null;
+		}
+		
+		final int index = locate(key);
+		
+		String foundValue = null;	// If no matching entry is found, return null
+		if (index >= 0)				// Otherwise, return the matching value and delete the entry
+		{
+			final boolean expired = entryAt(index).isExpired();
+			foundValue = removeAt(index);
+			if (expired)			// An expired entry counts as absent
+			{
+				expirySweeper.recordExpirations(1);
+				foundValue = null;
+			}
+		}
+		
+		return foundValue;
+	}
+	
+	
+	/**
+	 * Removes the entry at a given index. If formerly occupied positions then make up more than half of the positions not holding entries, the table is
+	 * rehashed at its current size to clear them, so that searches keep finding never-filled positions quickly.
+	 * @param index The index of the entry to remove. Must hold an entry.
+	 * @return The value of the removed entry.
+	 */
+	private String removeAt(final int index)
+	{
+		final KeyValuePair removed = detachAt(index);
+		addElements(-1);
+		
+		if (!backgroundResize.isRunning() && numFormerlyOccupied > 0 && numFormerlyOccupied > (size() - numElements) / 2)
+		{
+			purgeFormerlyOccupied();
+		}
+		
+		return removed.getValue();
+	}
+	
+	
+	/**
+	 * Removes one of the entries held at a given index. Used by the collaborators that remove entries they find walking the positions, such as
+	 * cache eviction. Must be called by the writer.
+	 * @param index The index of the position.
+	 * @param slot The slot of the entry, less than entriesAt(index).
+	 */
+	void removeAt(final int index, final int slot)
+	{
+		chainSlot = slot;
+		removeAt(index);
+	}
+	
+	
+	/**
+	 * Removes the expired entry at a given index without checking the load factor, which would resize the table in the middle of a probe. The load
+	 * factor only falls, so no expansion is missed.
+	 * @param index The index of the expired entry. Must hold an entry.
+	 */
+	private void expireAt(final int index)
+	{
+		detachAt(index);
+		numElements--;
+		loadFactor = ((double) numElements) / size();
+		expirySweeper.recordExpirations(1);
+	}
+	
+	
+	/**
+	 * Takes the entry at a given index out of the positions, the membership filter and any running background resize, leaving the number of elements
+	 * to the caller.
+	 * @param index The index of the entry. Must hold an entry.
+	 * @return The detached entry.
+	 */
+	private KeyValuePair detachAt(final int index)
+	{
+		final KeyValuePair removed = entryAt(index);
+		makePositionAvailable(index);	// Marks the position as formerly occupied, but now available
+		recordPendingUpdate(removed.getKey(), null);
+		
+		if (membershipFilter != null)	// The removed key's bits stay set; rebuild once too many removed keys linger
+		{
+			membershipFilter.recordRemoval();
+			if (membershipFilter.isStale())
+			{
+				rebuildMembershipFilter();
+			}
+		}
+		
+		return removed;
+	}
+	
+	
+	/**
+	 * Sweeps a bounded slice of the positions for expired entries and removes them. Successive sweeps continue where the last one stopped, wrapping
+	 * around, so calling this regularly with a small slice cleans the whole table without ever pausing for a full scan.
+	 * @param maxPositions The maximum number of positions to examine, a positive integer.
+	 * @return The number of expired entries removed.
+	 */
+	public int sweepExpired(final int maxPositions)
+	{
+		if (maxPositions <= 0)
+		{
+			throw new IllegalArgumentException("Number of positions to sweep must be a positive integer.");
+		}
+		
+		final long stamp = lockForWriting();
+		try
+		{
+			return expirySweeper.sweep(this, maxPositions);
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Schedules sweeps for expired entries at a fixed rate, each examining a bounded slice of the positions. Sweeps run on the executor's threads and
+	 * take the write lock, so concurrent reads must be enabled first.
+	 * @param executor The executor to run the sweeps on.
+	 * @param period The time between sweeps.
+	 * @param unit The unit of the period.
+	 * @param positionsPerSweep The maximum number of positions each sweep examines.
+	 * @return The scheduled sweeps; cancel it to stop sweeping.
+	 */
+	public ScheduledFuture<?> scheduleExpirySweeps(final ScheduledExecutorService executor, final long period, final TimeUnit unit, final int positionsPerSweep)
+	{
+		if (lock == null)
+		{
+			throw new IllegalStateException("Concurrent reads must be enabled before sweeping from another thread.");
+		}
+		
+		if (positionsPerSweep <= 0)
+		{
+			throw new IllegalArgumentException("Number of positions to sweep must be a positive integer.");
+		}
+		
+		return executor.scheduleAtFixedRate(() -> sweepExpired(positionsPerSweep), period, period, unit);
+	}
+	
+	
+	/**
+	 * Returns the number of expired entries removed so far, whether lazily, by a sweep, or by a resize.
+	 * @return The number of expirations.
+	 */
+	public int getNumberOfExpirations()
+	{
+		return expirySweeper.getNumberOfExpirations();
+	}
+	
+	
+	/**
+	 * Rehashes the table at its current size, clearing every formerly occupied position.
+	 */
+	private void purgeFormerlyOccupied()
+	{
+		final int formerlyOccupied = numFormerlyOccupied;
+		final long start = listener == null ? 0 : System.nanoTime();
+		
+		resizeTable(size(), collisionHandler.getType(), emptyMarkerScheme);
+		
+		if (listener != null)
+		{
+			listener.purged(formerlyOccupied, System.nanoTime() - start);
+		}
+	}
+
+
+	/**
+	 * Builds an immutable copy of the table's current, unexpired entries, laid out with a minimal perfect hash function. The copy holds no empty slots
+	 * and answers every lookup with a single slot access. The hash table itself is left unchanged. The entries are copied under the read lock if there is
+	 * one, so that a concurrent put or resize cannot tear the copy; the perfect hash function is built after the lock is released.
+	 * @return The frozen copy of the table.
+	 */
+	public FrozenHashTable freeze()
+	{
+		final List<String> keys = new ArrayList<>();
+		final List<String> values = new ArrayList<>();
+		forEachEntry((key, value) ->
+		{
+			keys.add(key);
+			values.add(value);
+		});
+
+		return new FrozenHashTable(keys.toArray(new String[keys.size()]), values.toArray(new String[values.size()]));
+	}
+
+
+	/**
+	 * Estimates the heap memory held by the table, by component: the positions array, the positions holding entries, the entries, their keys and
+	 * values, the markers of formerly occupied positions, and the membership filter, neighborhood bitmaps or bucket hashes. Walks every position, under the read
+	 * lock if there is one.
+	 * @return The estimated footprint.
+	 */
+	public MemoryFootprint getMemoryFootprint()
+	{
+		final StampedLock readLock = lock;
+		final long stamp = readLock == null ? 0 : readLock.readLock();
+		try
+		{
+			return measureFootprint();
+		}
+		finally
+		{
+			if (stamp != 0)
+			{
+				readLock.unlockRead(stamp);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Estimates the heap memory held by the table. See getMemoryFootprint. Must be called by the writer, or under the read lock.
+	 * @return The estimated footprint.
+	 */
+	MemoryFootprint measureFootprint()
+	{
+		return MemoryFootprint.measure(this, internPool != null, membershipFilter, collisionHandler.getType());
+	}
+	
+	
+	/**
+	 * Sets a memory budget. While set, each expansion estimates the table's footprint and chooses its size, and if need be raises the rehash
+	 * threshold, so that the table stays below the budget until its next expansion: growth slows and the table fills further as it nears the
+	 * budget. Once no expansion fits, the table stops growing and holds at most as many entries as the budget affords. A table in cache mode then
+	 * evicts an entry for each new one, as it does past its capacity; otherwise a put of a new key throws IllegalStateException, and removing
+	 * entries makes room again. Setting the budget again lets the table resume growing.
+	 * @param bytes The estimated size, in bytes, the table stays below, as measured by getMemoryFootprint; 0 for no budget.
+	 */
+	public void setMemoryBudget(final long bytes)
+	{
+		if (bytes < 0)
+		{
+			throw new IllegalArgumentException("Memory budget must be positive, or 0 for no budget.");
+		}
+		
+		final long stamp = lockForWriting();
+		try
+		{
+			memoryBudget.setBytes(bytes);	// The new budget may leave room to grow
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Enables or disables value interning. While enabled, every value stored is deduplicated: a value equal to its entry's key shares the key's
+	 * string, and any other value is replaced by the pool's canonical instance, so that entries with equal values share one string. This saves
+	 * memory when values repeat, as in dictionary-style workloads, at the cost of a lookup in the pool on every put. Values already stored are left
+	 * as they are.
+	 * @param pool The pool to intern values in, which may be shared with other tables, or null to store values as given.
+	 */
+	public void setInternPool(final InternPool pool)
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			internPool = pool;
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Returns the pool values are interned in.
+	 * @return The intern pool, or null if values are stored as given.
+	 */
+	public InternPool getInternPool()
+	{
+		return internPool;
+	}
+	
+	
+	/**
+	 * Returns the memory budget.
+	 * @return The estimated size, in bytes, the table stays below; 0 if there is no budget.
+	 */
+	public long getMemoryBudget()
+	{
+		return memoryBudget.getBytes();
+	}
+	
+	
+	/**
+	 * Takes a snapshot: a read-only view of the table's current, unexpired entries that later writes do not change. Nothing is copied when the snapshot
+	 * is taken; from then on, the first write to each chunk of HashTableSnapshot.CHUNK_SIZE positions copies the chunk's entries into the snapshot,
+	 * and a resize copies every chunk not yet copied. While concurrent reads are enabled, the snapshot may be read by other threads as the writer
+	 * keeps going. The snapshot must be closed once done with.
+	 * @return The snapshot.
+	 */
+	public HashTableSnapshot snapshot()
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			final HashTableSnapshot snapshot = new HashTableSnapshot(this, positions.length, System.nanoTime());
+			snapshots.add(snapshot);
+			return snapshot;
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Stops preserving the chunks of a closed snapshot. Used by HashTableSnapshot.close().
+	 * @param snapshot The snapshot.
+	 */
+	void release(final HashTableSnapshot snapshot)
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			snapshots.remove(snapshot);
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Copies the chunk holding a position into every open snapshot that has not copied it yet. Must be called by the writer before it changes the
+	 * position or any entry it holds.
+	 * @param index The index of the position about to change.
+	 */
+	private void preserve(final int index)
+	{
+		snapshots.preserve(this, index);
+	}
+	
+	
+	/**
+	 * Copies every chunk into the open snapshots that have not copied it yet, and closes them to writers. Must be called by the writer before it
+	 * replaces the positions array or changes how its positions are read.
+	 */
+	private void preserveAll()
+	{
+		snapshots.preserveAll(this);
+	}
+	
+	
+	/**
+	 * Reads a chunk of a snapshot, copying it from the table if no write has copied it yet. If concurrent reads are enabled, the copy runs without
+	 * locking and is checked against the write lock, as in get. Once a copy is validated, it is kept by the snapshot so that writers need not copy
+	 * the chunk again.
+	 * @param snapshot The snapshot.
+	 * @param chunk The index of the chunk.
+	 * @return The entries of the chunk as of the snapshot.
+	 */
+	KeyValuePair[] readChunk(final HashTableSnapshot snapshot, final int chunk)
+	{
+		final KeyValuePair[] entries = snapshot.getChunk(chunk);
+		if (entries != null)
+		{
+			return entries;
+		}
+		
+		final StampedLock readLock = lock;
+		if (readLock == null)
+		{
+			return snapshot.store(chunk, copyChunk(chunk));
+		}
+		
+		for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++)
+		{
+			final long stamp = readLock.tryOptimisticRead();
+			if (stamp != 0)
+			{
+				if (snapshot.getChunk(chunk) != null)	// Copied by a write finished since the first check
+				{
+					return snapshot.getChunk(chunk);
+				}
+				
+				KeyValuePair[] copied = null;
+				try
+				{
+					copied = copyChunk(chunk);
+				}
+				catch (RuntimeException e)
+				{
+					// Only possible if a write raced with this copy
+				}
+				
+				if (readLock.validate(stamp))
+				{
+					return snapshot.store(chunk, copied);
+				}
+			}
+		}
+		
+		final long stamp = readLock.readLock();
+		try
+		{
+			return snapshot.getChunk(chunk) != null ? snapshot.getChunk(chunk) : snapshot.store(chunk, copyChunk(chunk));
+		}
+		finally
+		{
+			readLock.unlockRead(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Copies the entries held by a chunk of the positions, including expired ones. The entries themselves are copied, as the writer updates values in
+	 * place.
+	 * @param chunk The index of the chunk.
+	 * @return The copies of the entries.
+	 */
+	KeyValuePair[] copyChunk(final int chunk)
+	{
+		final Position[] current = positions;
+		final int from = chunk * HashTableSnapshot.CHUNK_SIZE;
+		final int to = Math.min(from + HashTableSnapshot.CHUNK_SIZE, current.length);
+		
+		final List<KeyValuePair> entries = new ArrayList<>();
+		for (int i = from; i < to; i++)
+		{
+			for (int slot = 0, n = numberOfEntries(current[i], emptyMarkerScheme); slot < n; slot++)
+			{
+				entries.add(entry(current[i], slot).copy());
+			}
+		}
+		return entries.toArray(new KeyValuePair[entries.size()]);
+	}
+	
+	
+	/**
+	 * Passes every current, unexpired entry to an action, under the read lock if there is one. Used to copy the table's contents elsewhere.
+	 * @param action The action receiving the key and the value of each entry.
+	 */
+	void forEachEntry(final BiConsumer<String, String> action)
+	{
+		final StampedLock readLock = lock;
+		final long stamp = readLock == null ? 0 : readLock.readLock();
+		try
+		{
+			for (int i = 0; i < positions.length; i++)
+			{
+				for (int slot = 0, n = entriesAt(i); slot < n; slot++)
+				{
+					final KeyValuePair pair = entryAt(i, slot);
+					if (!pair.isExpired())
+					{
+						action.accept(pair.getKey(), pair.getValue());
+					}
+				}
+			}
+		}
+		finally
+		{
+			if (stamp != 0)
+			{
+				readLock.unlockRead(stamp);
+			}
+		}
+	}
+
+
+	/**
+	 * Marks the position as available according to the empty marker scheme of the hash table
+	 * @param index
+	 */
+	private void makePositionAvailable(final int index)
+	{
+		preserve(index);
+		if (positions[index] instanceof Bin)	// Under separate chaining, the entry simply leaves its bin
+		{
+			positions[index] = ((Bin) positions[index]).without(chainSlot);
+			return;
+		}
+		else if (collisionHandler.getType() == CollisionHandlingScheme.HOPSCOTCH)	// Searches never stop at a free position, so none is marked
+		{
+			final int home = homeOf(positions[index].get());
+			((Hopscotch) collisionHandler).vacate(home, distance(home, index));
+			positions[index] = null;
+			return;
+		}
+		else if (collisionHandler.getType() == CollisionHandlingScheme.DLEFT)	// Searches examine whole buckets, so none is marked
+		{
+			positions[index] = null;
+			return;
+		}
+		
+		switch (emptyMarkerScheme)
+		{
+			case AVAILABLE:
+				positions[index] = new AvailablePosition(index);	// If using the AVAILABLE scheme, replace the positon with an AvailablePosition marker
+				numFormerlyOccupied++;
+				break;
+			case NEGATIVE:
+				final KeyValuePair original = positions[index].get();	// If using the NEGATIVE scheme, place a '-' character at the head of the entry's key
+				final KeyValuePair negated = new KeyValuePair("-" + original.getKey().toString(), original.getValue().toString());
+				positions[index] = new Position(negated, index);
+				numFormerlyOccupied++;
+				break;
+			case REPLACE:	// If using the REPLACE scheme, pull back another entry with the same hash to the removed location
+				rollBack(index);
+				break;
+			default:	// This should not occur; all enum values are accounted for
+				throw new RuntimeException(emptyMarkerScheme + " is an unsupported EmptyMarkerScheme.");
+		}
+	}
+	
+	/**
+	 * Replaces the entry at a given index with another entry that would have been hashed there if it was empty. Entries with the same raw hash share a
+	 * probe sequence, so the last of them beyond the removed entry's position is moved into it; those in between stay reachable. The position the
+	 * moved entry leaves, or the removed entry's own if no entry shares its hash, is marked as formerly occupied rather than emptied: the probe
+	 * sequences of other keys may pass through it, and a never-filled position would end their searches early.
+	 * @param index The index of the entry to roll back to.
+	 */
+	private void rollBack(final int index)
+	{
+		if (isEmpty())	// Should not be called if the table is empty anyway
+		{
+			throw new RuntimeException("Cannot roll back: Hash table is empty.");
+		}
+		
+		final int rawHash = positions[index].get().hashCode();
+		
+		// Find the removed entry's position along its probe sequence, then follow the sequence up to the next never-filled position
+		int attempt = 0;
+		while (attempt < positions.length && collisionHandler.probeIndex(compressor, positions.length, rawHash, attempt) != index)
+		{
+			attempt++;
+		}
+		
+		int lastSameHashIndex = -1;
+		for (attempt++; attempt < positions.length; attempt++)
+		{
+			final int nextIndex = collisionHandler.probeIndex(compressor, positions.length, rawHash, attempt);
+			
+			if (positions[nextIndex] == null)
+			{
+				break;
+			}
+			else if (!positionIsFormerlyOccupied(nextIndex) && positions[nextIndex].get().hashCode() == rawHash)
+			{
+				lastSameHashIndex = nextIndex;
+			}
+		}
+		
+		if (lastSameHashIndex >= 0)
+		{
+			preserve(lastSameHashIndex);
+			positions[index] = new Position(positions[lastSameHashIndex].get(), index);
+			positions[lastSameHashIndex] = new AvailablePosition(lastSameHashIndex);
+		}
+		else
+		{
+			positions[index] = new AvailablePosition(index);
+		}
+		numFormerlyOccupied++;
+	}
+	
+	
+	/**
+	 * Resizes the table to a desired size. The chosen size will be rounded up to the next largest prime number.
+	 * @param newSize The new desired size. Will be rounded up to a prime number.
+	 * @param newCollisionHandlingScheme The table's new collision handling scheme.
+	 * @param newEmptyMarkerScheme The table's new empty marker scheme.
+	 */
+	public void resize(final int newSize, final CollisionHandlingScheme newCollisionHandlingScheme, final EmptyMarkerScheme newEmptyMarkerScheme)
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			resizeTable(newSize, newCollisionHandlingScheme, newEmptyMarkerScheme);
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	/**
+	 * Resizes the table. Must be called by the writer.
+	 * @param newSize The new desired size. Will be rounded up to a prime number.
+	 * @param newCollisionHandlingScheme The table's new collision handling scheme.
+	 * @param newEmptyMarkerScheme The table's new empty marker scheme.
+	 */
+	private void resizeTable(final int newSize, final CollisionHandlingScheme newCollisionHandlingScheme, final EmptyMarkerScheme newEmptyMarkerScheme)
+	{
+		// Cannot make a table smaller than the number of elements it contains, unless its bins hold several each
+		if (newSize < numElements && newCollisionHandlingScheme.getMaxRehashThreshold() <= 1)
+		{
+			throw new IllegalArgumentException("New size not large enough to hold all elements.");
+		}
+		
+		checkRehashThreshold(rehashThreshold, newCollisionHandlingScheme);
+		
+		final int oldSize = size();
+		final long start = listener == null ? 0 : System.nanoTime();
+		
+		cancelBackgroundResize();	// An explicit resize supersedes a background one
+		
+		final int nextPrimeSize = Prime.nextLargestPrime(newSize);	//Size should always be prime, so round up to the next prime
+
+		// Large tables may be rehashed in parallel, if the resized table holds every entry below its rehash threshold
+		HashTable newHashTable = null;
+		if (rehashPool != null && newCollisionHandlingScheme.isProbing() && numElements >= MIN_PARALLEL_REHASH_ELEMENTS
+			&& numElements < rehashThreshold * nextPrimeSize)
+		{
+			newHashTable = rehashInParallel(nextPrimeSize, newCollisionHandlingScheme, newEmptyMarkerScheme);
+		}
+		
+		if (newHashTable != null)
+		{
+			adopt(newHashTable);
+			
+			if (listener != null)
+			{
+				listener.resized(oldSize, size(), numElements, System.nanoTime() - start);
+			}
+			return;
+		}
+		
+		// Make a new hash table with the desired size and schemes; properties will be copied over
+		newHashTable = new HashTable(nextPrimeSize, rehashThreshold, newCollisionHandlingScheme, newEmptyMarkerScheme);
+		
+		// Put each old entry into the new table; the proper hashing and compression algorithms will be automatically used. Expired entries are dropped.
+		for (int i = 0; i < positions.length; i++)
+		{
+			for (int slot = 0, n = entriesAt(i); slot < n; slot++)
+			{
+				final KeyValuePair entry = entryAt(i, slot);
+				if (entry.isExpired())
+				{
+					expirySweeper.recordExpirations(1);
+				}
+				else
+				{
+					entry.resetCollisions();	// The entry moves as it is, keeping its time to live and kind
+					newHashTable.storePair(entry);
+				}
+			}
+		}
+		
+		adopt(newHashTable);
+		
+		if (listener != null)
+		{
+			listener.resized(oldSize, size(), numElements, System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * Rehashes the table into a new table on the parallel rehash pool. Must be called by the writer, which waits for the pool to finish.
+	 * @param newSize The size of the new table, a prime number large enough to hold every entry below the rehash threshold.
+	 * @param newCollisionHandlingScheme The new table's collision handling scheme; must be a probing scheme.
+	 * @param newEmptyMarkerScheme The new table's empty marker scheme.
+	 * @return The new table holding every unexpired entry, or null if an entry found no free position, in which case the table must be rehashed
+	 * serially.
+	 */
+	private HashTable rehashInParallel(final int newSize, final CollisionHandlingScheme newCollisionHandlingScheme, final EmptyMarkerScheme newEmptyMarkerScheme)
+	{
+		final HashTable newHashTable = new HashTable(newSize, rehashThreshold, newCollisionHandlingScheme, newEmptyMarkerScheme);
+		final RehashTask task = new RehashTask(this, newHashTable.positions, newHashTable.compressor, newHashTable.collisionHandler);
+		
+		rehashPool.invoke(task);
+		
+		if (task.hasFailed())
+		{
+			return null;
+		}
+		
+		expirySweeper.recordExpirations(task.getNumberOfExpired());
+		newHashTable.numElements = task.getNumberOfPlaced();
+		newHashTable.loadFactor = ((double) newHashTable.numElements) / newHashTable.size();
+		return newHashTable;
+	}
+	
+	/**
+	 * Enables or disables parallel rehashing. While enabled, a resize of a table under double hashing or quadratic probing holding at least 32768
+	 * entries rehashes them on the given pool, each task rehashing a range of the old positions, instead of putting them one by one. Collisions are
+	 * not counted while rehashing in parallel. The writer still waits for the resize to finish; combine with background resizing to avoid waiting.
+	 * @param pool The pool to rehash on, such as ForkJoinPool.commonPool(), or null to rehash serially.
+	 */
+	public void setParallelRehashing(final ForkJoinPool pool)
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			rehashPool = pool;
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	/**
+	 * Checks if parallel rehashing is enabled.
+	 * @return True if and only if large tables are rehashed in parallel.
+	 */
+	public boolean isParallelRehashingEnabled()
+	{
+		return rehashPool != null;
+	}
+	
+	/**
+	 * Takes over the positions and components of a resized copy of the table.
+	 * @param newHashTable The resized copy.
+	 */
+	private void adopt(final HashTable newHashTable)
+	{
+		preserveAll();	// Open snapshots read the old positions and the entries moved out of them
+		
+		// Copy over relevant properties. The new positions are complete before they are published, and readers validate against the write lock, so no
+		// reader can combine the new positions with the old compressor or collision handler.
+		positions = newHashTable.positions;
+		compressor = newHashTable.compressor;
+		collisionHandler = newHashTable.collisionHandler;
+		emptyMarkerScheme = newHashTable.emptyMarkerScheme;
+		numElements = newHashTable.numElements;
+		numFormerlyOccupied = newHashTable.numFormerlyOccupied;
+		loadFactor = newHashTable.loadFactor;
+		eviction.reset();
+		
+		if (membershipFilter != null)	// Re-size the filter for the new table
+		{
+			rebuildMembershipFilter();
+		}
+	}
+	
+	/**
+	 * Enables or disables background resizing. While enabled, reaching the rehash threshold does not expand the table in the put that reached it.
+	 * Instead, a snapshot of the positions is rehashed into a larger table on the given executor, while puts and removes continue on the current table
+	 * and are recorded. The first write after the background resize completes replays the recorded updates onto the larger table and switches to it.
+	 * Only if the load factor reaches the hard rehash threshold before then does a put wait for the background resize.
+	 * @param executor The executor to run background resizes on, or null to resize in the foreground.
+	 * @param hardRehashThreshold The load factor at which puts wait for the background resize. Must be between the rehash threshold and 1, inclusive,
+	 * or the highest rehash threshold allowed under separate chaining.
+	 */
+	public void setBackgroundResizing(final Executor executor, final double hardRehashThreshold)
+	{
+		if (!(rehashThreshold <= hardRehashThreshold))
+		{
+			throw new IllegalArgumentException("Hard rehash threshold must be at least the rehash threshold.");
+		}
+		checkRehashThreshold(hardRehashThreshold, collisionHandler.getType());
+		
+		final long stamp = lockForWriting();
+		try
+		{
+			if (executor == null && backgroundResize.isRunning())	// Finish the running resize before returning to the foreground
+			{
+				installBackgroundResize();
+			}
+			
+			backgroundResize.configure(executor, hardRehashThreshold);
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	/**
+	 * Checks if background resizing is enabled.
+	 * @return True if and only if the table resizes in the background.
+	 */
+	public boolean isBackgroundResizingEnabled()
+	{
+		return backgroundResize.isEnabled();
+	}
+	
+	/**
+	 * Starts a background resize to the next expanded size. The current positions are copied, which only copies references; the entries are rehashed
+	 * by the executor.
+	 */
+	private void startBackgroundResize()
+	{
+		final CollisionHandlingScheme snapshotCollisionHandlingScheme = tuneForGrowth();
+		final int newSize = budgetedSize(nextExpandedSize(), snapshotCollisionHandlingScheme);
+		if (newSize <= size() && snapshotCollisionHandlingScheme == collisionHandler.getType())	// The budget raised the rehash threshold instead
+		{
+			return;
+		}
+		final Position[] snapshot = positions.clone();
+		final double snapshotRehashThreshold = rehashThreshold;
+		final EmptyMarkerScheme snapshotEmptyMarkerScheme = emptyMarkerScheme;
+		
+		// Entries read from the snapshot may be updated meanwhile; every update is also recorded, so replaying the records corrects them
+		backgroundResize.start(() ->
+		{
+			final HashTable newHashTable = new HashTable(newSize, snapshotRehashThreshold, snapshotCollisionHandlingScheme, snapshotEmptyMarkerScheme);
+			
+			for (Position p : snapshot)
+			{
+				for (int slot = 0, n = numberOfEntries(p, snapshotEmptyMarkerScheme); slot < n; slot++)
+				{
+					if (!entry(p, slot).isExpired())
+					{
+						newHashTable.storePair(entry(p, slot).copy());	// Copied, as the writer still uses the original
+					}
+				}
+			}
+			
+			return newHashTable;
+		});
+	}
+	
+	/**
+	 * Waits for the running background resize, replays the updates made since its snapshot, and switches to the resized table. If the background
+	 * resize failed, expands the table in the foreground instead.
+	 */
+	private void installBackgroundResize()
+	{
+		final int oldSize = size();
+		final long start = listener == null ? 0 : System.nanoTime();
+		final HashTable newHashTable = backgroundResize.finish();
+		
+		if (newHashTable == null)
+		{
+			expandTable();
+		}
+		else
+		{
+			adopt(newHashTable);
+			
+			if (listener != null)
+			{
+				listener.resized(oldSize, size(), numElements, System.nanoTime() - start);
+			}
+			
+			checkLoadFactor();
+		}
+	}
+	
+	/**
+	 * Abandons the running background resize, if any.
+	 */
+	private void cancelBackgroundResize()
+	{
+		backgroundResize.cancel();
+	}
+	
+	/**
+	 * Records an update for replay, if a background resize is running.
+	 * @param key The key of the updated entry.
+	 * @param pair The updated entry, or null if it was removed.
+	 */
+	private void recordPendingUpdate(final String key, final KeyValuePair pair)
+	{
+		backgroundResize.record(key, pair);
+	}
+	
+	/**
+	 * Enables or disables the membership filter. While enabled, a blocked Bloom filter of the table's keys is kept alongside the table, and get and remove
+	 * consult it first, so that most searches for missing keys are answered from a single cache line without walking the probe sequence. The filter
+	 * costs about 10 bits per table cell, and is rebuilt whenever the table is resized or enough keys have been removed.
+	 * @param enabled True to enable the filter, false to disable it.
+	 */
+	public void setMembershipFilterEnabled(final boolean enabled)
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			if (enabled)
+			{
+				rebuildMembershipFilter();
+			}
+			else
+			{
+				membershipFilter = null;
+			}
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	/**
+	 * Checks if the membership filter is enabled.
+	 * @return True if and only if the membership filter is enabled.
+	 */
+	public boolean isMembershipFilterEnabled()
+	{
+		return membershipFilter != null;
+	}
+	
+	/**
+	 * Enables or disables adaptive tuning. While enabled, a sample of lookups is measured, and each time the table grows, the collision handling scheme
+	 * and rehash threshold that give the fewest probes for the sampled workload are chosen, by simulating each combination on a sample of the keys. The
+	 * empty marker scheme is left as it is: the schemes differ little in probe cost, since REPLACE also leaves markers when no entry can be rolled back.
+	 * A table under separate chaining keeps its scheme and threshold, as only probing schemes can be simulated.
+	 * @param enabled True to enable adaptive tuning, false to disable it.
+	 */
+	public void setAdaptiveTuningEnabled(final boolean enabled)
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			workloadSampler = enabled ? new WorkloadSampler() : null;
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	/**
+	 * Checks if adaptive tuning is enabled.
+	 * @return True if and only if adaptive tuning is enabled.
+	 */
+	public boolean isAdaptiveTuningEnabled()
+	{
+		return workloadSampler != null;
+	}
+	
+	/**
+	 * Sets the listener that receives the table's resize, purge and long probe events, replacing any previous one.
+	 * @param listener The listener, or null to stop reporting events.
+	 */
+	public void setListener(final HashTableListener listener)
+	{
+		final long stamp = lockForWriting();
+		try
+		{
+			this.listener = listener;
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	/**
+	 * Returns the listener that receives the table's events.
+	 * @return The listener, or null if there is none.
+	 */
+	public HashTableListener getListener()
+	{
+		return listener;
+	}
+	
+	/**
+	 * Sets the probe length from which searches are reported to the listener as long probes.
+	 * @param threshold The number of positions a search must examine to be reported; a positive integer.
+	 */
+	public void setLongProbeThreshold(final int threshold)
+	{
+		if (threshold <= 0)
+		{
+			throw new IllegalArgumentException("Long probe threshold must be a positive integer.");
+		}
+		
+		longProbeThreshold = threshold;
+	}
+	
+	/**
+	 * Sets the probe length at which a put expands the table and searches it afresh, instead of probing on. The table only expands if it is at least
+	 * half as full as its rehash threshold, so a put may still probe further in a sparse table, but never beyond every position once.
+	 * @param length The number of positions a put may examine before the table expands; a positive integer.
+	 */
+	public void setMaxProbeLength(final int length)
+	{
+		if (length <= 0)
+		{
+			throw new IllegalArgumentException("Maximum probe length must be a positive integer.");
+		}
+		
+		maxProbeLength = length;
+	}
+	
+	/**
+	 * Returns the probe length at which a put expands the table.
+	 * @return The maximum probe length.
+	 */
+	public int getMaxProbeLength()
+	{
+		return maxProbeLength;
+	}
+	
+	/**
+	 * Chooses the collision handling scheme for the next growth of the table. With adaptive tuning enabled and enough lookups sampled, also changes the
+	 * rehash threshold and starts a new sample. Must be called by the writer.
+	 * @return The collision handling scheme to grow the table with.
+	 */
+	private CollisionHandlingScheme tuneForGrowth()
+	{
+		final WorkloadSampler sampler = workloadSampler;
+		if (sampler == null || !sampler.hasEnoughSamples() || !collisionHandler.getType().isProbing())	// Only probing schemes are simulated
+		{
+			return collisionHandler.getType();
 		}
+		
+		final WorkloadSampler.Tuning tuning = sampler.tune(sampleKeyHashes(WorkloadSampler.MAX_SIMULATED_KEYS));
+		rehashThreshold = tuning.rehashThreshold;
+		sampler.reset();
+		return tuning.collisionHandlingScheme;
 	}
 	
 	/**
-	 * Replaces the entry at a given index with another entry that would have been hashed there if it was empty.
-	 * @param index The index of the entry to roll back to.
+	 * Collects the raw hashes of an evenly spread sample of the live entries.
+	 * @param maxKeys The largest number of hashes to collect.
+	 * @return The hashes.
 	 */
-	private void rollBack(final int index)
+	private int[] sampleKeyHashes(final int maxKeys)
 	{
-		if (isEmpty())	// Should not be called if the table is empty anyway
-		{
-			throw new RuntimeException("Cannot roll back: Hash table is empty.");
-		}
-		
-		collisionHandler.reset(positions[index].get().hashCode());
-		positions[index] = null;
-		int nextIndex;
+		final int stride = Math.max(1, (numElements + maxKeys - 1) / maxKeys);
+		final int[] hashes = new int[Math.min(numElements, maxKeys)];
 		
-		do
+		int seen = 0;
+		int taken = 0;
+		for (int i = 0; i < positions.length && taken < hashes.length; i++)
 		{
-			nextIndex = compressor.compress(collisionHandler.nextHash());
+			for (int slot = 0, n = entriesAt(i); slot < n && taken < hashes.length; slot++)
+			{
+				if (seen++ % stride == 0)
+				{
+					hashes[taken++] = entryAt(i, slot).hashCode();
+				}
+			}
 		}
-		while (!positionIsEmpty(nextIndex));
 		
-		final int nextNextIndex = compressor.compress(collisionHandler.nextHash());
-		
-		if (!positionIsEmpty(nextNextIndex))
-		{
-			positions[nextIndex] = positions[nextNextIndex];
-			rollBack(nextNextIndex);
-		}
+		return Arrays.copyOf(hashes, taken);
 	}
 	
-	
 	/**
-	 * Resizes the table to a desired size. The chosen size will be rounded up to the next largest prime number.
-	 * @param newSize The new desired size. Will be rounded up to a prime number.
-	 * @param newCollisionHandlingScheme The table's new collision handling scheme.
-	 * @param newEmptyMarkerScheme The table's new empty marker scheme.
+	 * Builds a new membership filter sized for the table, holding the keys of all of the current entries.
 	 */
-	public void resize(final int newSize, final CollisionHandlingScheme newCollisionHandlingScheme, final EmptyMarkerScheme newEmptyMarkerScheme)
+	private void rebuildMembershipFilter()
 	{
-		// Cannot make a table smaller than the number of elements it contains
-		if (newSize < numElements)
-		{
-			throw new IllegalArgumentException("New size not large enough to hold all elements.");
-		}
+		final BlockedBloomFilter filter = new BlockedBloomFilter(Math.max(size(), numElements));	// Bins may hold more entries than there are cells
 		
-		numElements = 0;	// To allow the collision and empty marker schemes to be changed; will be updated after
-		setCollisionHandlingScheme(newCollisionHandlingScheme);	// Update the schemes
-		setEmptyMarkerScheme(newEmptyMarkerScheme);
-		
-		final int nextPrimeSize = Prime.nextLargestPrime(newSize);	//Size should always be prime, so round up to the next prime
-
-		// Make a new hash table with the desired size; properties will be copied over
-		HashTable newHashTable = new HashTable(nextPrimeSize, rehashThreshold, newCollisionHandlingScheme, newEmptyMarkerScheme);
-		
-		// Put each old entry into the new table; the proper hashing and compression algorithms will be automatically used
-		for (Position p : positions)
+		for (int i = 0; i < positions.length; i++)
 		{
-			if (p != null)
+			for (int slot = 0, n = entriesAt(i); slot < n; slot++)
 			{
-				final String key = p.get().getKey();
-				final String value = p.get().getValue();
-				newHashTable.put(key, value);
+				filter.add(entryAt(i, slot).getKey());
 			}
 		}
 		
-		// Copy over relevant properties
-		positions = newHashTable.positions;
-		compressor = newHashTable.compressor;
-		numElements = newHashTable.numElements;
+		membershipFilter = filter;
 	}
 	
 	/**
-	 * Changes the table's rehash threshold. When the load factor equals or exceeds this number, the table will be resized. 
+	 * Changes the table's rehash threshold. When the load factor equals or exceeds this number, the table will be resized. Under separate chaining,
+	 * the threshold may exceed 1, trading longer bins for a smaller positions array.
 	 * @param rehashThreshold The table's new rehash threshold.
 	 */
 	public void setRehashThreshold(final double rehashThreshold)
 	{
-		if (!(0.0 <= rehashThreshold && rehashThreshold <= 1.0))
+		final long stamp = lockForWriting();
+		try
 		{
-			throw new IllegalArgumentException("Rehash threshold must be between 0 and 1, inclusive.");
-		}
+			checkRehashThreshold(rehashThreshold, collisionHandler.getType());
 		
-		this.rehashThreshold = rehashThreshold;
-		updateLoadFactor();
+			this.rehashThreshold = rehashThreshold;
+			updateLoadFactor();
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	/**
+	 * Checks that a rehash threshold can be used with a collision handling scheme: between 0 and 1, inclusive, for schemes holding one entry per
+	 * position, and up to the scheme's own maximum under separate chaining.
+	 * @param threshold The rehash threshold.
+	 * @param scheme The collision handling scheme.
+	 */
+	private static void checkRehashThreshold(final double threshold, final CollisionHandlingScheme scheme)
+	{
+		final double maxThreshold = scheme.getMaxRehashThreshold();
+		if (!(0.0 <= threshold && threshold <= maxThreshold))
+		{
+			throw new IllegalArgumentException("Rehash threshold must be between 0 and " + (maxThreshold == 1 ? "1" : maxThreshold + " under " + scheme)
+				+ ", inclusive.");
+		}
 	}
 	
 	/**
@@ -468,6 +2801,15 @@ public class HashTable
 			{
 				System.out.println("Formerly occupied");
 			}
+			else if (p instanceof Bin)
+			{
+				final StringBuilder line = new StringBuilder();
+				for (int slot = 0; slot < ((Bin) p).size(); slot++)
+				{
+					line.append(slot == 0 ? "" : " -> ").append(((Bin) p).get(slot));
+				}
+				System.out.println(line);
+			}
 			else
 			{
 				System.out.println(p.get());
@@ -477,26 +2819,34 @@ public class HashTable
 	}
 	
 	/**
-	 * Changes the table's collision handling scheme. Can only be called explicitly if the table is empty. Otherwise, use the resize method.
+	 * Changes the table's collision handling scheme. Can only be called explicitly if the table is empty. Otherwise, use the resize method. A rehash
+	 * threshold above 1 must be lowered before leaving separate chaining. A table smaller than DLeft.NUM_SUBTABLES grows to the next prime above it
+	 * when switching to d-left hashing.
 	 * @param collisionHandlingType The table's new collision handling scheme.
 	 */
 	public void setCollisionHandlingScheme(final CollisionHandlingScheme collisionHandlingType)
 	{
-		if (!isEmpty())
+		final long stamp = lockForWriting();
+		try
 		{
-			throw new RuntimeException ("Hash table must be empty to change the collision handling type.");
-		}
+			if (!isEmpty())
+			{
+				throw new RuntimeException ("Hash table must be empty to change the collision handling type.");
+			}
+			
+			checkRehashThreshold(rehashThreshold, collisionHandlingType);
+			cancelBackgroundResize();
+			preserveAll();
 		
-		switch (collisionHandlingType)
+			final int newSize = collisionHandlingType == CollisionHandlingScheme.DLEFT && size() < DLeft.NUM_SUBTABLES
+				? Prime.nextLargestPrime(DLeft.NUM_SUBTABLES) : size();	// Every subtable needs at least one position
+			positions = new Position[newSize];	// Clears any formerly occupied markers, which the new scheme may not expect
+			numFormerlyOccupied = 0;
+			collisionHandler = CollisionHandler.create(collisionHandlingType, size());
+		}
+		finally
 		{
-			case DOUBLE:
-				collisionHandler = new DoubleHasher(this);
-				break;
-			case QUADRATIC:
-				collisionHandler = new QuadraticProbe();
-				break;
-			default:
-				break;
+			unlockForWriting(stamp);
 		}
 	}
 	
@@ -524,30 +2874,50 @@ public class HashTable
 	 */
 	public void setEmptyMarkerScheme(final EmptyMarkerScheme emptyMarkerScheme)
 	{
-		this.emptyMarkerScheme = emptyMarkerScheme;
-		
-		for (int i = 0; i < positions.length; i++)	// Iterate through the positions in the table, replacing with new empty markers as appropriate
+		final long stamp = lockForWriting();
+		try
 		{
-			if (positionIsFormerlyOccupied(i))
+			cancelBackgroundResize();	// The background resize would restore the old scheme
+			preserveAll();				// Open snapshots read formerly occupied positions by the old scheme
+			final EmptyMarkerScheme oldScheme = this.emptyMarkerScheme;	// Existing markers are recognized by the scheme that placed them
+			this.emptyMarkerScheme = emptyMarkerScheme;
+		
+			for (int i = 0; i < positions.length; i++)	// Iterate through the positions in the table, replacing with new empty markers as appropriate
+			{
+				if (positions[i] != null && isFormerlyOccupied(positions[i], oldScheme))
+				{
+					Position replacementPosition = null;
+					switch (emptyMarkerScheme)
+					{
+						case AVAILABLE:
+							replacementPosition = new AvailablePosition(i);
+							break;
+						case NEGATIVE:
+							replacementPosition = new Position(new KeyValuePair("-", ""), i);
+							break;
+						case REPLACE:	// No entry is left to roll back; the marker stays until the next purge
+							replacementPosition = new AvailablePosition(i);
+							break;
+						default:
+							break;
+					}
+					positions[i] = replacementPosition;
+				}
+			}
+			
+			numFormerlyOccupied = 0;
+			for (int i = 0; i < positions.length; i++)
 			{
-				Position replacementPosition = null;
-				switch (emptyMarkerScheme)
+				if (positionIsFormerlyOccupied(i))
 				{
-					case AVAILABLE:
-						replacementPosition = new AvailablePosition(i);
-						break;
-					case NEGATIVE:
-						replacementPosition = new Position(new KeyValuePair("-", ""), i);
-						break;
-					case REPLACE:
-						rollBack(i);
-						break;
-					default:
-						break;
+					numFormerlyOccupied++;
 				}
-				positions[i] = replacementPosition;
 			}
 		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
 	}
 	
 	
@@ -586,9 +2956,24 @@ public class HashTable
 	 */
 	private void checkLoadFactor()
 	{
-		if (loadFactor >= rehashThreshold)
+		if (eviction.isOverCapacity(numElements) || memoryBudget.isOverCapacity(numElements))
 		{
-			expandTable();
+			eviction.evict(this);				// The table is at its largest; make room instead of expanding
+		}
+		else if (backgroundResize.isDue(loadFactor))
+		{
+			installBackgroundResize();	// Either the background resize is ready, or the table is too full to wait for it
+		}
+		else if (loadFactor >= rehashThreshold && size() < maximumSize() && !memoryBudget.isFull())
+		{
+			if (!backgroundResize.isEnabled())
+			{
+				expandTable();
+			}
+			else if (!backgroundResize.isRunning())
+			{
+				startBackgroundResize();
+			}
 		}
 	}
 	
@@ -597,6 +2982,45 @@ public class HashTable
 	 * Expands the table by a the rehash factor or number, whichever was last set.
 	 */
 	private void expandTable()
+	{
+		final CollisionHandlingScheme newCollisionHandlingScheme = tuneForGrowth();
+		final int newSize = budgetedSize(nextExpandedSize(), newCollisionHandlingScheme);
+		
+		if (newSize > size() || newCollisionHandlingScheme != collisionHandler.getType())	// Otherwise the budget raised the rehash threshold instead
+		{
+			resizeTable(newSize, newCollisionHandlingScheme, emptyMarkerScheme);
+		}
+	}
+	
+	
+	/**
+	 * Chooses the size of an expansion under the memory budget, if there is one. See MemoryBudget.expansionSize.
+	 * @param desiredSize The size the table would expand to without a budget.
+	 * @param newCollisionHandlingScheme The collision handling scheme the table will have.
+	 * @return The size to expand to, or the current size if no expansion fits.
+	 */
+	private int budgetedSize(final int desiredSize, final CollisionHandlingScheme newCollisionHandlingScheme)
+	{
+		return memoryBudget.expansionSize(this, desiredSize, rehashThreshold, newCollisionHandlingScheme);
+	}
+	
+	
+	/**
+	 * Raises the rehash threshold for an expansion the memory budget allows only if the table fills further. Used by MemoryBudget, which keeps the
+	 * threshold below the scheme's highest. Must be called by the writer.
+	 * @param threshold The new rehash threshold, at least the current one.
+	 */
+	void raiseRehashThreshold(final double threshold)
+	{
+		rehashThreshold = threshold;
+	}
+	
+	
+	/**
+	 * Computes the size the table will have after its next expansion.
+	 * @return The expanded size, before rounding up to a prime number.
+	 */
+	private int nextExpandedSize()
 	{
 		int newSize;
 		if (expandByFactor)
@@ -607,7 +3031,150 @@ public class HashTable
 		{
 			newSize = size() + rehashNumber;
 		}
-		resize(newSize);
+		return Math.min(newSize, maximumSize());
+	}
+	
+	
+	/**
+	 * Computes the largest size the table may expand to. In cache mode, this is the smallest size holding the cache capacity below the rehash threshold.
+	 * @return The maximum size of the table.
+	 */
+	private int maximumSize()
+	{
+		return eviction.maximumSize(rehashThreshold);
+	}
+	
+	
+	/**
+	 * Enables or disables cache mode. In cache mode, the table holds at most the given number of entries: it stops expanding once it is large enough to
+	 * hold them below the rehash threshold, and each put of a new entry beyond the capacity evicts an entry that has not been used recently.
+	 * 
+	 * Entries are chosen for eviction with the CLOCK algorithm: a hand sweeps over the positions, and every entry it passes that has been put or found
+	 * since the hand last passed it is spared, once; the first entry not used since is evicted. Evicted entries are removed according to the empty
+	 * marker scheme, so the positions they free are reused by later puts, and are rehashed away once they pile up.
+	 * @param capacity The maximum number of entries, a positive integer, or 0 to disable cache mode.
+	 */
+	public void setCacheCapacity(final int capacity)
+	{
+		if (capacity < 0)
+		{
+			throw new IllegalArgumentException("Cache capacity must be a non-negative integer.");
+		}
+		
+		final long stamp = lockForWriting();
+		try
+		{
+			eviction.setCapacity(capacity);
+			
+			while (eviction.isOverCapacity(numElements))
+			{
+				eviction.evict(this);
+			}
+		}
+		finally
+		{
+			unlockForWriting(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Returns the cache capacity.
+	 * @return The maximum number of entries, or 0 if cache mode is disabled.
+	 */
+	public int getCacheCapacity()
+	{
+		return eviction.getCapacity();
+	}
+	
+	
+	/**
+	 * Returns the number of entries evicted in cache mode.
+	 * @return The number of evictions.
+	 */
+	public int getNumberOfEvictions()
+	{
+		return eviction.getNumberOfEvictions();
+	}
+	
+	
+	/**
+	 * Enables or disables concurrent reads, for deployments with one writer thread and many reader threads. While enabled, get takes no lock: each search
+	 * runs optimistically against a version stamp, and is repeated only if a put, remove or resize raced with it. Writes take an exclusive lock, so
+	 * several writers remain safe, though they are serialized. Methods other than get, such as the statistics, should be called by the writer.
+	 * 
+	 * Without concurrent reads the table must not be shared, so concurrent reads must be enabled before other threads use it. Disabling them waits for
+	 * the write in progress, under the write lock; other threads must have stopped using the table by then. The lock in use is never replaced, so
+	 * enabling concurrent reads again while they are enabled does nothing.
+	 * @param enabled True to enable concurrent reads, false to disable them.
+	 */
+	public void setConcurrentReadsEnabled(final boolean enabled)
+	{
+		final StampedLock current = lock;
+		if (enabled == (current != null))	// A new lock would let callers in while others still hold the old one
+		{
+			return;
+		}
+		
+		if (enabled)
+		{
+			lock = new StampedLock();	// No other thread is using the table, so none holds a lock
+			return;
+		}
+		
+		final long stamp = current.writeLock();
+		try
+		{
+			lock = null;
+		}
+		finally
+		{
+			current.unlockWrite(stamp);
+		}
+	}
+	
+	
+	/**
+	 * Checks if concurrent reads are enabled.
+	 * @return True if and only if concurrent reads are enabled.
+	 */
+	public boolean isConcurrentReadsEnabled()
+	{
+		return lock != null;
+	}
+	
+	
+	/**
+	 * Takes the write lock, if concurrent reads are enabled.
+	 * @return The stamp to release the lock with, or 0 if there is no lock.
+	 */
+	private long lockForWriting()
+	{
+		StampedLock current = lock;
+		while (current != null)
+		{
+			final long stamp = current.writeLock();
+			if (lock == current)
+			{
+				return stamp;
+			}
+			current.unlockWrite(stamp);	// Concurrent reads were disabled while this writer waited
+			current = lock;
+		}
+		return 0;
+	}
+	
+	
+	/**
+	 * Releases the write lock taken by lockForWriting.
+	 * @param stamp The stamp returned by lockForWriting.
+	 */
+	private void unlockForWriting(final long stamp)
+	{
+		if (stamp != 0)
+		{
+			lock.unlockWrite(stamp);
+		}
 	}
 	
 	
@@ -639,9 +3206,94 @@ public class HashTable
 	 */
 	public boolean positionIsFormerlyOccupied(final int index)
 	{		
-		return (positions[index] != null)
-			&& ((emptyMarkerScheme == EmptyMarkerScheme.AVAILABLE && positions[index].isAvailablePosition())
-			|| (emptyMarkerScheme == EmptyMarkerScheme.NEGATIVE && positions[index].get() != null && positions[index].get().getKey().charAt(0) == '-'));
+		return (positions[index] != null) && isFormerlyOccupied(positions[index]);
+	}
+	
+	
+	/**
+	 * Checks if a non-null position is marked as formerly occupied, under the table's empty marker scheme.
+	 * @param position The position to check. Must not be null.
+	 * @return True if and only if the position is available but has been previously occupied.
+	 */
+	boolean isFormerlyOccupied(final Position position)
+	{
+		return isFormerlyOccupied(position, emptyMarkerScheme);
+	}
+	
+	
+	/**
+	 * Checks if a non-null position is marked as formerly occupied, under a given empty marker scheme.
+	 * @param position The position to check. Must not be null.
+	 * @param scheme The empty marker scheme the position was marked under.
+	 * @return True if and only if the position is available but has been previously occupied.
+	 */
+	private static boolean isFormerlyOccupied(final Position position, final EmptyMarkerScheme scheme)
+	{
+		return (scheme != EmptyMarkerScheme.NEGATIVE && position.isAvailablePosition())
+			|| (scheme == EmptyMarkerScheme.NEGATIVE && position.get() != null && position.get().getKey().charAt(0) == '-');
+	}
+	
+	
+	/**
+	 * Returns the position at a given index.
+	 * @param index The index of the position.
+	 * @return The position, or null if it was never filled.
+	 */
+	Position positionAt(final int index)
+	{
+		return positions[index];
+	}
+	
+	
+	/**
+	 * Returns the number of entries held at a given index: 0 if the position is empty, the size of the bin under separate chaining, and 1 otherwise.
+	 * @param index The index of the position.
+	 * @return The number of entries.
+	 */
+	int entriesAt(final int index)
+	{
+		return numberOfEntries(positions[index], emptyMarkerScheme);
+	}
+	
+	
+	/**
+	 * Returns one of the entries held at a given index.
+	 * @param index The index of the position.
+	 * @param slot The slot of the entry, less than entriesAt(index).
+	 * @return The entry.
+	 */
+	KeyValuePair entryAt(final int index, final int slot)
+	{
+		return entry(positions[index], slot);
+	}
+	
+	
+	/**
+	 * Returns the number of entries a position holds, under a given empty marker scheme.
+	 * @param position The position, or null if never filled.
+	 * @param scheme The empty marker scheme the position was marked under.
+	 * @return The number of entries.
+	 */
+	private static int numberOfEntries(final Position position, final EmptyMarkerScheme scheme)
+	{
+		if (position == null || isFormerlyOccupied(position, scheme))
+		{
+			return 0;
+		}
+		
+		return position instanceof Bin ? ((Bin) position).size() : 1;
+	}
+	
+	
+	/**
+	 * Returns one of the entries a position holds.
+	 * @param position The position. Must hold an entry.
+	 * @param slot The slot of the entry within a bin; ignored for other positions.
+	 * @return The entry.
+	 */
+	private static KeyValuePair entry(final Position position, final int slot)
+	{
+		return position instanceof Bin ? ((Bin) position).get(slot) : position.get();
 	}
 	
 	
@@ -653,7 +3305,25 @@ public class HashTable
 	{
 		return positions.length;
 	}
-	
+
+	/**
+	 * Returns the number of entries stored in the hash table.
+	 * @return The number of entries.
+	 */
+	public int getNumberOfElements()
+	{
+		return numElements;
+	}
+
+	/**
+	 * Returns the number of positions marked as formerly occupied, which searches must pass over until the next resize or purge clears them.
+	 * @return The number of formerly occupied positions.
+	 */
+	public int getNumberOfFormerlyOccupied()
+	{
+		return numFormerlyOccupied;
+	}
+
 	/**
 	 * Computes the total number of collisions each entry has endured.
 	 * @return The total number of collisions over all entries in the hash table.
@@ -664,9 +3334,9 @@ public class HashTable
 		
 		for (int i = 0; i < positions.length; i++)
 		{
-			if (!positionIsEmpty(i))
+			for (int slot = 0, n = entriesAt(i); slot < n; slot++)
 			{
-				totalCollisions += positions[i].get().getCollisions();
+				totalCollisions += entryAt(i, slot).getCollisions();
 			}
 		}
 		
@@ -683,9 +3353,12 @@ public class HashTable
 		
 		for (int i = 0; i < positions.length; i++)
 		{
-			if (!positionIsEmpty(i) && positions[i].get().getCollisions() > 0)
+			for (int slot = 0, n = entriesAt(i); slot < n; slot++)
 			{
-				totalCollided++;
+				if (entryAt(i, slot).getCollisions() > 0)
+				{
+					totalCollided++;
+				}
 			}
 		}
 		
@@ -723,9 +3396,9 @@ public class HashTable
 		
 		for (int i = 0; i < positions.length; i++)
 		{
-			if (!positionIsEmpty(i) && positions[i].get().getCollisions() > maxCollisions)
+			for (int slot = 0, n = entriesAt(i); slot < n; slot++)
 			{
-				maxCollisions = positions[i].get().getCollisions();
+				maxCollisions = Math.max(maxCollisions, entryAt(i, slot).getCollisions());
 			}
 		}
 		
@@ -752,11 +3425,67 @@ public class HashTable
 			System.out.println("Rehash number: " + rehashNumber);
 		}
 		System.out.println("Collision handling scheme: " + collisionHandler.getType());
+		if (collisionHandler.getType() == CollisionHandlingScheme.HOPSCOTCH)
+		{
+			System.out.println("Neighborhood size: " + Math.min(Hopscotch.NEIGHBORHOOD_SIZE, size()) + ", entries moved to make room: "
+				+ ((Hopscotch) collisionHandler).getNumberOfDisplacements());
+		}
+		else if (collisionHandler.getType() == CollisionHandlingScheme.DLEFT)
+		{
+			final DLeft dLeft = (DLeft) collisionHandler;
+			int fullestBucket = 0;
+			for (int start = 0; start < DLeft.NUM_SUBTABLES * dLeft.getNumberOfBuckets() * dLeft.getBucketSize(); start += dLeft.getBucketSize())
+			{
+				int load = 0;
+				for (int index = start; index < start + dLeft.getBucketSize(); index++)
+				{
+					load += positions[index] == null ? 0 : 1;
+				}
+				fullestBucket = Math.max(fullestBucket, load);
+			}
+			System.out.println("Buckets: " + DLeft.NUM_SUBTABLES + " x " + dLeft.getNumberOfBuckets() + " of " + dLeft.getBucketSize()
+				+ " positions, fullest bucket: " + fullestBucket);
+		}
+		else if (collisionHandler.getType() == CollisionHandlingScheme.CHAINING)
+		{
+			int longestBin = 0;
+			int treeifiedBins = 0;
+			for (Position p : positions)
+			{
+				if (p instanceof Bin)
+				{
+					longestBin = Math.max(longestBin, ((Bin) p).size());
+					treeifiedBins += ((Bin) p).isTreeified() ? 1 : 0;
+				}
+			}
+			System.out.println("Longest bin: " + longestBin + ", sorted bins: " + treeifiedBins);
+		}
 		System.out.println("Empty marker scheme: " + emptyMarkerScheme);
+		if (membershipFilter != null)
+		{
+			System.out.println("Membership filter bits: " + membershipFilter.getNumberOfBits());
+		}
+		if (workloadSampler != null)
+		{
+			System.out.println("Adaptive tuning: " + workloadSampler.getNumberOfSamples() + " lookups sampled, hit rate " + workloadSampler.getHitRate()
+				+ ", average probe length " + workloadSampler.getAverageProbeLength());
+		}
 		System.out.println();
 		System.out.println("Size: " + size());
 		System.out.println("Number of elements: " + numElements);
+		System.out.println("Formerly occupied positions: " + numFormerlyOccupied);
+		if (eviction.getCapacity() > 0)
+		{
+			System.out.println("Cache capacity: " + eviction.getCapacity());
+			System.out.println("Evictions: " + eviction.getNumberOfEvictions());
+		}
+		System.out.println("Expirations: " + expirySweeper.getNumberOfExpirations());
 		System.out.println("Load factor: " + loadFactor);
+		if (memoryBudget.getBytes() > 0)
+		{
+			System.out.println("Memory budget: " + memoryBudget);
+		}
+		System.out.println("Estimated memory: " + measureFootprint());
 		System.out.println();
 		System.out.println("Total collisions: " + getTotalCollisions());
 		System.out.println("Maximum collisions for single cell: " + getMaxCollisions());
@@ -772,9 +3501,9 @@ public class HashTable
 	{
 		for (int i = 0; i < positions.length; i++)
 		{
-			if (!positionIsEmpty(i))
+			for (int slot = 0, n = entriesAt(i); slot < n; slot++)
 			{
-				positions[i].get().resetCollisions();
+				entryAt(i, slot).resetCollisions();
 			}
 		}
 	}
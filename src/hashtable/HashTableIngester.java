@@ -0,0 +1,148 @@
+package hashtable;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The HashTableIngester class is a subscriber that puts the entries it receives into a HashTable, in batches. It requests one batch of entries at a
+ * time and requests the next only once the batch has been put, so a source never runs more than one batch ahead of the table, however slow the
+ * table is. Each batch is put under a single acquisition of the table's write lock.
+ *
+ * The entries of a batch are held in two arrays reused from batch to batch, so ingestion allocates nothing for the stream itself. The outcome is
+ * reported through getCompletion(): the number of entries put once the stream completes, or the error that ended it.
+ */
+public class HashTableIngester implements Flow.Subscriber<Map.Entry<String, String>>
+{
+	private static final int DEFAULT_BATCH_SIZE = 1024;	// Default number of entries requested and put at a time
+
+	private final HashTable table;			// The table the entries are put into
+	private final String[] keys;			// Keys of the batch being received
+	private final String[] values;			// Values of the batch being received
+	private final CompletableFuture<Long> completion = new CompletableFuture<>();
+	private Flow.Subscription subscription;	// The subscription entries are requested through; null until subscribed
+	private int batchLength;				// Number of entries of the batch received so far
+	private long numIngested;				// Number of entries put so far
+
+
+	/**
+	 * Constructor. Creates an ingester putting batches of 1024 entries.
+	 * @param table The table to put the entries into.
+	 */
+	public HashTableIngester(final HashTable table)
+	{
+		this(table, DEFAULT_BATCH_SIZE);
+	}
+
+
+	/**
+	 * Constructor. Creates an ingester putting batches of a given number of entries.
+	 * @param table The table to put the entries into.
+	 * @param batchSize The number of entries requested and put at a time; a positive integer.
+	 */
+	public HashTableIngester(final HashTable table, final int batchSize)
+	{
+		if (table == null)
+		{
+			throw new IllegalArgumentException("Table must not be null.");
+		}
+
+		if (batchSize <= 0)
+		{
+			throw new IllegalArgumentException("Batch size must be a positive integer.");
+		}
+
+		this.table = table;
+		this.keys = new String[batchSize];
+		this.values = new String[batchSize];
+	}
+
+
+	@Override
+	public void onSubscribe(final Flow.Subscription subscription)
+	{
+		if (this.subscription != null)	// An ingester takes entries from one source only
+		{
+			subscription.cancel();
+			return;
+		}
+
+		this.subscription = subscription;
+		subscription.request(keys.length);
+	}
+
+
+	@Override
+	public void onNext(final Map.Entry<String, String> entry)
+	{
+		if (completion.isDone())
+		{
+			return;
+		}
+
+		keys[batchLength] = entry.getKey();
+		values[batchLength] = entry.getValue();
+		batchLength++;
+
+		if (batchLength == keys.length && flush())
+		{
+			subscription.request(keys.length);
+		}
+	}
+
+
+	@Override
+	public void onError(final Throwable throwable)
+	{
+		completion.completeExceptionally(throwable);	// Entries already received are dropped along with the rest of the stream
+	}
+
+
+	@Override
+	public void onComplete()
+	{
+		if (flush())
+		{
+			completion.complete(numIngested);
+		}
+	}
+
+
+	/**
+	 * Returns the outcome of the ingestion.
+	 * @return A future completed with the number of entries put once the stream completes, or exceptionally with the error that ended it.
+	 */
+	public CompletableFuture<Long> getCompletion()
+	{
+		return completion;
+	}
+
+
+	/**
+	 * Puts the batch received so far into the table. If the table rejects an entry, cancels the subscription and completes exceptionally.
+	 * @return True if and only if the batch was put.
+	 */
+	private boolean flush()
+	{
+		try
+		{
+			table.putAll(keys, values, batchLength);
+			numIngested += batchLength;
+			return true;
+		}
+		catch (RuntimeException e)
+		{
+			subscription.cancel();
+			completion.completeExceptionally(e);
+			return false;
+		}
+		finally
+		{
+			for (int i = 0; i < batchLength; i++)	// Let the strings go once they are in the table
+			{
+				keys[i] = null;
+				values[i] = null;
+			}
+			batchLength = 0;
+		}
+	}
+}
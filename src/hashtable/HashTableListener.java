@@ -0,0 +1,42 @@
+package hashtable;
+
+/**
+ * Receives events from a HashTable that explain where the time of a slow operation went: a resize, a purge of formerly occupied positions, or a long
+ * probe sequence. Every method does nothing by default, so that a listener implements only the events it needs. Methods are called on the thread that
+ * caused the event, which may be a reader, the writer, or a background resize thread, so they must be thread-safe and should return quickly.
+ *
+ * A table without a listener does not measure anything, so events cost nothing unless they are listened to.
+ */
+public interface HashTableListener
+{
+	/**
+	 * Called after the table has been rehashed into a new array, whether to grow, to purge formerly occupied positions, to change schemes, or on request.
+	 * @param oldSize The size of the table before the resize.
+	 * @param newSize The size of the table after the resize.
+	 * @param entriesMoved The number of entries rehashed into the new array.
+	 * @param durationNanos The time the writer spent on the resize, in nanoseconds. For a background resize, only the time spent installing it.
+	 */
+	default void resized(final int oldSize, final int newSize, final int entriesMoved, final long durationNanos)
+	{
+	}
+
+
+	/**
+	 * Called after the table has been rehashed at its current size to clear its formerly occupied positions. The rehash is also reported to resized.
+	 * @param formerlyOccupiedCleared The number of formerly occupied positions cleared.
+	 * @param durationNanos The time the purge took, in nanoseconds.
+	 */
+	default void purged(final int formerlyOccupiedCleared, final long durationNanos)
+	{
+	}
+
+
+	/**
+	 * Called after a search examined at least as many positions as the table's long probe threshold.
+	 * @param probeLength The number of positions examined.
+	 * @param hit True if the search found its key, false if it missed or is looking for a place for a new entry.
+	 */
+	default void longProbe(final int probeLength, final boolean hit)
+	{
+	}
+}
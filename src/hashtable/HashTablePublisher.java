@@ -0,0 +1,201 @@
+package hashtable;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The HashTablePublisher class streams the entries of a HashTable to subscribers, sending each one no more entries than it has requested. Every
+ * subscriber receives the entries of its own snapshot of the table, taken when it subscribes, so writers keep going while it is streamed and the
+ * subscriber sees the table as it was at one point in time. Entries are read from the snapshot one chunk at a time as they are requested; nothing is
+ * collected ahead of demand.
+ *
+ * Entries are sent on the thread that requests them. A subscription's snapshot is closed when the stream completes, fails or is cancelled, so a
+ * subscriber that stops requesting without cancelling keeps writers copying chunks for it.
+ */
+public class HashTablePublisher implements Flow.Publisher<Map.Entry<String, String>>
+{
+	private final HashTable table;	// The table whose entries are published
+
+
+	/**
+	 * Constructor. Creates a publisher of a table's entries.
+	 * @param table The table.
+	 */
+	public HashTablePublisher(final HashTable table)
+	{
+		if (table == null)
+		{
+			throw new IllegalArgumentException("Table must not be null.");
+		}
+
+		this.table = table;
+	}
+
+
+	@Override
+	public void subscribe(final Flow.Subscriber<? super Map.Entry<String, String>> subscriber)
+	{
+		if (subscriber == null)
+		{
+			throw new NullPointerException("Subscriber must not be null.");
+		}
+
+		subscriber.onSubscribe(new EntrySubscription(subscriber, table.snapshot()));
+	}
+
+
+	/**
+	 * The subscription of one subscriber, walking the chunks of its snapshot as entries are requested. Requests may come from any thread, including
+	 * from within onNext; a single thread at a time sends entries, and a request made while entries are being sent is served by that thread.
+	 */
+	private static final class EntrySubscription implements Flow.Subscription
+	{
+		private final Flow.Subscriber<? super Map.Entry<String, String>> subscriber;
+		private final HashTableSnapshot snapshot;
+		private final AtomicLong demand = new AtomicLong();		// Number of entries requested and not yet sent
+		private final AtomicInteger work = new AtomicInteger();	// Number of requests made since the sending thread last checked; 0 if none sends
+		private volatile boolean terminated;					// Set once the stream has completed, failed or been cancelled
+
+		private KeyValuePair[] entries = new KeyValuePair[0];	// Entries of the chunk being sent
+		private int chunk = -1;									// Index of the chunk being sent
+		private int slot;										// Index of the next entry of the chunk to send
+
+
+		EntrySubscription(final Flow.Subscriber<? super Map.Entry<String, String>> subscriber, final HashTableSnapshot snapshot)
+		{
+			this.subscriber = subscriber;
+			this.snapshot = snapshot;
+		}
+
+
+		@Override
+		public void request(final long n)
+		{
+			if (n <= 0)
+			{
+				if (terminate())
+				{
+					subscriber.onError(new IllegalArgumentException("Number of entries requested must be positive."));
+				}
+				return;
+			}
+
+			long current;
+			do	// Add to the demand, saturating at Long.MAX_VALUE, which stands for unbounded demand
+			{
+				current = demand.get();
+			}
+			while (!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+
+			send();
+		}
+
+
+		@Override
+		public void cancel()
+		{
+			terminate();
+		}
+
+
+		/**
+		 * Sends entries while there is demand, unless another thread is sending them already.
+		 */
+		private void send()
+		{
+			if (work.getAndIncrement() != 0)
+			{
+				return;
+			}
+
+			do
+			{
+				while (!terminated && demand.get() > 0)
+				{
+					final KeyValuePair pair;
+					try
+					{
+						pair = nextEntry();
+					}
+					catch (RuntimeException e)
+					{
+						if (terminate())
+						{
+							subscriber.onError(e);
+						}
+						return;
+					}
+
+					if (pair == null)
+					{
+						if (terminate())
+						{
+							subscriber.onComplete();
+						}
+						return;
+					}
+
+					if (demand.get() != Long.MAX_VALUE)
+					{
+						demand.decrementAndGet();
+					}
+					subscriber.onNext(new AbstractMap.SimpleImmutableEntry<>(pair.getKey(), pair.getValue()));
+				}
+			}
+			while (work.decrementAndGet() != 0);
+		}
+
+
+		/**
+		 * Finds the next entry of the snapshot, reading chunks as they are reached.
+		 * @return The entry, or null if every entry has been sent.
+		 */
+		private KeyValuePair nextEntry()
+		{
+			while (true)
+			{
+				while (slot < entries.length)
+				{
+					final KeyValuePair pair = entries[slot++];
+					if (snapshot.contains(pair))
+					{
+						return pair;
+					}
+				}
+
+				if (++chunk >= snapshot.getNumberOfChunks())
+				{
+					return null;
+				}
+				entries = snapshot.readChunk(chunk);
+				slot = 0;
+			}
+		}
+
+
+		/**
+		 * Ends the stream and closes the snapshot.
+		 * @return True if and only if the stream had not ended already.
+		 */
+		private boolean terminate()
+		{
+			if (terminated)
+			{
+				return false;
+			}
+
+			synchronized (this)
+			{
+				if (terminated)
+				{
+					return false;
+				}
+				terminated = true;
+			}
+			snapshot.close();
+			return true;
+		}
+	}
+}
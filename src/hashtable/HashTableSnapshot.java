@@ -0,0 +1,159 @@
+package hashtable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * The HashTableSnapshot class is a read-only view of a HashTable's entries as they were at one point in time, obtained through HashTable.snapshot().
+ * Taking a snapshot copies nothing. Instead, the positions array is divided into chunks of CHUNK_SIZE positions, and the first write to a chunk after
+ * the snapshot was taken copies the chunk's entries into the snapshot before changing it. Chunks never written to are read from the table itself.
+ * A snapshot therefore costs a copy of only the chunks written to while it is open, and writers keep going while it is read.
+ *
+ * While concurrent reads are enabled on the table, a snapshot may be read by any thread without blocking the writer; otherwise it must be read by
+ * the writer. A snapshot must be closed once done with, so that writers stop copying chunks for it.
+ */
+public final class HashTableSnapshot implements AutoCloseable
+{
+	static final int CHUNK_SIZE = 1024;		// Number of positions copied together on the first write to any of them
+
+	private final HashTable table;							// The table the snapshot was taken of
+	private final AtomicReferenceArray<KeyValuePair[]> chunks;	// Copies of the entries of each chunk as of the snapshot; null for chunks not yet copied
+	private final long takenAt;								// Value of System.nanoTime() when the snapshot was taken; entries expired by then are left out
+	private volatile boolean closed;						// Set once the snapshot is closed, after which writers no longer preserve its chunks
+
+
+	/**
+	 * Constructor. Creates a snapshot with no chunk copied yet. Used by HashTable.snapshot().
+	 * @param table The table the snapshot is taken of.
+	 * @param size The size of the table.
+	 * @param takenAt The value of System.nanoTime() when the snapshot is taken.
+	 */
+	HashTableSnapshot(final HashTable table, final int size, final long takenAt)
+	{
+		this.table = table;
+		this.chunks = new AtomicReferenceArray<>((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		this.takenAt = takenAt;
+	}
+
+
+	/**
+	 * Passes every entry of the snapshot to an action, in the order of the table's positions.
+	 * @param action The action receiving the key and the value of each entry.
+	 */
+	public void forEach(final BiConsumer<String, String> action)
+	{
+		for (int chunk = 0; chunk < chunks.length(); chunk++)
+		{
+			for (KeyValuePair pair : readChunk(chunk))
+			{
+				if (contains(pair))
+				{
+					action.accept(pair.getKey(), pair.getValue());
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Builds an immutable, lookup-ready copy of the snapshot's entries. See HashTable.freeze().
+	 * @return The frozen copy of the snapshot.
+	 */
+	public FrozenHashTable freeze()
+	{
+		final List<String> keys = new ArrayList<>();
+		final List<String> values = new ArrayList<>();
+		forEach((key, value) ->
+		{
+			keys.add(key);
+			values.add(value);
+		});
+
+		return new FrozenHashTable(keys.toArray(new String[keys.size()]), values.toArray(new String[values.size()]));
+	}
+
+
+	/**
+	 * Releases the snapshot, so that writers no longer copy chunks for it. The snapshot may not be read afterwards.
+	 */
+	@Override
+	public void close()
+	{
+		if (!closed)
+		{
+			closed = true;
+			table.release(this);
+		}
+	}
+
+
+	/**
+	 * Returns the number of chunks the table's positions were divided into.
+	 * @return The number of chunks.
+	 */
+	int getNumberOfChunks()
+	{
+		return chunks.length();
+	}
+
+
+	/**
+	 * Reads the entries of a chunk as of the snapshot, including those expired by then.
+	 * @param chunk The index of the chunk.
+	 * @return The entries of the chunk, which must not be changed.
+	 */
+	KeyValuePair[] readChunk(final int chunk)
+	{
+		checkOpen();
+		return table.readChunk(this, chunk);
+	}
+
+
+	/**
+	 * Checks if an entry read from a chunk belongs to the snapshot: entries that had expired when it was taken are left out.
+	 * @param pair The entry.
+	 * @return True if and only if the entry had not expired when the snapshot was taken.
+	 */
+	boolean contains(final KeyValuePair pair)
+	{
+		return !pair.isExpiredAt(takenAt);
+	}
+
+
+	/**
+	 * Returns the copy of a chunk's entries.
+	 * @param chunk The index of the chunk.
+	 * @return The entries of the chunk as of the snapshot, or null if the chunk has not been copied yet.
+	 */
+	KeyValuePair[] getChunk(final int chunk)
+	{
+		return chunks.get(chunk);
+	}
+
+
+	/**
+	 * Stores the copy of a chunk's entries, unless the chunk was copied already.
+	 * @param chunk The index of the chunk.
+	 * @param entries The entries of the chunk as of the snapshot.
+	 * @return The copy of the chunk's entries held by the snapshot.
+	 */
+	KeyValuePair[] store(final int chunk, final KeyValuePair[] entries)
+	{
+		chunks.compareAndSet(chunk, null, entries);
+		return chunks.get(chunk);
+	}
+
+
+	/**
+	 * Throws an exception if the snapshot was closed.
+	 */
+	private void checkOpen()
+	{
+		if (closed)
+		{
+			throw new IllegalStateException("The snapshot was closed.");
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package hashtable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Seeded 64-bit hash functions over the full contents of a key. Unlike Key.hashCode, which only reads a bounded prefix of the key, these functions
+ * read every character, so they can be used where distinct keys must be told apart with high probability.
+ */
+final class Hashing
+{
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;	// FNV-1a initial value
+	private static final long FNV_PRIME = 0x100000001b3L;				// FNV-1a multiplier
+
+	private Hashing() {}
+
+
+	/**
+	 * Hashes a character sequence with the given seed.
+	 * @param key The characters to hash.
+	 * @param seed The seed; different seeds give independent hash functions.
+	 * @return A 64-bit hash of the sequence.
+	 */
+	static long hash64(final CharSequence key, final long seed)
+	{
+		long hash = FNV_OFFSET_BASIS ^ seed;
+
+		for (int i = 0; i < key.length(); i++)
+		{
+			hash = (hash ^ key.charAt(i)) * FNV_PRIME;
+		}
+
+		return mix(hash);
+	}
+
+
+	/**
+	 * Hashes a range of a character array with the given seed. Gives the same result as hash64(CharSequence, long) over the same characters.
+	 * @param key The array holding the characters to hash.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 * @param seed The seed; different seeds give independent hash functions.
+	 * @return A 64-bit hash of the range.
+	 */
+	static long hash64(final char[] key, final int offset, final int length, final long seed)
+	{
+		long hash = FNV_OFFSET_BASIS ^ seed;
+
+		for (int i = offset; i < offset + length; i++)
+		{
+			hash = (hash ^ key[i]) * FNV_PRIME;
+		}
+
+		return mix(hash);
+	}
+
+
+	/**
+	 * Hashes a range of a byte buffer with the given seed, reading each byte as one ISO-8859-1 character. Gives the same result as
+	 * hash64(CharSequence, long) over the decoded characters.
+	 * @param key The buffer holding the bytes to hash. Its position and limit are ignored.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @param seed The seed; different seeds give independent hash functions.
+	 * @return A 64-bit hash of the range.
+	 */
+	static long hash64(final ByteBuffer key, final int offset, final int length, final long seed)
+	{
+		long hash = FNV_OFFSET_BASIS ^ seed;
+		
+		for (int i = offset; i < offset + length; i++)
+		{
+			hash = (hash ^ (key.get(i) & 0xFF)) * FNV_PRIME;
+		}
+		
+		return mix(hash);
+	}
+
+
+	/**
+	 * Scrambles the bits of a 64-bit value so that every input bit affects every output bit (the SplitMix64 finalizer).
+	 * @param value The value to scramble.
+	 * @return The scrambled value.
+	 */
+	static long mix(long value)
+	{
+		value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+		return value ^ (value >>> 31);
+	}
+
+
+	/**
+	 * Maps a 64-bit hash uniformly onto [0, range) using its upper bits, without a division.
+	 * @param hash The hash to map.
+	 * @param range The size of the range; a positive integer.
+	 * @return An integer in [0, range).
+	 */
+	static int reduce(final long hash, final int range)
+	{
+		return (int) (((hash >>> 32) * range) >>> 32);
+	}
+}
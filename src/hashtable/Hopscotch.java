@@ -0,0 +1,107 @@
+package hashtable;
+
+/**
+ * Resolves collisions by hopscotch hashing: every entry is kept within a fixed neighborhood of NEIGHBORHOOD_SIZE consecutive positions starting at
+ * its home index, and a bitmap for each home index records which positions of its neighborhood hold entries from that home. A search reads one
+ * bitmap and examines only the positions it marks, which lie next to each other in the positions array, instead of jumping across the array.
+ *
+ * To insert, the table finds the nearest free position after the home index and, while it lies outside the neighborhood, moves an entry from a
+ * position before it into it, so that the free position hops back towards the home. The table grows if no entry can be moved. Growing cannot
+ * separate keys with the same hash code, so a table whose neighborhood is full of keys sharing a new key's hash code switches to separate chaining.
+ *
+ * The handler holds the bitmaps of the table it was created for, so it is replaced along with the positions on every resize. Probe sequences are
+ * not used: probe returns the raw hash, which compresses to the home index.
+ */
+class Hopscotch extends CollisionHandler
+{
+	static final int NEIGHBORHOOD_SIZE = 32;	// Number of positions from its home index within which every entry is kept; one bit each
+
+	private final int[] neighborhoods;			// For each home index, a bit for each position of its neighborhood holding an entry from that home
+	private int numDisplacements;				// Number of entries moved to make room since the table was built
+
+
+	/**
+	 * Constructor. Creates empty bitmaps for a table.
+	 * @param size The size of the table.
+	 */
+	Hopscotch(final int size)
+	{
+		this.neighborhoods = new int[size];
+	}
+
+
+	public int probe(final int rawHash, final int attempt)
+	{
+		return rawHash;
+	}
+
+
+	public CollisionHandlingScheme getType()
+	{
+		return CollisionHandlingScheme.HOPSCOTCH;
+	}
+
+
+	/**
+	 * Returns the bitmap of a home index. Bit d is set if the position d after the home index holds an entry from that home.
+	 * @param home The home index.
+	 * @return The bitmap.
+	 */
+	int getNeighborhood(final int home)
+	{
+		return neighborhoods[home];
+	}
+
+
+	/**
+	 * Records that a position of a neighborhood holds an entry from its home.
+	 * @param home The home index.
+	 * @param distance The distance of the position after the home index, less than NEIGHBORHOOD_SIZE.
+	 */
+	void occupy(final int home, final int distance)
+	{
+		neighborhoods[home] |= 1 << distance;
+	}
+
+
+	/**
+	 * Records that a position of a neighborhood no longer holds an entry from its home.
+	 * @param home The home index.
+	 * @param distance The distance of the position after the home index, less than NEIGHBORHOOD_SIZE.
+	 */
+	void vacate(final int home, final int distance)
+	{
+		neighborhoods[home] &= ~(1 << distance);
+	}
+
+
+	/**
+	 * Counts an entry moved to make room for another.
+	 */
+	void recordDisplacement()
+	{
+		numDisplacements++;
+	}
+
+
+	/**
+	 * Returns the number of entries moved to make room since the table was built.
+	 * @return The number of displacements.
+	 */
+	int getNumberOfDisplacements()
+	{
+		return numDisplacements;
+	}
+
+
+	/**
+	 * Computes the number of entries a search of a neighborhood examined, for probe length statistics.
+	 * @param neighborhood The bitmap searched.
+	 * @param distance The distance of the entry found, or -1 if none was.
+	 * @return The number of marked positions up to and including the entry found, or all of them if none was.
+	 */
+	static int searchLength(final int neighborhood, final int distance)
+	{
+		return Integer.bitCount(distance < 0 ? neighborhood : neighborhood & (((1 << distance) << 1) - 1));
+	}
+}
@@ -0,0 +1,110 @@
+package hashtable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The InternPool class deduplicates strings: intern returns one canonical instance for all equal strings passed to it, so that tables storing many
+ * equal values hold a single copy. A pool may be shared by any number of tables, such as the shards of a ShardedHashTable, and used by any number of
+ * threads at once.
+ *
+ * The pool holds its strings weakly: a string no longer stored anywhere else is reclaimed by the garbage collector, and its slot in the pool is
+ * cleared on a later call, so values that stop repeating do not accumulate.
+ */
+public final class InternPool
+{
+	private final ConcurrentHashMap<WeakString, WeakString> strings = new ConcurrentHashMap<>();	// Each canonical string, keyed by itself
+	private final ReferenceQueue<String> collected = new ReferenceQueue<>();						// Receives the entries of reclaimed strings
+
+
+	/**
+	 * Returns the canonical instance of a string, making it the given one if the pool holds no equal string.
+	 * @param string The string. Must not be null.
+	 * @return The canonical instance, equal to the string.
+	 */
+	public String intern(final String string)
+	{
+		expungeCollected();
+
+		final WeakString entry = new WeakString(string, collected);
+		while (true)
+		{
+			final WeakString existing = strings.putIfAbsent(entry, entry);
+			if (existing == null)
+			{
+				return string;
+			}
+
+			final String canonical = existing.get();
+			if (canonical != null)
+			{
+				return canonical;
+			}
+			strings.remove(existing, existing);	// Reclaimed since the lookup; take its place
+		}
+	}
+
+
+	/**
+	 * Returns the number of strings in the pool, not counting those already reclaimed.
+	 * @return The number of canonical strings.
+	 */
+	public int size()
+	{
+		expungeCollected();
+		return strings.size();
+	}
+
+
+	/**
+	 * Removes the entries of the strings reclaimed by the garbage collector.
+	 */
+	private void expungeCollected()
+	{
+		Reference<? extends String> reference;
+		while ((reference = collected.poll()) != null)
+		{
+			strings.remove(reference, reference);
+		}
+	}
+
+
+	/**
+	 * A weak reference to a string, equal to the references to equal strings. Once its string is reclaimed, it is only equal to itself, and keeps the
+	 * hash code of its string so that it can still be found and removed.
+	 */
+	private static final class WeakString extends WeakReference<String>
+	{
+		private final int hash;	// Hash code of the string
+
+		WeakString(final String string, final ReferenceQueue<String> queue)
+		{
+			super(string, queue);
+			this.hash = string.hashCode();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object other)
+		{
+			if (this == other)
+			{
+				return true;
+			}
+			else if (!(other instanceof WeakString) || ((WeakString) other).hash != hash)
+			{
+				return false;
+			}
+
+			final String string = get();
+			return string != null && string.equals(((WeakString) other).get());
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package hashtable;
+
+import java.nio.ByteBuffer;
+
+class Key
+{
+	public static final int HASH_BASE = 33;	// Try 33, 37, 39, 41; products of few primes
+	public static final int MAX_HASH_LENGTH = 10;	// Try 33, 37, 39, 41; products of few primes
+	
+	private String key;
+	
+	public Key(final String key)
+	{
+		if (key == null)
+		{
+			throw new IllegalArgumentException("Key cannot be null.");
+		}
+		
+		this.key = key;
+	}
+	
+	public int hashCode()
+	{
+		return hash(key);
+	}
+	
+	/**
+	 * Computes the hash code a key with the given characters would have, without creating the key.
+	 * @param key The characters of the key.
+	 * @return The hash code.
+	 */
+	static int hash(final CharSequence key)
+	{
+		int code = 0;
+		
+		for (int i = Math.min(key.length() - 1, MAX_HASH_LENGTH); i >= 0; i--)
+		{
+			code = key.charAt(i) + code * HASH_BASE;	// Horner's rule for evaluating polynomials in O(n) time
+		}
+		
+		return code;
+	}
+	
+	/**
+	 * Computes the hash code a key made of a range of a character array would have, without creating the key.
+	 * @param key The array holding the characters of the key.
+	 * @param offset The index of the first character.
+	 * @param length The number of characters.
+	 * @return The hash code.
+	 */
+	static int hash(final char[] key, final int offset, final int length)
+	{
+		int code = 0;
+		
+		for (int i = Math.min(length - 1, MAX_HASH_LENGTH); i >= 0; i--)
+		{
+			code = key[offset + i] + code * HASH_BASE;
+		}
+		
+		return code;
+	}
+	
+	/**
+	 * Computes the hash code a key made of a range of a byte buffer would have, without creating the key. Each byte is read as one ISO-8859-1
+	 * character, so the result matches that of the decoded string.
+	 * @param key The buffer holding the bytes of the key. Its position and limit are ignored.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @return The hash code.
+	 */
+	static int hash(final ByteBuffer key, final int offset, final int length)
+	{
+		int code = 0;
+		
+		for (int i = Math.min(length - 1, MAX_HASH_LENGTH); i >= 0; i--)
+		{
+			code = (key.get(offset + i) & 0xFF) + code * HASH_BASE;
+		}
+		
+		return code;
+	}
+	
+	public String toString()
+	{
+		return key;
+	}
+}
\ No newline at end of file
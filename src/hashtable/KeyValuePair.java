@@ -8,15 +8,47 @@ package hashtable;
 
 class KeyValuePair
 {	
+	public static final long NO_EXPIRATION = Long.MIN_VALUE;	// Expiration time of entries that never expire
+	
 	private Key key;
 	private String value;
 	private int collisions;
+	private boolean referenced;	// Set when the entry is used; cleared as the cache eviction hand passes it
+	private long expirationTime;	// Value of System.nanoTime() from which the entry counts as absent; NO_EXPIRATION if never
 	
 	public KeyValuePair(final String key, final String value)
+	{
+		this(key, value, NO_EXPIRATION);
+	}
+	
+	public KeyValuePair(final String key, final String value, final long expirationTime)
 	{
 		setKey(key);
 		setValue(value);
 		collisions = 0;
+		referenced = true;
+		this.expirationTime = expirationTime;
+	}
+	
+	/**
+	 * Constructor for entries that hold their value in another form. The value string is left null; subclasses must override getValue and setValue.
+	 * @param key The key of the entry.
+	 */
+	protected KeyValuePair(final String key)
+	{
+		setKey(key);
+		collisions = 0;
+		referenced = true;
+		expirationTime = NO_EXPIRATION;
+	}
+	
+	/**
+	 * Creates a copy of the entry, with the same key, value and expiration time, and no collisions.
+	 * @return The copy.
+	 */
+	public KeyValuePair copy()
+	{
+		return new KeyValuePair(getKey(), value, expirationTime);
 	}
 	
 	public String getKey()
@@ -64,48 +96,58 @@ class KeyValuePair
 		return collisions;
 	}
 	
-	public int hashCode()
+	public void markReferenced()
 	{
-		return key.hashCode();
+		referenced = true;
 	}
 	
-	public String toString()
+	/**
+	 * Clears the reference mark, reporting whether it was set. Gives the entry a second chance under CLOCK eviction.
+	 * @return True if and only if the entry had been used since the mark was last cleared.
+	 */
+	public boolean clearReferenced()
 	{
-		return "(" + key + ", " + value + ")";
+		final boolean wasReferenced = referenced;
+		referenced = false;
+		return wasReferenced;
 	}
-}
-
-class Key
-{
-	public static final int HASH_BASE = 33;	// Try 33, 37, 39, 41; products of few primes
-	public static final int MAX_HASH_LENGTH = 10;	// Try 33, 37, 39, 41; products of few primes
 	
-	private String key;
+	public long getExpirationTime()
+	{
+		return expirationTime;
+	}
 	
-	public Key(final String key)
+	public void setExpirationTime(final long expirationTime)
 	{
-		if (key == null)
-		{
-			throw new IllegalArgumentException("Key cannot be null.");
-		}
-		
-		this.key = key;
+		this.expirationTime = expirationTime;
+	}
+	
+	/**
+	 * Checks if the entry's time to live has run out. Reads the clock only for entries that have an expiration time.
+	 * @return True if and only if the entry has expired.
+	 */
+	public boolean isExpired()
+	{
+		return expirationTime != NO_EXPIRATION && System.nanoTime() - expirationTime >= 0;
+	}
+	
+	/**
+	 * Checks if the entry's time to live had run out at a given time.
+	 * @param time A value of System.nanoTime().
+	 * @return True if and only if the entry had expired at that time.
+	 */
+	public boolean isExpiredAt(final long time)
+	{
+		return expirationTime != NO_EXPIRATION && time - expirationTime >= 0;
 	}
 	
 	public int hashCode()
 	{
-		int code = 0;
-		
-		for (int i = Math.min(key.length() - 1, MAX_HASH_LENGTH); i >= 0; i--)
-		{
-			code = key.charAt(i) + code * HASH_BASE;	// Horner's rule for evaluating polynomials in O(n) time
-		}
-		
-		return code;
+		return key.hashCode();
 	}
 	
 	public String toString()
 	{
-		return key;
+		return "(" + key + ", " + getValue() + ")";
 	}
-}
\ No newline at end of file
+}
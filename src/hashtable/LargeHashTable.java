@@ -0,0 +1,412 @@
+package hashtable;
+
+import java.util.function.BiConsumer;
+
+import prime.Prime;
+
+/**
+ * A hash table for more entries than a Java array can index. HashTable keeps its positions in one array addressed by int, so it is limited to fewer
+ * than 2^31 positions; this table splits its positions into segments of SEGMENT_SIZE and addresses them by long, so its size is bounded only by
+ * memory. Its size is a prime number of up to 63 bits, found by Prime.nextLargestPrime(long).
+ *
+ * Keys are hashed to 64 bits with Hashing.hash64, which reads the whole key, and collisions are resolved by double hashing: the home index and the
+ * step are both taken from the hash, and the step is between 1 and size - 1, so that with a prime size every probe sequence visits every position.
+ * Each position keeps the upper 32 bits of its key's hash as a fingerprint, so that most mismatches are rejected without comparing strings.
+ *
+ * Removed entries leave a marker that searches walk past. The table grows by the rehash factor when its live entries and markers reach the rehash
+ * threshold, or is rebuilt at the same size if markers are most of them. The table holds no entry objects, only keys, values and fingerprints, and
+ * supports none of HashTable's other features; like a HashTable, it must not be used by several threads at once.
+ */
+public class LargeHashTable
+{
+	static final int SEGMENT_BITS = 24;							// Number of index bits within a segment
+	static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;			// Number of positions in every segment but the last
+	private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	private static final long HASH_SEED = 0x2545f4914f6cdd1dL;	// Seed of the hash that gives the home index and fingerprint
+	private static final long STEP_SEED = 0x9e3779b97f4a7c15L;	// Mixed into the hash to give the step, independent of the home index
+	private static final String AVAILABLE = new String("");	// Marks a position whose entry was removed; compared by identity only
+
+	private String[][] keys;				// Key of each position; null if never filled, AVAILABLE if removed
+	private String[][] values;				// Value of each position
+	private int[][] fingerprints;			// Upper half of the hash of each position's key
+	private long size;						// Number of positions; a prime number
+	private long numElements;				// Number of entries
+	private long numFormerlyOccupied;		// Number of positions marked AVAILABLE
+	private long longestProbe;				// Most positions examined by an insertion since the table was built
+	private double rehashThreshold = 0.75;
+	private double rehashFactor = 2.0;
+
+
+	/**
+	 * Constructor. Creates an empty table of a given size.
+	 * @param initialSize The desired size. Will be rounded up to a prime number.
+	 */
+	public LargeHashTable(final long initialSize)
+	{
+		if (initialSize < 1)
+		{
+			throw new IllegalArgumentException("Size must be a positive integer.");
+		}
+
+		allocate(Prime.nextLargestPrime(initialSize));
+	}
+
+
+	/**
+	 * Puts an entry in the table, replacing the value of any entry with the same key.
+	 * @param key The key. Must not be null.
+	 * @param value The value. Must not be null.
+	 * @return The value the key had, or null if it was absent.
+	 */
+	public String put(final String key, final String value)
+	{
+		if (key == null || value == null)
+		{
+			throw new IllegalArgumentException("Key and value must not be null.");
+		}
+
+		if (numElements + numFormerlyOccupied + 1 > rehashThreshold * size)
+		{
+			final boolean mostlyRemoved = numFormerlyOccupied > numElements;	// Rebuilding at the same size frees enough positions
+			resize(mostlyRemoved ? size : (long) Math.ceil(size * rehashFactor));
+		}
+
+		final long hash = Hashing.hash64(key, HASH_SEED);
+		final int fingerprint = (int) (hash >>> 32);
+		final long step = step(hash);
+		long index = Long.remainderUnsigned(hash, size);
+		long available = -1;	// First removed position passed, which the entry takes if its key is absent
+
+		for (long attempt = 1; ; attempt++)
+		{
+			final String stored = keys[segment(index)][offset(index)];
+			if (stored == null)
+			{
+				if (available < 0)
+				{
+					available = index;
+				}
+				else
+				{
+					numFormerlyOccupied--;
+				}
+				store(available, key, value, fingerprint);
+				numElements++;
+				longestProbe = Math.max(longestProbe, attempt);
+				return null;
+			}
+			else if (stored == AVAILABLE)
+			{
+				if (available < 0)
+				{
+					available = index;
+				}
+			}
+			else if (fingerprints[segment(index)][offset(index)] == fingerprint && stored.equals(key))
+			{
+				final String oldValue = values[segment(index)][offset(index)];
+				values[segment(index)][offset(index)] = value;
+				return oldValue;
+			}
+
+			index = next(index, step);
+		}
+	}
+
+
+	/**
+	 * Gets the value of a key.
+	 * @param key The key.
+	 * @return The value, or null if the key is absent.
+	 */
+	public String get(final String key)
+	{
+		final long index = find(key);
+		return index < 0 ? null : values[segment(index)][offset(index)];
+	}
+
+
+	/**
+	 * Checks if a key is in the table.
+	 * @param key The key.
+	 * @return True if and only if the table holds an entry with the key.
+	 */
+	public boolean containsKey(final String key)
+	{
+		return find(key) >= 0;
+	}
+
+
+	/**
+	 * Removes the entry with a key.
+	 * @param key The key.
+	 * @return The value of the removed entry, or null if the key was absent.
+	 */
+	public String remove(final String key)
+	{
+		final long index = find(key);
+		if (index < 0)
+		{
+			return null;
+		}
+
+		final String oldValue = values[segment(index)][offset(index)];
+		keys[segment(index)][offset(index)] = AVAILABLE;
+		values[segment(index)][offset(index)] = null;
+		numElements--;
+		numFormerlyOccupied++;
+		return oldValue;
+	}
+
+
+	/**
+	 * Finds the position of the entry with a key.
+	 * @param key The key.
+	 * @return The index of the entry, or -1 if the key is absent.
+	 */
+	private long find(final String key)
+	{
+		if (key == null)
+		{
+			return -1;
+		}
+
+		final long hash = Hashing.hash64(key, HASH_SEED);
+		final int fingerprint = (int) (hash >>> 32);
+		final long step = step(hash);
+		long index = Long.remainderUnsigned(hash, size);
+
+		for (long attempt = 0; attempt < size; attempt++)	// Every position is visited once; the table always has a never-filled one
+		{
+			final String stored = keys[segment(index)][offset(index)];
+			if (stored == null)
+			{
+				return -1;
+			}
+			else if (stored != AVAILABLE && fingerprints[segment(index)][offset(index)] == fingerprint && stored.equals(key))
+			{
+				return index;
+			}
+
+			index = next(index, step);
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Computes the step of a key's probe sequence.
+	 * @param hash The hash of the key.
+	 * @return A step between 1 and size - 1, or 1 if the table has a single position.
+	 */
+	private long step(final long hash)
+	{
+		return size == 1 ? 1 : 1 + Long.remainderUnsigned(Hashing.mix(hash ^ STEP_SEED), size - 1);
+	}
+
+
+	/**
+	 * Advances a probe sequence by a step, wrapping around the end of the table without overflowing.
+	 * @param index The current index.
+	 * @param step The step, less than the size.
+	 * @return The next index.
+	 */
+	private long next(final long index, final long step)
+	{
+		return index >= size - step ? index - (size - step) : index + step;
+	}
+
+
+	private static int segment(final long index)
+	{
+		return (int) (index >>> SEGMENT_BITS);
+	}
+
+
+	private static int offset(final long index)
+	{
+		return (int) (index & SEGMENT_MASK);
+	}
+
+
+	private void store(final long index, final String key, final String value, final int fingerprint)
+	{
+		keys[segment(index)][offset(index)] = key;
+		values[segment(index)][offset(index)] = value;
+		fingerprints[segment(index)][offset(index)] = fingerprint;
+	}
+
+
+	/**
+	 * Replaces the positions with empty ones.
+	 * @param newSize The number of positions; a prime number.
+	 */
+	private void allocate(final long newSize)
+	{
+		final long numSegments = (newSize + SEGMENT_SIZE - 1) >>> SEGMENT_BITS;
+		if (numSegments > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Size is too large: " + newSize + ".");
+		}
+
+		keys = new String[(int) numSegments][];
+		values = new String[(int) numSegments][];
+		fingerprints = new int[(int) numSegments][];
+		for (int s = 0; s < numSegments; s++)
+		{
+			final int length = (int) Math.min(SEGMENT_SIZE, newSize - ((long) s << SEGMENT_BITS));	// The last segment holds the remainder
+			keys[s] = new String[length];
+			values[s] = new String[length];
+			fingerprints[s] = new int[length];
+		}
+
+		size = newSize;
+		numElements = 0;
+		numFormerlyOccupied = 0;
+		longestProbe = 0;
+	}
+
+
+	/**
+	 * Resizes the table to a desired size, moving every entry to its place in the new positions. The chosen size is rounded up to the next prime,
+	 * and to the smallest size that holds the entries below the rehash threshold.
+	 * @param newSize The new desired size.
+	 */
+	public void resize(final long newSize)
+	{
+		final long minimumSize = (long) Math.ceil((numElements + 1) / rehashThreshold);
+		final String[][] oldKeys = keys;
+		final String[][] oldValues = values;
+		final int[][] oldFingerprints = fingerprints;
+
+		allocate(Prime.nextLargestPrime(Math.max(newSize, minimumSize)));
+
+		for (int s = 0; s < oldKeys.length; s++)
+		{
+			for (int i = 0; i < oldKeys[s].length; i++)
+			{
+				final String key = oldKeys[s][i];
+				if (key != null && key != AVAILABLE)
+				{
+					insertAbsent(key, oldValues[s][i], oldFingerprints[s][i]);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Inserts an entry whose key is known to be absent into a table without removed positions, as when rebuilding it.
+	 * @param key The key.
+	 * @param value The value.
+	 * @param fingerprint The fingerprint of the key.
+	 */
+	private void insertAbsent(final String key, final String value, final int fingerprint)
+	{
+		final long hash = Hashing.hash64(key, HASH_SEED);
+		final long step = step(hash);
+		long index = Long.remainderUnsigned(hash, size);
+		long attempt = 1;
+
+		while (keys[segment(index)][offset(index)] != null)
+		{
+			index = next(index, step);
+			attempt++;
+		}
+
+		store(index, key, value, fingerprint);
+		numElements++;
+		longestProbe = Math.max(longestProbe, attempt);
+	}
+
+
+	/**
+	 * Performs an action on every entry, in the order of the positions.
+	 * @param action The action, given each key and its value.
+	 */
+	public void forEach(final BiConsumer<String, String> action)
+	{
+		for (int s = 0; s < keys.length; s++)
+		{
+			for (int i = 0; i < keys[s].length; i++)
+			{
+				final String key = keys[s][i];
+				if (key != null && key != AVAILABLE)
+				{
+					action.accept(key, values[s][i]);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Changes the table's rehash threshold. When the entries and removed positions would exceed this fraction of the size, the table is resized.
+	 * @param rehashThreshold The table's new rehash threshold, greater than 0 and less than 1.
+	 */
+	public void setRehashThreshold(final double rehashThreshold)
+	{
+		if (!(0.0 < rehashThreshold && rehashThreshold < 1.0))
+		{
+			throw new IllegalArgumentException("Rehash threshold must be between 0 and 1, exclusive.");
+		}
+
+		this.rehashThreshold = rehashThreshold;
+	}
+
+
+	/**
+	 * Sets the factor by which the table will expand when the rehash threshold is met.
+	 * @param rehashFactor The table's new rehash factor. Must be greater than unity.
+	 */
+	public void setRehashFactor(final double rehashFactor)
+	{
+		if (rehashFactor <= 1.0)
+		{
+			throw new IllegalArgumentException("Rehash factor must be greater than unity.");
+		}
+
+		this.rehashFactor = rehashFactor;
+	}
+
+
+	public long size()
+	{
+		return size;
+	}
+
+
+	public long getNumberOfElements()
+	{
+		return numElements;
+	}
+
+
+	public boolean isEmpty()
+	{
+		return numElements == 0;
+	}
+
+
+	public double getLoadFactor()
+	{
+		return (double) numElements / size;
+	}
+
+
+	public void printHashTableStatistics()
+	{
+		System.out.println("--------LARGE HASH TABLE STATISTICS--------");
+		System.out.println("Rehash threshold: " + rehashThreshold);
+		System.out.println("Rehash factor: " + rehashFactor);
+		System.out.println("Segments: " + keys.length + " of up to " + SEGMENT_SIZE + " positions");
+		System.out.println();
+		System.out.println("Size: " + size);
+		System.out.println("Number of elements: " + numElements);
+		System.out.println("Formerly occupied positions: " + numFormerlyOccupied);
+		System.out.println("Load factor: " + getLoadFactor());
+		System.out.println("Longest insertion probe: " + longestProbe);
+		System.out.println();
+	}
+}
@@ -0,0 +1,138 @@
+package hashtable;
+
+import hashtable.CollisionHandler.CollisionHandlingScheme;
+
+/**
+ * Keeps a HashTable below a memory budget, as estimated by MemoryFootprint. Each expansion measures the table and chooses the largest size that still
+ * fits the budget once the table fills up to its rehash threshold, raising the threshold if need be, so that growth slows and the table fills further
+ * as it nears the budget. Once no expansion fits, the table stops growing, and the budget caps the number of entries it holds.
+ *
+ * Every method is called by the table's writer, under its write lock, so the budget needs no synchronization of its own.
+ */
+class MemoryBudget
+{
+	private static final double BUDGETED_LOAD_FRACTION = 0.9;	// Fraction of a scheme's highest rehash threshold a budget may raise it to
+	private static final int MIN_BUDGETED_HEADROOM = 16;		// A budgeted expansion must make room for 1/16 more entries
+
+	private long bytes;			// Estimated bytes the table stays below; 0 for no budget
+	private int capacity;		// Most entries the table holds once the budget leaves no room to grow; 0 while it can grow
+
+
+	/**
+	 * Sets the budget. The table may grow again until the new budget is reached.
+	 * @param bytes The estimated size, in bytes, the table stays below; 0 for no budget.
+	 */
+	void setBytes(final long bytes)
+	{
+		this.bytes = bytes;
+		this.capacity = 0;
+	}
+
+
+	/**
+	 * Returns the budget.
+	 * @return The estimated size, in bytes, the table stays below; 0 if there is no budget.
+	 */
+	long getBytes()
+	{
+		return bytes;
+	}
+
+
+	/**
+	 * Returns the number of entries the table is capped at.
+	 * @return The most entries the table holds, or 0 while the budget leaves room to grow.
+	 */
+	int getCapacity()
+	{
+		return capacity;
+	}
+
+
+	/**
+	 * Checks whether the budget stops the table from growing.
+	 * @return True if and only if no expansion fits the budget any more.
+	 */
+	boolean isFull()
+	{
+		return capacity > 0;
+	}
+
+
+	/**
+	 * Checks whether the budget leaves room for another entry.
+	 * @param numElements The number of entries in the table.
+	 * @return True if and only if the table is capped at its current number of entries or fewer.
+	 */
+	boolean isAtCapacity(final int numElements)
+	{
+		return capacity > 0 && numElements >= capacity;
+	}
+
+
+	/**
+	 * Checks whether a table holds more entries than the budget affords.
+	 * @param numElements The number of entries in the table.
+	 * @return True if and only if an entry must be evicted.
+	 */
+	boolean isOverCapacity(final int numElements)
+	{
+		return capacity > 0 && numElements > capacity;
+	}
+
+
+	/**
+	 * Chooses the size of an expansion under the budget, if there is one. The expanded table should fit in the budget once it holds as many entries as
+	 * its rehash threshold allows. If the desired size does not fit, the largest size that does is chosen, as long as it makes room for at least
+	 * 1/MIN_BUDGETED_HEADROOM more entries, with the rehash threshold raised up to BUDGETED_LOAD_FRACTION of the scheme's highest if need be. Failing
+	 * that, the table stops growing, and holds at most as many entries as the budget affords at its current size, within that threshold.
+	 * @param table The table to expand.
+	 * @param desiredSize The size the table would expand to without a budget.
+	 * @param rehashThreshold The table's rehash threshold.
+	 * @param newCollisionHandlingScheme The collision handling scheme the table will have.
+	 * @return The size to expand to, or the current size if no expansion fits.
+	 */
+	int expansionSize(final HashTable table, final int desiredSize, final double rehashThreshold, final CollisionHandlingScheme newCollisionHandlingScheme)
+	{
+		final int numElements = table.getNumberOfElements();
+		if (bytes == 0 || numElements == 0)
+		{
+			return desiredSize;
+		}
+		else if (capacity > 0)	// Already as large as the budget allows
+		{
+			return table.size();
+		}
+
+		final MemoryFootprint footprint = table.measureFootprint();
+		final double bytesPerEntry = ((double) footprint.getPerEntryBytes()) / numElements;
+		final double bytesPerSlot = ((double) (footprint.getSlotArrayBytes() + footprint.getAuxiliaryBytes())) / table.size();
+		final double maxThreshold = Math.max(rehashThreshold, BUDGETED_LOAD_FRACTION * newCollisionHandlingScheme.getMaxRehashThreshold());
+
+		if (desiredSize * (bytesPerSlot + rehashThreshold * bytesPerEntry) <= bytes)
+		{
+			return desiredSize;
+		}
+
+		for (double threshold : new double[] { rehashThreshold, maxThreshold })
+		{
+			final int affordableSize = (int) Math.min(desiredSize, bytes / (bytesPerSlot + threshold * bytesPerEntry));
+			if (affordableSize >= table.size() && numElements + numElements / MIN_BUDGETED_HEADROOM < threshold * affordableSize)
+			{
+				table.raiseRehashThreshold(threshold);
+				return affordableSize;
+			}
+		}
+
+		// No expansion fits, so the table keeps its size and takes only the entries the budget still affords
+		final double affordableEntries = Math.min(maxThreshold * table.size(), (bytes - bytesPerSlot * table.size()) / bytesPerEntry);
+		capacity = (int) Math.max(numElements, affordableEntries);
+		return table.size();
+	}
+
+
+	public String toString()
+	{
+		return bytes + " B" + (capacity > 0 ? ", full at " + capacity + " entries" : "");
+	}
+}
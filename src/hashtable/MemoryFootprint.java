@@ -0,0 +1,266 @@
+package hashtable;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import hashtable.CollisionHandler.CollisionHandlingScheme;
+
+/**
+ * The MemoryFootprint class is an estimate of the heap memory held by a HashTable, broken down by component, obtained through
+ * HashTable.getMemoryFootprint(). Sizes are estimated for a 64-bit HotSpot JVM: objects have a 12-byte header and 4-byte references when the heap is
+ * small enough for compressed references (below 32 GB), 16-byte headers and 8-byte references otherwise, and are padded to a multiple of 8 bytes.
+ * Strings hold one byte per character if they are Latin-1 and the JVM has compact strings (Java 9 and later), two bytes otherwise.
+ *
+ * Every key and value is counted as if the table held the only reference to it, so strings shared with the caller or other tables are counted in
+ * full. A value that is its entry's key string is not counted again, and while values are interned, each distinct value string is counted once.
+ */
+public final class MemoryFootprint
+{
+	private static final boolean COMPRESSED_REFERENCES = Runtime.getRuntime().maxMemory() < (32L << 30);
+	static final int REFERENCE_SIZE = COMPRESSED_REFERENCES ? 4 : 8;		// Bytes taken by a reference
+	private static final int HEADER_SIZE = COMPRESSED_REFERENCES ? 12 : 16;	// Bytes taken by an object header
+	private static final int ARRAY_HEADER_SIZE = 16;						// Bytes taken by an array header, including its length
+	private static final boolean COMPACT_STRINGS = !System.getProperty("java.specification.version").startsWith("1.");
+
+	static final long POSITION_SIZE = objectSize(REFERENCE_SIZE + 4);								// Entry, index
+	static final long BIN_SIZE = objectSize(3 * REFERENCE_SIZE + 4);								// Entry, index, entries, hashes
+	static final long KEY_VALUE_PAIR_SIZE = objectSize(2 * REFERENCE_SIZE + 4 + 1 + 8);				// Key, value, collisions, referenced, expiration
+	static final long COUNTER_PAIR_SIZE = objectSize(2 * REFERENCE_SIZE + 4 + 1 + 8 + 8);			// As above, and the count
+	static final long KEY_SIZE = objectSize(REFERENCE_SIZE);										// The key string
+	private static final long STRING_SIZE = objectSize(COMPACT_STRINGS ? REFERENCE_SIZE + 1 + 4 + 1 : REFERENCE_SIZE + 4);	// Chars, (coder,) hash
+
+	private final long slotArrayBytes;		// The positions array itself
+	private final long positionBytes;		// The Position objects holding entries, and under separate chaining, the bins and their arrays
+	private final long entryBytes;			// The KeyValuePair objects and the Key objects wrapping their keys
+	private final long keyBytes;			// The key strings
+	private final long valueBytes;			// The value strings
+	private final long tombstoneBytes;		// The markers of formerly occupied positions, including negated entries
+	private final long auxiliaryBytes;		// The membership filter, and the hopscotch neighborhood bitmaps or d-left bucket hashes
+
+
+	/**
+	 * Constructor. Used by measure().
+	 * @param slotArrayBytes Bytes taken by the positions array.
+	 * @param positionBytes Bytes taken by the positions holding entries.
+	 * @param entryBytes Bytes taken by the entries, not counting their keys and values.
+	 * @param keyBytes Bytes taken by the keys.
+	 * @param valueBytes Bytes taken by the values.
+	 * @param tombstoneBytes Bytes taken by the markers of formerly occupied positions.
+	 * @param auxiliaryBytes Bytes taken by the membership filter and any other per-table structure.
+	 */
+	MemoryFootprint(final long slotArrayBytes, final long positionBytes, final long entryBytes, final long keyBytes, final long valueBytes,
+		final long tombstoneBytes, final long auxiliaryBytes)
+	{
+		this.slotArrayBytes = slotArrayBytes;
+		this.positionBytes = positionBytes;
+		this.entryBytes = entryBytes;
+		this.keyBytes = keyBytes;
+		this.valueBytes = valueBytes;
+		this.tombstoneBytes = tombstoneBytes;
+		this.auxiliaryBytes = auxiliaryBytes;
+	}
+
+
+	/**
+	 * Estimates the heap memory held by a table, walking every position. Must be called by the table's writer, or under its read lock.
+	 * @param table The table.
+	 * @param sharedValues True if values are interned, so that each distinct value string is counted once.
+	 * @param membershipFilter The table's membership filter, or null if it has none.
+	 * @param collisionHandlingScheme The table's collision handling scheme.
+	 * @return The estimated footprint.
+	 */
+	static MemoryFootprint measure(final HashTable table, final boolean sharedValues, final BlockedBloomFilter membershipFilter,
+		final CollisionHandlingScheme collisionHandlingScheme)
+	{
+		long positionBytes = 0;
+		long entryBytes = 0;
+		long keyBytes = 0;
+		long valueBytes = 0;
+		long tombstoneBytes = 0;
+		final Set<String> countedValues = sharedValues ? Collections.newSetFromMap(new IdentityHashMap<>()) : null;
+
+		for (int i = 0; i < table.size(); i++)
+		{
+			final Position p = table.positionAt(i);
+			if (p == null)
+			{
+				continue;
+			}
+			else if (table.isFormerlyOccupied(p))
+			{
+				tombstoneBytes += POSITION_SIZE;
+				if (p.get() != null)	// A negated entry
+				{
+					tombstoneBytes += KEY_VALUE_PAIR_SIZE + KEY_SIZE + stringSize(p.get().getKey()) + stringSize(p.get().getValue());
+				}
+				continue;
+			}
+
+			final int n = table.entriesAt(i);
+			positionBytes += p instanceof Bin ? BIN_SIZE + arraySize(n, REFERENCE_SIZE) + arraySize(n, Integer.BYTES) : POSITION_SIZE;
+
+			for (int slot = 0; slot < n; slot++)
+			{
+				final KeyValuePair pair = table.entryAt(i, slot);
+				keyBytes += stringSize(pair.getKey());
+				if (pair instanceof CounterPair)	// Holds its value as a number
+				{
+					entryBytes += COUNTER_PAIR_SIZE + KEY_SIZE;
+				}
+				else
+				{
+					entryBytes += KEY_VALUE_PAIR_SIZE + KEY_SIZE;
+					if (pair.getValue() != pair.getKey() && (countedValues == null || countedValues.add(pair.getValue())))	// Shared strings count once
+					{
+						valueBytes += stringSize(pair.getValue());
+					}
+				}
+			}
+		}
+
+		long auxiliaryBytes = 0;
+		if (membershipFilter != null)
+		{
+			auxiliaryBytes += arraySize(membershipFilter.getNumberOfBits() / Long.SIZE, Long.BYTES);
+		}
+		if (collisionHandlingScheme == CollisionHandlingScheme.HOPSCOTCH || collisionHandlingScheme == CollisionHandlingScheme.DLEFT)
+		{
+			auxiliaryBytes += arraySize(table.size(), Integer.BYTES);	// The neighborhood bitmaps or the bucket hashes
+		}
+
+		return new MemoryFootprint(arraySize(table.size(), REFERENCE_SIZE), positionBytes, entryBytes, keyBytes, valueBytes, tombstoneBytes,
+			auxiliaryBytes);
+	}
+
+
+	public long getSlotArrayBytes()
+	{
+		return slotArrayBytes;
+	}
+
+	public long getPositionBytes()
+	{
+		return positionBytes;
+	}
+
+	public long getEntryBytes()
+	{
+		return entryBytes;
+	}
+
+	public long getKeyBytes()
+	{
+		return keyBytes;
+	}
+
+	public long getValueBytes()
+	{
+		return valueBytes;
+	}
+
+	public long getTombstoneBytes()
+	{
+		return tombstoneBytes;
+	}
+
+	public long getAuxiliaryBytes()
+	{
+		return auxiliaryBytes;
+	}
+
+
+	/**
+	 * Returns the estimated size of the whole table.
+	 * @return The sum of every component, in bytes.
+	 */
+	public long getTotalBytes()
+	{
+		return slotArrayBytes + positionBytes + entryBytes + keyBytes + valueBytes + tombstoneBytes + auxiliaryBytes;
+	}
+
+
+	/**
+	 * Returns the bytes that grow with the number of entries rather than with the size of the table.
+	 * @return The bytes taken by the positions holding entries, the entries, their keys and their values.
+	 */
+	long getPerEntryBytes()
+	{
+		return positionBytes + entryBytes + keyBytes + valueBytes;
+	}
+
+
+	public String toString()
+	{
+		return "Slot array: " + slotArrayBytes + " B, positions: " + positionBytes + " B, entries: " + entryBytes + " B, keys: " + keyBytes
+			+ " B, values: " + valueBytes + " B, tombstones: " + tombstoneBytes + " B, auxiliary: " + auxiliaryBytes + " B, total: "
+			+ getTotalBytes() + " B";
+	}
+
+
+	/**
+	 * Estimates the size of an object.
+	 * @param fieldBytes The total size of the object's fields.
+	 * @return The size of the object, header and padding included.
+	 */
+	static long objectSize(final long fieldBytes)
+	{
+		return align(HEADER_SIZE + fieldBytes);
+	}
+
+
+	/**
+	 * Estimates the size of an array.
+	 * @param length The length of the array.
+	 * @param elementBytes The size of each element; REFERENCE_SIZE for arrays of objects.
+	 * @return The size of the array, header and padding included.
+	 */
+	static long arraySize(final long length, final int elementBytes)
+	{
+		return align(ARRAY_HEADER_SIZE + length * elementBytes);
+	}
+
+
+	/**
+	 * Estimates the size of a string, including the array holding its characters.
+	 * @param string The string; may be null.
+	 * @return The size of the string, or 0 if it is null.
+	 */
+	static long stringSize(final String string)
+	{
+		if (string == null)
+		{
+			return 0;
+		}
+
+		return STRING_SIZE + arraySize(string.length(), COMPACT_STRINGS && isLatin1(string) ? 1 : 2);
+	}
+
+
+	/**
+	 * Checks if every character of a string fits in a byte, so that a JVM with compact strings stores it in one byte per character.
+	 * @param string The string.
+	 * @return True if and only if the string is Latin-1.
+	 */
+	private static boolean isLatin1(final String string)
+	{
+		for (int i = 0; i < string.length(); i++)
+		{
+			if (string.charAt(i) > 0xFF)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Pads a size to the 8-byte alignment of objects.
+	 * @param bytes The unpadded size.
+	 * @return The padded size.
+	 */
+	private static long align(final long bytes)
+	{
+		return (bytes + 7) & ~7L;
+	}
+}
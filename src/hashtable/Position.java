@@ -25,12 +25,4 @@ class Position
 	{
 		return this.getClass() == AvailablePosition.class;
 	}
-}
-
-class AvailablePosition extends Position
-{
-	public AvailablePosition(final int index)
-	{
-		super(null, index);
-	}
 }
\ No newline at end of file
@@ -1,34 +1,95 @@
 package hashtable;
 
+/**
+ * Resolves collisions by quadratic probing. On a prime table of size p, the squares 0, 1, 4, 9, ... reach only the (p + 1) / 2 quadratic residues,
+ * so the first (p + 1) / 2 steps of a sequence add the squares to the home index, and the remaining (p - 1) / 2 steps add the squares times a
+ * fixed non-residue, which are exactly the other positions. A sequence thus tries every position of the table once in p steps, and a put always
+ * finds room while the table has any.
+ */
 class QuadraticProbe extends CollisionHandler
 {
-	private static final int DEFAULT_LINEAR_COEFFICIENT = 0;
-	private static final int DEFAULT_QUADRATIC_COEFFICIENT = 1;
+	private final int size;			// Size of the table; a prime number
+	private final int nonResidue;	// Smallest quadratic non-residue modulo the size; 0 if the size has none, in which case probing is linear
 	
-	private int c1;			// Linear coefficient
-	private int c2;			// Quadratic coefficient
+	QuadraticProbe(final int size)
+	{
+		super();
+		this.size = size;
+		this.nonResidue = smallestNonResidue(size);
+	}
 	
-	QuadraticProbe()
+	public int probe(final int rawHash, final int attempt)
 	{
-		this(DEFAULT_LINEAR_COEFFICIENT, DEFAULT_QUADRATIC_COEFFICIENT);
+		return rawHash + (int) offset(attempt);
 	}
 	
-	private QuadraticProbe(final int c1, final int c2)
+	public int probeIndex(final Compressor compressor, final int size, final int rawHash, final int attempt)
 	{
-		super();
-		this.c1 = c1;
-		this.c2 = c2;
+		return (int) ((compressor.compress(rawHash) + offset(attempt)) % size);
 	}
 	
-	public int nextHash()
+	/**
+	 * Computes the distance from the home index of a step of a probe sequence.
+	 * @param attempt The number of positions already tried; 0 for the first.
+	 * @return The distance, in [0, size).
+	 */
+	private long offset(final int attempt)
 	{
-		final int hashCode = getRawHash() + c1 * getCounter() + c2 * getCounter() * getCounter();
-		incrementCounter();
-		return hashCode;
+		final long step = attempt % size;
+		if (nonResidue == 0)
+		{
+			return step;
+		}
+		
+		final int residues = (size + 1) / 2;	// Number of distinct squares, counting 0
+		if (step < residues)
+		{
+			return step * step % size;
+		}
+		
+		final long root = step - residues + 1;	// In [1, (size - 1) / 2]
+		return root * root % size * nonResidue % size;
 	}
-
+	
 	public CollisionHandlingScheme getType()
 	{
 		return CollisionHandlingScheme.QUADRATIC;
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Finds the smallest quadratic non-residue modulo an odd prime by Euler's criterion: a is a non-residue if and only if a^((p - 1) / 2) = -1 mod p.
+	 * @param p The modulus.
+	 * @return The smallest non-residue, or 0 if p is not an odd prime with one.
+	 */
+	private static int smallestNonResidue(final int p)
+	{
+		if (p < 3 || p % 2 == 0)
+		{
+			return 0;
+		}
+		
+		for (int a = 2; a < p; a++)
+		{
+			long power = 1;
+			long base = a;
+			for (int e = (p - 1) / 2; e > 0; e >>= 1)
+			{
+				if ((e & 1) != 0)
+				{
+					power = power * base % p;
+				}
+				base = base * base % p;
+			}
+			
+			if (power == p - 1)
+			{
+				return a;
+			}
+			else if (power != 1)	// Not a prime; no guarantee either way
+			{
+				return 0;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,190 @@
+package hashtable;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rehashes a range of a HashTable's positions into the positions of a resized table, as part of a parallel resize. Ranges larger than LEAF_SIZE are
+ * split in two and rehashed by forked tasks. Entries are placed without any lock: each claims a free position along its probe sequence with a
+ * compare-and-set on a bitmap of claimed positions, so that two entries never take the same one. As the old table's keys are distinct, no key needs
+ * comparing, and the load factor is known in advance, so none is checked.
+ *
+ * The old table's writer waits for the whole rehash, so its positions do not change while the tasks read them.
+ */
+class RehashTask extends RecursiveAction
+{
+	private static final long serialVersionUID = 1L;
+	private static final int LEAF_SIZE = 8192;		// Largest number of old positions rehashed by a single task
+
+	private final HashTable source;					// The old table
+	private final Position[] target;				// The new positions
+	private final Compressor targetCompressor;		// The compressor matching the new positions
+	private final CollisionHandler targetHandler;	// The collision handler matching the new positions
+	private final AtomicLongArray claimed;			// A bit for each new position, set once an entry has claimed it
+	private final AtomicInteger numPlaced;			// Number of entries placed so far
+	private final AtomicInteger numExpired;			// Number of expired entries dropped so far
+	private final AtomicBoolean failed;				// Set if an entry found no free position along its probe sequence
+	private final int from;							// Index of the first old position of the range
+	private final int to;							// Index after the last old position of the range
+
+
+	/**
+	 * Constructor. Creates the task rehashing every position of the old table.
+	 * @param source The old table.
+	 * @param target The positions of the new table, all never filled.
+	 * @param targetCompressor The compressor of the new table.
+	 * @param targetHandler The collision handler of the new table; must be a probing scheme.
+	 */
+	RehashTask(final HashTable source, final Position[] target, final Compressor targetCompressor, final CollisionHandler targetHandler)
+	{
+		this.source = source;
+		this.target = target;
+		this.targetCompressor = targetCompressor;
+		this.targetHandler = targetHandler;
+		this.claimed = new AtomicLongArray((target.length + Long.SIZE - 1) / Long.SIZE);
+		this.numPlaced = new AtomicInteger();
+		this.numExpired = new AtomicInteger();
+		this.failed = new AtomicBoolean();
+		this.from = 0;
+		this.to = source.size();
+	}
+
+
+	/**
+	 * Constructor. Creates a task rehashing part of its parent's range.
+	 * @param parent The task splitting its range.
+	 * @param from Index of the first old position of the range.
+	 * @param to Index after the last old position of the range.
+	 */
+	private RehashTask(final RehashTask parent, final int from, final int to)
+	{
+		this.source = parent.source;
+		this.target = parent.target;
+		this.targetCompressor = parent.targetCompressor;
+		this.targetHandler = parent.targetHandler;
+		this.claimed = parent.claimed;
+		this.numPlaced = parent.numPlaced;
+		this.numExpired = parent.numExpired;
+		this.failed = parent.failed;
+		this.from = from;
+		this.to = to;
+	}
+
+
+	@Override
+	protected void compute()
+	{
+		if (to - from > LEAF_SIZE)
+		{
+			final int middle = (from + to) >>> 1;
+			invokeAll(new RehashTask(this, from, middle), new RehashTask(this, middle, to));
+			return;
+		}
+
+		int placed = 0;
+		int expired = 0;
+		for (int i = from; i < to && !failed.get(); i++)
+		{
+			for (int slot = 0, n = source.entriesAt(i); slot < n; slot++)
+			{
+				final KeyValuePair entry = source.entryAt(i, slot);
+				if (entry.isExpired())
+				{
+					expired++;
+				}
+				else if (place(entry))
+				{
+					placed++;
+				}
+				else
+				{
+					failed.set(true);
+					return;
+				}
+			}
+		}
+
+		numPlaced.addAndGet(placed);
+		numExpired.addAndGet(expired);
+	}
+
+
+	/**
+	 * Checks if the rehash failed. Valid once the task has been invoked.
+	 * @return True if and only if an entry found no free position, in which case the table must be rehashed serially.
+	 */
+	boolean hasFailed()
+	{
+		return failed.get();
+	}
+
+
+	/**
+	 * Returns the number of entries placed in the new positions. Valid once the task has been invoked.
+	 * @return The number of entries placed.
+	 */
+	int getNumberOfPlaced()
+	{
+		return numPlaced.get();
+	}
+
+
+	/**
+	 * Returns the number of expired entries left behind. Valid once the task has been invoked.
+	 * @return The number of expired entries dropped.
+	 */
+	int getNumberOfExpired()
+	{
+		return numExpired.get();
+	}
+
+
+	/**
+	 * Places an entry at the first position along its probe sequence that it manages to claim.
+	 * @param entry The entry.
+	 * @return True if the entry was placed, false if every position of its probe sequence was claimed by others.
+	 */
+	private boolean place(final KeyValuePair entry)
+	{
+		final int rawHash = entry.hashCode();
+		entry.resetCollisions();	// The entry moves as it is, keeping its time to live and kind
+
+		for (int attempt = 0; attempt < target.length; attempt++)
+		{
+			final int index = targetHandler.probeIndex(targetCompressor, target.length, rawHash, attempt);
+			if (claim(index))
+			{
+				target[index] = new Position(entry, index);	// Published to the resizing thread when the pool's invoke returns
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * Claims a new position, unless another entry already has.
+	 * @param index The index of the position.
+	 * @return True if and only if this call claimed the position.
+	 */
+	private boolean claim(final int index)
+	{
+		final int word = index >>> 6;
+		final long bit = 1L << index;
+
+		long bits = claimed.get(word);
+		while ((bits & bit) == 0)
+		{
+			if (claimed.compareAndSet(word, bits, bits | bit))
+			{
+				return true;
+			}
+			bits = claimed.get(word);
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,18 @@
+package hashtable;
+
+/**
+ * Resolves collisions by separate chaining: every key is stored in the bin at its home position, however many other keys share it, so the probe
+ * sequence never leaves the home position. The entries of a bin are held by a Bin.
+ */
+class SeparateChaining extends CollisionHandler
+{
+	public int probe(final int rawHash, final int attempt)
+	{
+		return rawHash;
+	}
+
+	public CollisionHandlingScheme getType()
+	{
+		return CollisionHandlingScheme.CHAINING;
+	}
+}
@@ -0,0 +1,320 @@
+package hashtable;
+
+import java.util.Arrays;
+
+/**
+ * The ShardedHashTable class spreads its entries over a fixed number of independent HashTable shards. Each key is routed to a shard by the high bits
+ * of a 64-bit hash of the whole key, so shards fill evenly even when many keys share a prefix. Every shard has its own prime size, compressor and
+ * collision handler, and resizes on its own when its load factor reaches the rehash threshold, so the table grows one shard at a time: each resize
+ * allocates and rehashes only a fraction of the entries. An explicit resize of the whole table may rehash the shards in parallel.
+ *
+ * With concurrent reads enabled, each shard has its own lock, so writers to different shards do not wait for each other.
+ */
+public class ShardedHashTable
+{
+	private static final int DEFAULT_NUMBER_OF_SHARDS = 16;		// Default number of shards
+	private static final int DEFAULT_INITIAL_SIZE = 100;		// Default initial size of the whole table
+	private static final long ROUTING_SEED = 0x2545f4914f6cdd1dL;	// Seed of the routing hash; distinct from the other hashes of the key
+
+	private final HashTable[] shards;	// The shards; their number is a power of two
+	private final int shardBits;		// Base 2 logarithm of the number of shards
+
+
+	/**
+	 * No-argument constructor. Constructs an empty table with 16 shards and a total initial size of 100, using each shard's default schemes.
+	 */
+	public ShardedHashTable()
+	{
+		this(DEFAULT_NUMBER_OF_SHARDS, DEFAULT_INITIAL_SIZE);
+	}
+
+
+	/**
+	 * Constructor. Constructs an empty table with the given number of shards and total initial size, using each shard's default schemes.
+	 * @param numberOfShards The number of shards, a positive integer. Will be rounded up to a power of two.
+	 * @param initialSize The initial size of the whole table, a non-negative integer. Will be divided evenly between the shards.
+	 */
+	public ShardedHashTable(final int numberOfShards, final int initialSize)
+	{
+		if (numberOfShards <= 0)
+		{
+			throw new IllegalArgumentException("Number of shards must be a positive integer.");
+		}
+
+		if (initialSize < 0)
+		{
+			throw new IllegalArgumentException("Initial size must be a non-negative integer.");
+		}
+
+		this.shardBits = 32 - Integer.numberOfLeadingZeros(numberOfShards - 1);	// Round up to a power of two
+		this.shards = new HashTable[1 << shardBits];
+
+		for (int i = 0; i < shards.length; i++)
+		{
+			shards[i] = new HashTable(shardSize(initialSize));
+		}
+	}
+
+
+	/**
+	 * Constructor. Constructs an empty table with the given number of shards, total initial size, collision handling scheme and empty marker scheme.
+	 * @param numberOfShards The number of shards, a positive integer. Will be rounded up to a power of two.
+	 * @param initialSize The initial size of the whole table, a non-negative integer. Will be divided evenly between the shards.
+	 * @param collisionHandlingScheme The character representation of every shard's collision handling scheme.
+	 * @param emptyMarkerScheme The character representation of every shard's empty marker scheme. Must be 'A', 'N', or 'R'.
+	 */
+	public ShardedHashTable(final int numberOfShards, final int initialSize, final char collisionHandlingScheme, final char emptyMarkerScheme)
+	{
+		this(numberOfShards, initialSize);
+
+		for (HashTable shard : shards)
+		{
+			shard.setCollisionHandlingScheme(collisionHandlingScheme);
+			shard.setEmptyMarkerScheme(emptyMarkerScheme);
+		}
+	}
+
+
+	/**
+	 * Adds a new entry to the table, or replaces the value of the entry with the same key.
+	 * @param key The key of the entry to add.
+	 * @param value The value of the entry to add.
+	 * @return Null if a new entry was added, the old value if it was replaced.
+	 */
+	public String put(final String key, final String value)
+	{
+		return shardFor(key).put(key, value);
+	}
+
+
+	/**
+	 * Convenience method. Puts an entry with the same key and value.
+	 * @param keyValue The key and the value of the entry to add.
+	 * @return Null if a new entry was added, the old value if it was replaced.
+	 */
+	public String put(final String keyValue)
+	{
+		return put(keyValue, keyValue);
+	}
+
+
+	/**
+	 * Searches the table for an entry with the given key and returns the associated value.
+	 * @param key The key of the entry to search for.
+	 * @return The associated value if it is found, null otherwise.
+	 */
+	public String get(final String key)
+	{
+		return shardFor(key).get(key);
+	}
+
+
+	/**
+	 * Searches for an entry with the given key, and removes and returns the associated value if one is found.
+	 * @param key The key of the entry to remove.
+	 * @return The value of the removed entry if one is found, null otherwise.
+	 */
+	public String remove(final String key)
+	{
+		return shardFor(key).remove(key);
+	}
+
+
+	/**
+	 * Resizes the whole table, dividing the new size evenly between the shards. The shards are rehashed one after the other.
+	 * @param newSize The new desired size of the whole table.
+	 */
+	public void resize(final int newSize)
+	{
+		resize(newSize, false);
+	}
+
+
+	/**
+	 * Resizes the whole table, dividing the new size evenly between the shards.
+	 * @param newSize The new desired size of the whole table.
+	 * @param parallel True to rehash the shards in parallel on the common fork-join pool, false to rehash them one after the other.
+	 */
+	public void resize(final int newSize, final boolean parallel)
+	{
+		final int newShardSize = shardSize(newSize);
+
+		if (parallel)
+		{
+			Arrays.stream(shards).parallel().forEach(shard -> shard.resize(newShardSize));
+		}
+		else
+		{
+			for (HashTable shard : shards)
+			{
+				shard.resize(newShardSize);
+			}
+		}
+	}
+
+
+	/**
+	 * Changes the rehash threshold of every shard.
+	 * @param rehashThreshold The new rehash threshold.
+	 */
+	public void setRehashThreshold(final double rehashThreshold)
+	{
+		for (HashTable shard : shards)
+		{
+			shard.setRehashThreshold(rehashThreshold);
+		}
+	}
+
+
+	/**
+	 * Enables or disables concurrent reads on every shard. While enabled, get takes no lock, and writers lock only the shard they write to. Must not be
+	 * called while other threads are using the table.
+	 * @param enabled True to enable concurrent reads, false to disable them.
+	 */
+	public void setConcurrentReadsEnabled(final boolean enabled)
+	{
+		for (HashTable shard : shards)
+		{
+			shard.setConcurrentReadsEnabled(enabled);
+		}
+	}
+
+
+	/**
+	 * Enables or disables the membership filter of every shard.
+	 * @param enabled True to enable the filters, false to disable them.
+	 */
+	public void setMembershipFilterEnabled(final boolean enabled)
+	{
+		for (HashTable shard : shards)
+		{
+			shard.setMembershipFilterEnabled(enabled);
+		}
+	}
+
+
+	/**
+	 * Enables or disables value interning on every shard, through a single pool shared by all of them. See HashTable.setInternPool.
+	 * @param pool The pool to intern values in, or null to store values as given.
+	 */
+	public void setInternPool(final InternPool pool)
+	{
+		for (HashTable shard : shards)
+		{
+			shard.setInternPool(pool);
+		}
+	}
+
+
+	/**
+	 * Returns the total size of the table, over all shards.
+	 * @return The size of the table.
+	 */
+	public long size()
+	{
+		long size = 0;
+
+		for (HashTable shard : shards)
+		{
+			size += shard.size();
+		}
+
+		return size;
+	}
+
+
+	/**
+	 * Returns the number of entries stored in the table, over all shards.
+	 * @return The number of entries.
+	 */
+	public long getNumberOfElements()
+	{
+		long numElements = 0;
+
+		for (HashTable shard : shards)
+		{
+			numElements += shard.getNumberOfElements();
+		}
+
+		return numElements;
+	}
+
+
+	/**
+	 * Checks if the table is empty.
+	 * @return True if and only if no shard has any elements stored.
+	 */
+	public boolean isEmpty()
+	{
+		return getNumberOfElements() == 0;
+	}
+
+
+	/**
+	 * Returns the number of shards.
+	 * @return The number of shards.
+	 */
+	public int getNumberOfShards()
+	{
+		return shards.length;
+	}
+
+
+	/**
+	 * Computes the greatest number of collisions any entry of any shard has endured.
+	 * @return The maximum number of collisions.
+	 */
+	public int getMaxCollisions()
+	{
+		int maxCollisions = 0;
+
+		for (HashTable shard : shards)
+		{
+			maxCollisions = Math.max(maxCollisions, shard.getMaxCollisions());
+		}
+
+		return maxCollisions;
+	}
+
+
+	/**
+	 * Prints a summary of the table's statistics: the size and number of elements of the whole table, then of each shard.
+	 */
+	public void printHashTableStatistics()
+	{
+		System.out.println("--------SHARDED HASH TABLE STATISTICS--------");
+		System.out.println("Number of shards: " + shards.length);
+		System.out.println("Size: " + size());
+		System.out.println("Number of elements: " + getNumberOfElements());
+		System.out.println("Maximum collisions for single cell: " + getMaxCollisions());
+		System.out.println();
+
+		for (int i = 0; i < shards.length; i++)
+		{
+			System.out.println("Shard " + i + ": size " + shards[i].size() + ", " + shards[i].getNumberOfElements() + " elements");
+		}
+		System.out.println();
+	}
+
+
+	/**
+	 * Finds the shard responsible for a key, from the high bits of the key's routing hash.
+	 * @param key The key.
+	 * @return The shard holding, or to hold, the key's entry.
+	 */
+	private HashTable shardFor(final String key)
+	{
+		return shardBits == 0 ? shards[0] : shards[(int) (Hashing.hash64(key, ROUTING_SEED) >>> (Long.SIZE - shardBits))];
+	}
+
+
+	/**
+	 * Divides a total size evenly between the shards.
+	 * @param totalSize The total size.
+	 * @return The size of each shard.
+	 */
+	private int shardSize(final int totalSize)
+	{
+		return (totalSize + shards.length - 1) / shards.length;
+	}
+}
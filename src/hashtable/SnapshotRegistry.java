@@ -0,0 +1,91 @@
+package hashtable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of the open snapshots of a HashTable, and copies chunks of the table into them before the writer changes them. The chunks not yet copied
+ * by a snapshot are unchanged since it was taken, so one copy of a chunk serves every snapshot lacking it.
+ *
+ * Every method is called by the table's writer, under its write lock, so the registry needs no synchronization of its own.
+ */
+class SnapshotRegistry
+{
+	private List<HashTableSnapshot> openSnapshots;	// Snapshots whose chunks are copied before being written to; null if none
+
+
+	/**
+	 * Starts preserving the chunks of a new snapshot.
+	 * @param snapshot The snapshot.
+	 */
+	void add(final HashTableSnapshot snapshot)
+	{
+		if (openSnapshots == null)
+		{
+			openSnapshots = new ArrayList<>();
+		}
+		openSnapshots.add(snapshot);
+	}
+
+
+	/**
+	 * Stops preserving the chunks of a closed snapshot.
+	 * @param snapshot The snapshot.
+	 */
+	void remove(final HashTableSnapshot snapshot)
+	{
+		if (openSnapshots != null && openSnapshots.remove(snapshot) && openSnapshots.isEmpty())
+		{
+			openSnapshots = null;
+		}
+	}
+
+
+	/**
+	 * Copies the chunk holding a position into every open snapshot that has not copied it yet. Must be called before the position or any entry it
+	 * holds changes.
+	 * @param table The table the snapshots were taken of.
+	 * @param index The index of the position about to change.
+	 */
+	void preserve(final HashTable table, final int index)
+	{
+		if (openSnapshots == null)
+		{
+			return;
+		}
+
+		final int chunk = index / HashTableSnapshot.CHUNK_SIZE;
+		KeyValuePair[] entries = null;
+		for (HashTableSnapshot snapshot : openSnapshots)
+		{
+			if (snapshot.getChunk(chunk) == null)
+			{
+				if (entries == null)
+				{
+					entries = table.copyChunk(chunk);
+				}
+				snapshot.store(chunk, entries);
+			}
+		}
+	}
+
+
+	/**
+	 * Copies every chunk into the open snapshots that have not copied it yet, and forgets them. Must be called before the table replaces its positions
+	 * array or changes how its positions are read. The snapshots stay readable, as they no longer read the table.
+	 * @param table The table the snapshots were taken of.
+	 */
+	void preserveAll(final HashTable table)
+	{
+		if (openSnapshots == null)
+		{
+			return;
+		}
+
+		for (int index = 0; index < table.size(); index += HashTableSnapshot.CHUNK_SIZE)
+		{
+			preserve(table, index);
+		}
+		openSnapshots = null;
+	}
+}
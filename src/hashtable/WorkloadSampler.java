@@ -0,0 +1,282 @@
+package hashtable;
+
+import java.util.Random;
+
+import hashtable.CollisionHandler.CollisionHandlingScheme;
+import prime.Prime;
+
+/**
+ * Samples the workload of a HashTable, so that the table can choose its collision handling scheme and rehash threshold when it next grows. One lookup
+ * in every few is sampled: its probe length, whether it hit, and the share of free positions taken up by formerly occupied markers. The raw hashes of
+ * sampled misses are kept, so that the cost of missing can be measured for keys the workload actually looks up.
+ *
+ * At resize time, every combination of scheme and threshold is tried on a scaled-down simulation of the table: a sample of the live keys is inserted
+ * into an array of flags sized for the threshold, counting the probes taken, and the sampled misses are then probed against it, passing over a
+ * share of the free positions marked as formerly occupied. The measured probe counts, weighted by the observed hit rate, give each combination's
+ * cost. The combination chosen is the one with the highest threshold whose cost is within a tolerance of the lowest, so that memory is only spent
+ * where it buys shorter probes.
+ *
+ * Sampling is done by readers without locking; the counts may be slightly off under concurrent reads, which only blurs the estimate. The ring of
+ * sampled misses is indexed by a position that wraps around and a count that stops at the ring's size, each read once and written back in range, so
+ * racing readers may overwrite each other's samples but never index outside the ring.
+ */
+class WorkloadSampler
+{
+	private static final int SAMPLE_PERIOD_MASK = 15;									// One lookup in 16 is sampled
+	private static final int MIN_SAMPLES = 64;											// Sampled lookups needed before tuning
+	private static final int MISS_SAMPLE_SIZE = 256;									// Raw hashes of sampled misses kept; a power of two
+	static final int MAX_SIMULATED_KEYS = 8192;											// Live keys inserted into each simulation
+	private static final double[] CANDIDATE_THRESHOLDS = { 0.5, 0.6, 0.7, 0.8, 0.9 };	// Rehash thresholds tried
+	private static final double COST_TOLERANCE = 1.25;									// Cost, relative to the lowest, accepted for a higher threshold
+
+	private int counter;				// Lookups seen since the last sample
+	private long numSamples;			// Sampled lookups
+	private long numHits;				// Sampled lookups that found their key
+	private long hitProbes;				// Total probe length of sampled hits
+	private long missProbes;			// Total probe length of sampled misses
+	private double tombstoneRatios;		// Total share of free positions formerly occupied, over the samples
+	private final int[] missHashes;		// Raw hashes of the most recently sampled misses, as a ring
+	private int nextMissHash;			// Index in the ring of the next sampled miss
+	private int numMissHashes;			// Number of sampled misses held by the ring, at most MISS_SAMPLE_SIZE
+
+
+	/**
+	 * The scheme and threshold chosen for the next resize.
+	 */
+	static class Tuning
+	{
+		final CollisionHandlingScheme collisionHandlingScheme;	// The collision handling scheme with the lowest cost at the threshold
+		final double rehashThreshold;							// The chosen rehash threshold
+		final double cost;										// Expected probes per lookup
+
+		private Tuning(final CollisionHandlingScheme collisionHandlingScheme, final double rehashThreshold, final double cost)
+		{
+			this.collisionHandlingScheme = collisionHandlingScheme;
+			this.rehashThreshold = rehashThreshold;
+			this.cost = cost;
+		}
+	}
+
+
+	/**
+	 * Constructor. Creates a sampler with no samples.
+	 */
+	WorkloadSampler()
+	{
+		this.missHashes = new int[MISS_SAMPLE_SIZE];
+		reset();
+	}
+
+
+	/**
+	 * Decides whether the current lookup should be sampled.
+	 * @return True once every few calls.
+	 */
+	boolean shouldSample()
+	{
+		return (++counter & SAMPLE_PERIOD_MASK) == 0;
+	}
+
+
+	/**
+	 * Records a sampled lookup.
+	 * @param hit True if the key was found.
+	 * @param probes The number of positions examined.
+	 * @param rawHash The raw hash of the key.
+	 * @param tombstoneRatio The share of the table's free positions that are formerly occupied.
+	 */
+	void recordLookup(final boolean hit, final int probes, final int rawHash, final double tombstoneRatio)
+	{
+		numSamples++;
+		tombstoneRatios += tombstoneRatio;
+
+		if (hit)
+		{
+			numHits++;
+			hitProbes += probes;
+		}
+		else
+		{
+			missProbes += probes;
+
+			final int index = nextMissHash;	// Read once, so that a racing reader cannot move it between the store and the update
+			missHashes[index] = rawHash;
+			nextMissHash = (index + 1) & (MISS_SAMPLE_SIZE - 1);
+
+			final int count = numMissHashes;
+			if (count < MISS_SAMPLE_SIZE)
+			{
+				numMissHashes = count + 1;
+			}
+		}
+	}
+
+
+	/**
+	 * Checks whether enough lookups have been sampled to tune the table.
+	 * @return True if and only if the samples are enough.
+	 */
+	boolean hasEnoughSamples()
+	{
+		return numSamples >= MIN_SAMPLES;
+	}
+
+
+	/**
+	 * Discards every sample, so that the next tuning reflects only the workload seen under the new scheme.
+	 */
+	void reset()
+	{
+		counter = 0;
+		numSamples = 0;
+		numHits = 0;
+		hitProbes = 0;
+		missProbes = 0;
+		tombstoneRatios = 0;
+		nextMissHash = 0;
+		numMissHashes = 0;
+	}
+
+
+	/**
+	 * Returns the share of sampled lookups that found their key.
+	 * @return The hit rate, or 1 if nothing has been sampled.
+	 */
+	double getHitRate()
+	{
+		return numSamples == 0 ? 1 : (double) numHits / numSamples;
+	}
+
+
+	/**
+	 * Returns the average number of positions examined by a sampled lookup under the current scheme.
+	 * @return The average probe length, or 0 if nothing has been sampled.
+	 */
+	double getAverageProbeLength()
+	{
+		return numSamples == 0 ? 0 : (double) (hitProbes + missProbes) / numSamples;
+	}
+
+
+	/**
+	 * Returns the number of sampled lookups.
+	 * @return The number of samples.
+	 */
+	long getNumberOfSamples()
+	{
+		return numSamples;
+	}
+
+
+	/**
+	 * Chooses the collision handling scheme and rehash threshold with the lowest measured cost for the sampled workload.
+	 * @param keyHashes The raw hashes of a sample of the live keys; at most MAX_SIMULATED_KEYS of them are used.
+	 * @return The chosen scheme and threshold.
+	 */
+	Tuning tune(final int[] keyHashes)
+	{
+		final int numKeys = Math.min(keyHashes.length, MAX_SIMULATED_KEYS);
+		final int numMisses = numMissHashes;
+		final double hitRate = getHitRate();
+		final double tombstoneRatio = numSamples == 0 ? 0 : tombstoneRatios / numSamples;
+		final Random rand = new Random(numKeys);	// The same simulation for every candidate, so that they are compared fairly
+
+		final Tuning[] best = new Tuning[CANDIDATE_THRESHOLDS.length];
+		double lowestCost = Double.MAX_VALUE;
+
+		for (int t = 0; t < CANDIDATE_THRESHOLDS.length; t++)
+		{
+			for (CollisionHandlingScheme scheme : CollisionHandlingScheme.values())
+			{
+				if (!scheme.isProbing())
+				{
+					continue;	// Only probe sequences can be simulated
+				}
+
+				rand.setSeed(numKeys);
+				final double cost = simulate(scheme, CANDIDATE_THRESHOLDS[t], keyHashes, numKeys, numMisses, hitRate, tombstoneRatio, rand);
+				if (best[t] == null || cost < best[t].cost)
+				{
+					best[t] = new Tuning(scheme, CANDIDATE_THRESHOLDS[t], cost);
+				}
+			}
+			lowestCost = Math.min(lowestCost, best[t].cost);
+		}
+
+		Tuning chosen = best[0];
+		for (Tuning tuning : best)
+		{
+			if (tuning.cost <= COST_TOLERANCE * lowestCost)
+			{
+				chosen = tuning;	// Thresholds are in increasing order, so the last acceptable one is the highest
+			}
+		}
+
+		return chosen;
+	}
+
+
+	/**
+	 * Measures the cost of one combination of scheme and threshold on a simulated table filled to the threshold.
+	 * @param scheme The collision handling scheme.
+	 * @param threshold The rehash threshold.
+	 * @param keyHashes The raw hashes of the live keys.
+	 * @param numKeys The number of live keys to insert.
+	 * @param numMisses The number of sampled misses to probe.
+	 * @param hitRate The share of lookups that hit.
+	 * @param tombstoneRatio The share of free positions to mark as formerly occupied.
+	 * @param rand The source of the compression parameters and of the formerly occupied markers.
+	 * @return The expected number of positions examined per lookup.
+	 */
+	private double simulate(final CollisionHandlingScheme scheme, final double threshold, final int[] keyHashes, final int numKeys, final int numMisses,
+		final double hitRate, final double tombstoneRatio, final Random rand)
+	{
+		final int size = Prime.nextLargestPrime((int) Math.ceil(Math.max(numKeys, 1) / threshold));
+		final Compressor compressor = new Compressor(size, rand.nextInt(size - 1) + 1, rand.nextInt(size));
+		final CollisionHandler handler = CollisionHandler.create(scheme, size);
+		final boolean[] occupied = new boolean[size];
+
+		// Insert the keys, counting the positions each examines; a lookup of the key later examines the same ones
+		long insertProbes = 0;
+		for (int i = 0; i < numKeys; i++)
+		{
+			int attempt = 0;
+			int index = handler.probeIndex(compressor, size, keyHashes[i], attempt);
+			while (occupied[index] && ++attempt < size)
+			{
+				index = handler.probeIndex(compressor, size, keyHashes[i], attempt);
+			}
+
+			if (attempt == size)	// The probe sequence never reaches a free position; the scheme cannot hold this load
+			{
+				return Double.MAX_VALUE;
+			}
+
+			occupied[index] = true;
+			insertProbes += attempt + 1;
+		}
+
+		// Free positions marked as formerly occupied do not end a search
+		final boolean[] ends = new boolean[size];
+		for (int i = 0; i < size; i++)
+		{
+			ends[i] = !occupied[i] && rand.nextDouble() >= tombstoneRatio;
+		}
+
+		long searchProbes = 0;
+		for (int i = 0; i < numMisses; i++)
+		{
+			int attempt = 0;
+			while (attempt < size && !ends[handler.probeIndex(compressor, size, missHashes[i], attempt)])
+			{
+				attempt++;
+			}
+			searchProbes += Math.min(attempt + 1, size);
+		}
+
+		final double hitCost = numKeys == 0 ? 1 : (double) insertProbes / numKeys;
+		final double missCost = numMisses == 0 ? 1 : (double) searchProbes / numMisses;
+
+		return hitRate * hitCost + (1 - hitRate) * missCost;
+	}
+}
@@ -0,0 +1,167 @@
+package loadtest;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Chooses which key of a fixed key space each operation of a load test uses, and builds the keys themselves.
+ *
+ * UNIFORM picks every key equally often. ZIPF picks the key of rank r with probability proportional to 1 / r^s, so that a few hot keys receive most
+ * operations, as in most caches. PREFIX picks keys uniformly, but every key starts with the same long prefix, so that keys only differ beyond the
+ * characters HashTable's hash code reads; it shows how the table copes with clustered hash codes.
+ */
+enum KeyDistribution
+{
+	UNIFORM,
+	ZIPF,
+	PREFIX;
+
+	private static final char[] KEY_CHARACTERS = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();	// Characters keys are built from
+	private static final int DEFAULT_PREFIX_LENGTH = 16;												// Length of the shared prefix of PREFIX keys
+
+
+	/**
+	 * Converts from a command line name to a distribution.
+	 * @param name The name, in any case: "uniform", "zipf" or "prefix".
+	 * @return The distribution.
+	 */
+	static KeyDistribution fromName(final String name)
+	{
+		try
+		{
+			return valueOf(name.toUpperCase());
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IllegalArgumentException("Unknown key distribution " + name + "; expected uniform, zipf or prefix.");
+		}
+	}
+
+
+	/**
+	 * Builds the key space. Keys are distinct, at least as long as needed to tell them apart, and otherwise keySize characters long.
+	 * @param numKeys The number of keys.
+	 * @param keySize The length of each key.
+	 * @param seed The seed the keys' characters are drawn from.
+	 * @return The keys.
+	 */
+	String[] buildKeys(final int numKeys, final int keySize, final long seed)
+	{
+		final SplittableRandom rand = new SplittableRandom(seed);
+		final int uniqueLength = uniqueLength(numKeys);
+		final int prefixLength = this == PREFIX ? DEFAULT_PREFIX_LENGTH : 0;
+		final int length = Math.max(keySize, prefixLength + uniqueLength);
+		final String[] keys = new String[numKeys];
+		final char[] key = new char[length];
+
+		Arrays.fill(key, 0, prefixLength, 'p');
+		for (int i = 0; i < numKeys; i++)
+		{
+			// The unique part comes first after the prefix, so that it falls within the hashed characters unless the prefix pushes it out
+			int remaining = i;
+			for (int c = prefixLength; c < prefixLength + uniqueLength; c++)
+			{
+				key[c] = KEY_CHARACTERS[remaining % KEY_CHARACTERS.length];
+				remaining /= KEY_CHARACTERS.length;
+			}
+			for (int c = prefixLength + uniqueLength; c < length; c++)
+			{
+				key[c] = KEY_CHARACTERS[rand.nextInt(KEY_CHARACTERS.length)];
+			}
+			keys[i] = new String(key);
+		}
+
+		return keys;
+	}
+
+
+	/**
+	 * Prepares a sampler of key indices following this distribution.
+	 * @param numKeys The number of keys.
+	 * @param zipfExponent The exponent s of the Zipf distribution; ignored by the others.
+	 * @return The sampler, shared by every thread.
+	 */
+	Sampler sampler(final int numKeys, final double zipfExponent)
+	{
+		if (this != ZIPF)
+		{
+			return rand -> rand.nextInt(numKeys);
+		}
+
+		// Cumulative probabilities, searched with a uniform draw; ranks are spread over the key space so that hot keys are not neighbours
+		final double[] cumulative = new double[numKeys];
+		double total = 0;
+		for (int r = 0; r < numKeys; r++)
+		{
+			total += 1 / Math.pow(r + 1, zipfExponent);
+			cumulative[r] = total;
+		}
+
+		final double sum = total;
+		final int stride = coprimeStride(numKeys);
+		return rand ->
+		{
+			int rank = Arrays.binarySearch(cumulative, rand.nextDouble() * sum);
+			rank = rank >= 0 ? rank : Math.min(-rank - 1, numKeys - 1);
+			return (int) ((long) rank * stride % numKeys);
+		};
+	}
+
+
+	/**
+	 * Draws key indices from a distribution.
+	 */
+	interface Sampler
+	{
+		/**
+		 * Draws the index of the next key.
+		 * @param rand The calling thread's source of randomness.
+		 * @return The key index.
+		 */
+		int next(SplittableRandom rand);
+	}
+
+
+	/**
+	 * Computes the number of characters needed to give every key a distinct code.
+	 * @param numKeys The number of keys.
+	 * @return The number of characters.
+	 */
+	private static int uniqueLength(final int numKeys)
+	{
+		int length = 1;
+		for (long codes = KEY_CHARACTERS.length; codes < numKeys; codes *= KEY_CHARACTERS.length)
+		{
+			length++;
+		}
+		return length;
+	}
+
+
+	/**
+	 * Finds a stride coprime with the number of keys, so that multiplying ranks by it permutes them.
+	 * @param numKeys The number of keys.
+	 * @return The stride.
+	 */
+	private static int coprimeStride(final int numKeys)
+	{
+		int stride = (int) (numKeys * 0.618) | 1;
+		while (gcd(stride, numKeys) != 1)
+		{
+			stride += 2;
+		}
+		return stride;
+	}
+
+
+	/**
+	 * Computes the greatest common divisor of two non-negative integers.
+	 * @param a The first integer.
+	 * @param b The second integer.
+	 * @return Their greatest common divisor.
+	 */
+	private static int gcd(final int a, final int b)
+	{
+		return b == 0 ? a : gcd(b, a % b);
+	}
+}
@@ -0,0 +1,421 @@
+package loadtest;
+
+import hashtable.HashTable;
+import hashtable.ShardedHashTable;
+import metrics.Histogram;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The LoadTest class drives a HashTable, or a ShardedHashTable, with a configurable synthetic workload from any number of threads, and reports the
+ * throughput and the latency percentiles of every kind of operation. It runs without any interaction, so that runs can be scripted and compared.
+ *
+ * Options are given as --name=value:
+ * <ul>
+ * <li>--distribution: uniform, zipf or prefix (default uniform); see KeyDistribution.</li>
+ * <li>--keys: the size of the key space (default 100000); --key-size and --value-size: lengths in characters (default 16 each).</li>
+ * <li>--zipf-exponent: the skew of the zipf distribution (default 0.99).</li>
+ * <li>--reads, --writes, --removes: the operation mix, as weights (default 0.8, 0.15, 0.05).</li>
+ * <li>--threads: the number of threads (default 1); --operations: operations per thread (default 1000000); --warmup: untimed operations per
+ * thread first (default 100000).</li>
+ * <li>--preload: true to put every key before starting (default true).</li>
+ * <li>--collision: D, Q, C, H or L; --empty: A, N or R; --initial-size; --threshold; --shards: 0 for a single HashTable (default), or the number of shards.</li>
+ * <li>--format: text, csv or json (default text); --output: a file to write to (default standard output); --seed (default 42).</li>
+ * </ul>
+ * With more than one thread, concurrent reads are enabled on the table, so that readers do not block and writers take turns.
+ */
+public class LoadTest
+{
+	private static final String[] OPERATION_NAMES = { "get", "put", "remove" };	// Kinds of operation, in the order of the mix
+	private static final int GET = 0;
+	private static final int PUT = 1;
+	private static final int REMOVE = 2;
+
+	private final Map<String, String> options;	// Command line options, by name
+
+
+	/**
+	 * The table under test, whichever kind it is.
+	 */
+	private interface Target
+	{
+		String get(String key);
+		String put(String key, String value);
+		String remove(String key);
+	}
+
+
+	/**
+	 * The measurements of one thread, or of every thread once merged.
+	 */
+	private static class Results
+	{
+		private final Histogram[] latencies = { new Histogram(), new Histogram(), new Histogram() };	// Nanoseconds per operation, by kind
+		private final Histogram all = new Histogram();													// Nanoseconds per operation
+
+		private void add(final Results other)
+		{
+			for (int i = 0; i < latencies.length; i++)
+			{
+				latencies[i].add(other.latencies[i]);
+			}
+			all.add(other.all);
+		}
+	}
+
+
+	/**
+	 * Constructor. Reads the options.
+	 * @param args The command line arguments, each of the form --name=value.
+	 */
+	public LoadTest(final String[] args)
+	{
+		this.options = new LinkedHashMap<String, String>();
+
+		for (String arg : args)
+		{
+			final int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0)
+			{
+				throw new IllegalArgumentException("Options must be given as --name=value: " + arg);
+			}
+			options.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+	}
+
+
+	/**
+	 * Runs the load test and writes the report.
+	 * @throws IOException If the report cannot be written.
+	 * @throws InterruptedException If interrupted while waiting for the threads.
+	 */
+	public void run() throws IOException, InterruptedException
+	{
+		final KeyDistribution distribution = KeyDistribution.fromName(option("distribution", "uniform"));
+		final int numKeys = intOption("keys", 100000);
+		final int keySize = intOption("key-size", 16);
+		final int valueSize = intOption("value-size", 16);
+		final double zipfExponent = doubleOption("zipf-exponent", 0.99);
+		final double[] mix = { doubleOption("reads", 0.8), doubleOption("writes", 0.15), doubleOption("removes", 0.05) };
+		final int numThreads = intOption("threads", 1);
+		final int numOperations = intOption("operations", 1000000);
+		final int numWarmup = intOption("warmup", 100000);
+		final long seed = Long.parseLong(option("seed", "42"));
+
+		final double totalWeight = mix[GET] + mix[PUT] + mix[REMOVE];
+		if (numKeys <= 0 || numThreads <= 0 || numOperations <= 0 || totalWeight <= 0)
+		{
+			throw new IllegalArgumentException("Keys, threads, operations and the operation mix must be positive.");
+		}
+		final double readCutoff = mix[GET] / totalWeight;
+		final double writeCutoff = (mix[GET] + mix[PUT]) / totalWeight;
+
+		final String[] keys = distribution.buildKeys(numKeys, keySize, seed);
+		final KeyDistribution.Sampler sampler = distribution.sampler(numKeys, zipfExponent);
+		final char[] valueCharacters = new char[valueSize];
+		Arrays.fill(valueCharacters, 'v');
+		final String value = new String(valueCharacters);
+		final Target target = createTarget(numThreads > 1);
+
+		if (Boolean.parseBoolean(option("preload", "true")))
+		{
+			for (String key : keys)
+			{
+				target.put(key, value);
+			}
+		}
+
+		final Results[] threadResults = new Results[numThreads];
+		final Thread[] threads = new Thread[numThreads];
+		final CountDownLatch warmedUp = new CountDownLatch(numThreads);
+		final CountDownLatch start = new CountDownLatch(1);
+
+		for (int t = 0; t < numThreads; t++)
+		{
+			final Results results = new Results();
+			final SplittableRandom rand = new SplittableRandom(seed + t + 1);
+			threadResults[t] = results;
+			threads[t] = new Thread(() ->
+			{
+				for (int i = 0; i < numWarmup; i++)
+				{
+					operate(target, keys[sampler.next(rand)], value, rand.nextDouble(), readCutoff, writeCutoff);
+				}
+
+				warmedUp.countDown();
+				awaitQuietly(start);
+
+				for (int i = 0; i < numOperations; i++)
+				{
+					final String key = keys[sampler.next(rand)];
+					final double draw = rand.nextDouble();
+					final long before = System.nanoTime();
+					final int kind = operate(target, key, value, draw, readCutoff, writeCutoff);
+					final long latency = System.nanoTime() - before;
+					results.latencies[kind].record(latency);
+					results.all.record(latency);
+				}
+			}, "LoadTest-" + t);
+			threads[t].start();
+		}
+
+		warmedUp.await();
+		final long startTime = System.nanoTime();
+		start.countDown();
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		final long elapsed = System.nanoTime() - startTime;
+
+		final Results total = new Results();
+		for (Results results : threadResults)
+		{
+			total.add(results);
+		}
+
+		final String output = options.get("output");
+		try (Writer writer = output == null ? new PrintWriter(System.out) : new FileWriter(output))
+		{
+			report(writer, total, elapsed / 1e9);
+		}
+	}
+
+
+	/**
+	 * Carries out one operation, chosen by a uniform draw against the cumulative operation mix.
+	 * @param target The table.
+	 * @param key The key to operate on.
+	 * @param value The value to put.
+	 * @param draw A uniform draw in [0, 1).
+	 * @param readCutoff The draw below which the operation is a get.
+	 * @param writeCutoff The draw below which the operation is a put, if not a get.
+	 * @return The kind of the operation.
+	 */
+	private static int operate(final Target target, final String key, final String value, final double draw, final double readCutoff,
+		final double writeCutoff)
+	{
+		if (draw < readCutoff)
+		{
+			target.get(key);
+			return GET;
+		}
+		else if (draw < writeCutoff)
+		{
+			target.put(key, value);
+			return PUT;
+		}
+		else
+		{
+			target.remove(key);
+			return REMOVE;
+		}
+	}
+
+
+	/**
+	 * Creates the table under test from the options.
+	 * @param concurrent True if several threads will use the table.
+	 * @return The table.
+	 */
+	private Target createTarget(final boolean concurrent)
+	{
+		final int numShards = intOption("shards", 0);
+		final int initialSize = intOption("initial-size", 100);
+		final char collision = option("collision", "D").charAt(0);
+		final char empty = option("empty", "A").charAt(0);
+
+		if (numShards > 0)
+		{
+			final ShardedHashTable table = new ShardedHashTable(numShards, initialSize, collision, empty);
+			if (options.containsKey("threshold"))
+			{
+				table.setRehashThreshold(doubleOption("threshold", 0));
+			}
+			table.setConcurrentReadsEnabled(concurrent);
+			return new Target()
+			{
+				public String get(final String key) { return table.get(key); }
+				public String put(final String key, final String value) { return table.put(key, value); }
+				public String remove(final String key) { return table.remove(key); }
+			};
+		}
+		else
+		{
+			final HashTable table = new HashTable(initialSize);
+			table.setCollisionHandlingScheme(collision);
+			table.setEmptyMarkerScheme(empty);
+			if (options.containsKey("threshold"))
+			{
+				table.setRehashThreshold(doubleOption("threshold", 0));
+			}
+			table.setConcurrentReadsEnabled(concurrent);
+			return new Target()
+			{
+				public String get(final String key) { return table.get(key); }
+				public String put(final String key, final String value) { return table.put(key, value); }
+				public String remove(final String key) { return table.remove(key); }
+			};
+		}
+	}
+
+
+	/**
+	 * Writes the report in the chosen format.
+	 * @param out The destination.
+	 * @param total The merged measurements.
+	 * @param seconds The time the timed operations took.
+	 * @throws IOException If the destination cannot be written.
+	 */
+	private void report(final Writer out, final Results total, final double seconds) throws IOException
+	{
+		final String format = option("format", "text");
+		final double throughput = total.all.getCount() / seconds;
+
+		if (format.equals("csv"))
+		{
+			out.write("operation,count,throughput,mean_ns,p50_ns,p90_ns,p99_ns,p999_ns,max_ns\n");
+			out.write(csvRow("all", total.all, throughput));
+			for (int kind = 0; kind < OPERATION_NAMES.length; kind++)
+			{
+				out.write(csvRow(OPERATION_NAMES[kind], total.latencies[kind], total.latencies[kind].getCount() / seconds));
+			}
+		}
+		else if (format.equals("json"))
+		{
+			final StringBuilder json = new StringBuilder("{\n  \"options\": {");
+			String separator = "";
+			for (Map.Entry<String, String> option : options.entrySet())
+			{
+				json.append(separator).append("\"").append(escape(option.getKey())).append("\": \"").append(escape(option.getValue())).append("\"");
+				separator = ", ";
+			}
+			json.append("},\n  \"seconds\": ").append(format(seconds)).append(",\n  \"throughput\": ").append(format(throughput));
+			json.append(",\n  \"latency_ns\": {\n    \"all\": ").append(jsonLatencies(total.all));
+			for (int kind = 0; kind < OPERATION_NAMES.length; kind++)
+			{
+				json.append(",\n    \"").append(OPERATION_NAMES[kind]).append("\": ").append(jsonLatencies(total.latencies[kind]));
+			}
+			json.append("\n  }\n}\n");
+			out.write(json.toString());
+		}
+		else if (format.equals("text"))
+		{
+			out.write(String.format(Locale.ROOT, "%d operations in %.3f s: %.0f operations/s%n", total.all.getCount(), seconds, throughput));
+			out.write(String.format(Locale.ROOT, "%-8s %10s %10s %10s %10s %10s %10s %12s%n", "op", "count", "mean ns", "p50", "p90", "p99", "p99.9",
+				"max"));
+			out.write(textRow("all", total.all));
+			for (int kind = 0; kind < OPERATION_NAMES.length; kind++)
+			{
+				out.write(textRow(OPERATION_NAMES[kind], total.latencies[kind]));
+			}
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unknown format " + format + "; expected text, csv or json.");
+		}
+	}
+
+
+	private static String csvRow(final String name, final Histogram h, final double throughput)
+	{
+		return String.format(Locale.ROOT, "%s,%d,%.1f,%.1f,%d,%d,%d,%d,%d%n", name, h.getCount(), throughput, h.getMean(), h.getValueAtPercentile(0.5),
+			h.getValueAtPercentile(0.9), h.getValueAtPercentile(0.99), h.getValueAtPercentile(0.999), h.getMax());
+	}
+
+
+	private static String textRow(final String name, final Histogram h)
+	{
+		return String.format(Locale.ROOT, "%-8s %10d %10.1f %10d %10d %10d %10d %12d%n", name, h.getCount(), h.getMean(), h.getValueAtPercentile(0.5),
+			h.getValueAtPercentile(0.9), h.getValueAtPercentile(0.99), h.getValueAtPercentile(0.999), h.getMax());
+	}
+
+
+	private static String jsonLatencies(final Histogram h)
+	{
+		return String.format(Locale.ROOT, "{\"count\": %d, \"mean\": %.1f, \"p50\": %d, \"p90\": %d, \"p99\": %d, \"p999\": %d, \"max\": %d}",
+			h.getCount(), h.getMean(), h.getValueAtPercentile(0.5), h.getValueAtPercentile(0.9), h.getValueAtPercentile(0.99),
+			h.getValueAtPercentile(0.999), h.getMax());
+	}
+
+
+	private static String format(final double value)
+	{
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+
+	/**
+	 * Escapes a string for a JSON string literal.
+	 * @param s The string.
+	 * @return The escaped string.
+	 */
+	private static String escape(final String s)
+	{
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+
+	private String option(final String name, final String defaultValue)
+	{
+		final String value = options.get(name);
+		return value == null ? defaultValue : value;
+	}
+
+
+	private int intOption(final String name, final int defaultValue)
+	{
+		return Integer.parseInt(option(name, Integer.toString(defaultValue)));
+	}
+
+
+	private double doubleOption(final String name, final double defaultValue)
+	{
+		return Double.parseDouble(option(name, Double.toString(defaultValue)));
+	}
+
+
+	/**
+	 * Waits for a latch to open, carrying on if interrupted.
+	 * @param latch The latch.
+	 */
+	private static void awaitQuietly(final CountDownLatch latch)
+	{
+		boolean interrupted = false;
+		while (latch.getCount() > 0)
+		{
+			try
+			{
+				latch.await();
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * Runs a load test from the command line.
+	 * @param args The options, each of the form --name=value.
+	 * @throws Exception If the test fails.
+	 */
+	public static void main(final String[] args) throws Exception
+	{
+		new LoadTest(args).run();
+	}
+}
@@ -0,0 +1,112 @@
+package metrics;
+
+import hashtable.HashTable;
+import hashtable.HashTableListener;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import prime.Prime;
+
+/**
+ * Records the events of a HashTable into a MetricsRegistry, under names starting with a given prefix: counters and duration histograms for resizes
+ * and purges, a counter and a length histogram for long probes, and gauges for the table's size, number of elements, load factor and formerly
+ * occupied positions. Extensions of the shared list of primes, which may stall the first resize to a new size range, can be recorded as well.
+ *
+ * Nothing is measured until a table is attached; a table without a listener pays nothing for metrics.
+ */
+public class HashTableMetrics implements HashTableListener
+{
+	private final LongAdder resizes;					// Number of resizes
+	private final LongAdder entriesMoved;				// Number of entries rehashed by resizes
+	private final Histogram resizeNanos;				// Duration of each resize
+	private final LongAdder purges;						// Number of purges of formerly occupied positions
+	private final LongAdder formerlyOccupiedCleared;	// Number of formerly occupied positions cleared by purges
+	private final Histogram purgeNanos;					// Duration of each purge
+	private final LongAdder longProbes;					// Number of searches at or above the long probe threshold
+	private final Histogram longProbeLength;			// Length of each long probe
+
+
+	/**
+	 * Constructor. Creates the metrics in the registry, without attaching to any table.
+	 * @param registry The registry to record into.
+	 * @param prefix The start of every metric name, such as "dictionary".
+	 */
+	public HashTableMetrics(final MetricsRegistry registry, final String prefix)
+	{
+		this.resizes = registry.counter(prefix + ".resizes");
+		this.entriesMoved = registry.counter(prefix + ".resize.entries_moved");
+		this.resizeNanos = registry.histogram(prefix + ".resize.nanos");
+		this.purges = registry.counter(prefix + ".purges");
+		this.formerlyOccupiedCleared = registry.counter(prefix + ".purge.formerly_occupied_cleared");
+		this.purgeNanos = registry.histogram(prefix + ".purge.nanos");
+		this.longProbes = registry.counter(prefix + ".long_probes");
+		this.longProbeLength = registry.histogram(prefix + ".long_probe.length");
+	}
+
+
+	/**
+	 * Records a table's events and state into a registry. Replaces the table's listener.
+	 * @param table The table.
+	 * @param registry The registry to record into.
+	 * @param prefix The start of every metric name, such as "dictionary".
+	 * @return The metrics listening to the table.
+	 */
+	public static HashTableMetrics attach(final HashTable table, final MetricsRegistry registry, final String prefix)
+	{
+		final HashTableMetrics metrics = new HashTableMetrics(registry, prefix);
+
+		registry.gauge(prefix + ".size", table::size);
+		registry.gauge(prefix + ".elements", table::getNumberOfElements);
+		registry.gauge(prefix + ".load_factor", () -> table.size() == 0 ? 0 : (double) table.getNumberOfElements() / table.size());
+		registry.gauge(prefix + ".formerly_occupied", table::getNumberOfFormerlyOccupied);
+
+		table.setListener(metrics);
+		return metrics;
+	}
+
+
+	/**
+	 * Records every extension of the shared list of primes into a registry, under names starting with "prime". Replaces any previous listener.
+	 * @param registry The registry to record into.
+	 */
+	public static void attachPrimes(final MetricsRegistry registry)
+	{
+		final LongAdder expansions = registry.counter("prime.expansions");
+		final Histogram expansionNanos = registry.histogram("prime.expansion.nanos");
+		final long[] largestPrime = { 0 };
+
+		registry.gauge("prime.largest", () -> largestPrime[0]);
+		Prime.setExpansionListener((oldLargestPrime, newLargestPrime, numPrimes, durationNanos) ->
+		{
+			expansions.increment();
+			expansionNanos.record(durationNanos);
+			largestPrime[0] = newLargestPrime;
+		});
+	}
+
+
+	@Override
+	public void resized(final int oldSize, final int newSize, final int entriesMoved, final long durationNanos)
+	{
+		resizes.increment();
+		this.entriesMoved.add(entriesMoved);
+		resizeNanos.record(durationNanos);
+	}
+
+
+	@Override
+	public void purged(final int formerlyOccupiedCleared, final long durationNanos)
+	{
+		purges.increment();
+		this.formerlyOccupiedCleared.add(formerlyOccupiedCleared);
+		purgeNanos.record(durationNanos);
+	}
+
+
+	@Override
+	public void longProbe(final int probeLength, final boolean hit)
+	{
+		longProbes.increment();
+		longProbeLength.record(probeLength);
+	}
+}
@@ -0,0 +1,186 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values, safe to record into from any number of threads. Values below 16 are counted exactly; larger values are
+ * counted in buckets eight to a power of two, so that every percentile is reported within 12.5% of the true value, whatever the range of the values.
+ * The histogram takes a fixed 4 KB and recording never allocates.
+ */
+public final class Histogram
+{
+	private static final int EXACT_VALUES = 16;										// Values below this have a bucket each
+	private static final int SUB_BUCKET_BITS = 3;									// Each power of two is split into 2^3 buckets
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int FIRST_EXPONENT = 4;									// Base 2 logarithm of EXACT_VALUES
+	private static final int NUM_BUCKETS = EXACT_VALUES + (Long.SIZE - 1 - FIRST_EXPONENT) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts;	// Number of values recorded in each bucket
+	private final AtomicLong count;			// Number of values recorded
+	private final AtomicLong sum;			// Sum of the values recorded
+	private final AtomicLong max;			// Largest value recorded
+
+
+	/**
+	 * Constructor. Creates an empty histogram.
+	 */
+	public Histogram()
+	{
+		this.counts = new AtomicLongArray(NUM_BUCKETS);
+		this.count = new AtomicLong();
+		this.sum = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 * @param value The value.
+	 */
+	public void record(final long value)
+	{
+		final long v = Math.max(value, 0);
+		counts.incrementAndGet(bucket(v));
+		count.incrementAndGet();
+		sum.addAndGet(v);
+		max.accumulateAndGet(v, Math::max);
+	}
+
+
+	/**
+	 * Adds every value recorded by another histogram to this one.
+	 * @param other The other histogram.
+	 */
+	public void add(final Histogram other)
+	{
+		for (int i = 0; i < NUM_BUCKETS; i++)
+		{
+			counts.addAndGet(i, other.counts.get(i));
+		}
+		count.addAndGet(other.count.get());
+		sum.addAndGet(other.sum.get());
+		max.accumulateAndGet(other.max.get(), Math::max);
+	}
+
+
+	/**
+	 * Forgets every value recorded.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < NUM_BUCKETS; i++)
+		{
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+
+	/**
+	 * Returns the number of values recorded.
+	 * @return The count.
+	 */
+	public long getCount()
+	{
+		return count.get();
+	}
+
+
+	/**
+	 * Returns the sum of the values recorded.
+	 * @return The sum.
+	 */
+	public long getSum()
+	{
+		return sum.get();
+	}
+
+
+	/**
+	 * Returns the largest value recorded.
+	 * @return The maximum, or 0 if nothing has been recorded.
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+
+	/**
+	 * Returns the mean of the values recorded.
+	 * @return The mean, or 0 if nothing has been recorded.
+	 */
+	public double getMean()
+	{
+		final long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+
+	/**
+	 * Estimates the value below which a given fraction of the recorded values lie.
+	 * @param fraction The fraction, between 0 and 1; 0.99 gives the 99th percentile.
+	 * @return The upper bound of the bucket holding the percentile, at most the maximum; 0 if nothing has been recorded.
+	 */
+	public long getValueAtPercentile(final double fraction)
+	{
+		if (!(0.0 <= fraction && fraction <= 1.0))
+		{
+			throw new IllegalArgumentException("Percentile must be a fraction between 0 and 1, inclusive.");
+		}
+
+		final long rank = (long) Math.ceil(fraction * count.get());
+		long seen = 0;
+
+		for (int i = 0; i < NUM_BUCKETS; i++)
+		{
+			seen += counts.get(i);
+			if (seen >= Math.max(rank, 1))
+			{
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+
+	/**
+	 * Finds the bucket of a value.
+	 * @param value The value, non-negative.
+	 * @return The index of the bucket.
+	 */
+	private static int bucket(final long value)
+	{
+		if (value < EXACT_VALUES)
+		{
+			return (int) value;
+		}
+
+		final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return EXACT_VALUES + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+	}
+
+
+	/**
+	 * Computes the largest value counted in a bucket.
+	 * @param bucket The index of the bucket.
+	 * @return The largest value of the bucket.
+	 */
+	private static long upperBound(final int bucket)
+	{
+		if (bucket < EXACT_VALUES)
+		{
+			return bucket;
+		}
+
+		final int exponent = (bucket - EXACT_VALUES) / SUB_BUCKETS + FIRST_EXPONENT;
+		final long subBucket = (bucket - EXACT_VALUES) % SUB_BUCKETS;
+		final long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return ((SUB_BUCKETS + subBucket) * width) + width - 1;
+	}
+}
@@ -0,0 +1,129 @@
+package metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A registry of named metrics: counters, which only go up; gauges, whose value is read from a supplier when exported; and histograms. Metrics are
+ * created on first use and looked up by name afterwards, so callers should keep the returned counter or histogram rather than look it up each time.
+ * Exporting reads every metric at that moment, in the plain text form "name value", one per line, sorted by name.
+ */
+public class MetricsRegistry
+{
+	private static final double[] EXPORTED_PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };	// Percentiles exported for each histogram
+
+	private final Map<String, LongAdder> counters;			// Counters by name
+	private final Map<String, DoubleSupplier> gauges;		// Gauges by name
+	private final Map<String, Histogram> histograms;		// Histograms by name
+
+
+	/**
+	 * Constructor. Creates an empty registry.
+	 */
+	public MetricsRegistry()
+	{
+		this.counters = new ConcurrentHashMap<String, LongAdder>();
+		this.gauges = new ConcurrentHashMap<String, DoubleSupplier>();
+		this.histograms = new ConcurrentHashMap<String, Histogram>();
+	}
+
+
+	/**
+	 * Returns the counter with the given name, creating it if needed.
+	 * @param name The name of the counter.
+	 * @return The counter.
+	 */
+	public LongAdder counter(final String name)
+	{
+		return counters.computeIfAbsent(name, n -> new LongAdder());
+	}
+
+
+	/**
+	 * Registers a gauge, replacing any gauge with the same name.
+	 * @param name The name of the gauge.
+	 * @param supplier Reads the gauge's current value; called on export, from the exporting thread.
+	 */
+	public void gauge(final String name, final DoubleSupplier supplier)
+	{
+		gauges.put(name, supplier);
+	}
+
+
+	/**
+	 * Returns the histogram with the given name, creating it if needed.
+	 * @param name The name of the histogram.
+	 * @return The histogram.
+	 */
+	public Histogram histogram(final String name)
+	{
+		return histograms.computeIfAbsent(name, n -> new Histogram());
+	}
+
+
+	/**
+	 * Reads every metric. A histogram is read as its count, mean, maximum and a few percentiles, named after the histogram with a suffix.
+	 * @return The value of every metric, by name.
+	 */
+	public SortedMap<String, Double> snapshot()
+	{
+		final SortedMap<String, Double> values = new TreeMap<String, Double>();
+
+		for (Map.Entry<String, LongAdder> counter : counters.entrySet())
+		{
+			values.put(counter.getKey(), (double) counter.getValue().sum());
+		}
+
+		for (Map.Entry<String, DoubleSupplier> gauge : gauges.entrySet())
+		{
+			values.put(gauge.getKey(), gauge.getValue().getAsDouble());
+		}
+
+		for (Map.Entry<String, Histogram> entry : histograms.entrySet())
+		{
+			final String name = entry.getKey();
+			final Histogram histogram = entry.getValue();
+			values.put(name + ".count", (double) histogram.getCount());
+			values.put(name + ".mean", histogram.getMean());
+			values.put(name + ".max", (double) histogram.getMax());
+			for (double percentile : EXPORTED_PERCENTILES)
+			{
+				values.put(name + ".p" + formatPercentile(percentile), (double) histogram.getValueAtPercentile(percentile));
+			}
+		}
+
+		return values;
+	}
+
+
+	/**
+	 * Writes every metric as a line "name value", sorted by name.
+	 * @param out The destination.
+	 * @throws IOException If the destination cannot be written.
+	 */
+	public void export(final Appendable out) throws IOException
+	{
+		for (Map.Entry<String, Double> value : snapshot().entrySet())
+		{
+			final double v = value.getValue();
+			out.append(value.getKey()).append(' ').append(v == Math.rint(v) ? Long.toString((long) v) : Double.toString(v)).append('\n');
+		}
+	}
+
+
+	/**
+	 * Formats a percentile for a metric name: 0.5 as "50", 0.999 as "99.9".
+	 * @param fraction The percentile, as a fraction.
+	 * @return The percentile, without trailing zeros.
+	 */
+	private static String formatPercentile(final double fraction)
+	{
+		final double percent = Math.round(fraction * 1000) / 10.0;
+		return percent == Math.rint(percent) ? Long.toString((long) percent) : Double.toString(percent);
+	}
+}
@@ -8,9 +8,26 @@ public final class Prime
 	private static final int EXPANSION_FACTOR = 2;
 	private static final int EMPTY_INDEX = -1;
 	private static final int FIRST_PRIME = 2;
+	private static final long[] MILLER_RABIN_BASES = { 2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37 };	// Exact for every long when all are tried
 	
 	private static int[] primes;
 	private static int lastIndex;
+	private static volatile ExpansionListener expansionListener;	// Told when the list of primes grows; null if none
+	
+	/**
+	 * Receives an event each time the list of primes is extended, which takes time proportional to the new primes found.
+	 */
+	public interface ExpansionListener
+	{
+		/**
+		 * Called after the list of primes has been extended.
+		 * @param oldLargestPrime The largest prime known before, or 0 if none was.
+		 * @param newLargestPrime The largest prime known now.
+		 * @param numPrimes The number of primes known now.
+		 * @param durationNanos The time the extension took, in nanoseconds.
+		 */
+		void expanded(int oldLargestPrime, int newLargestPrime, int numPrimes, long durationNanos);
+	}
 	
 	static
 	{
@@ -22,23 +39,173 @@ public final class Prime
 	
 	private Prime() {}
 	
-	public static int nextLargestPrime(final int n)
+	/**
+	 * Sets the listener told each time the list of primes is extended.
+	 * @param listener The listener, or null to stop reporting extensions.
+	 */
+	public static void setExpansionListener(final ExpansionListener listener)
+	{
+		expansionListener = listener;
+	}
+	
+	public static synchronized int nextLargestPrime(final int n)
 	{
 		generatePrimes(n);		
 		return findNextLargestPrime(n);
 	}
 	
-	public static int nextSmallestPrime(final int n)
+	public static synchronized int nextSmallestPrime(final int n)
 	{
 		generatePrimes(n);		
 		return findNextSmallestPrime(n);
 	}
 	
+	/**
+	 * Finds the smallest prime at least as large as a number, for sizes beyond the range of int. Each candidate is tested on its own with the
+	 * Miller-Rabin test, so no list of primes is kept; with the first twelve primes as bases, the test is exact for every long.
+	 * @param n The number; at most Long.MAX_VALUE - 1000.
+	 * @return The smallest prime greater than or equal to n.
+	 */
+	public static long nextLargestPrime(final long n)
+	{
+		long candidate = Math.max(n, FIRST_PRIME);
+		while (!isPrime(candidate))
+		{
+			candidate++;
+		}
+		return candidate;
+	}
+	
+	/**
+	 * Tests a number for primality with the deterministic Miller-Rabin test.
+	 * @param n The number.
+	 * @return True if and only if the number is prime.
+	 */
+	private static boolean isPrime(final long n)
+	{
+		if (n < 2)
+		{
+			return false;
+		}
+		
+		for (long base : MILLER_RABIN_BASES)	// Settles small numbers, and rules out most candidates cheaply
+		{
+			if (n % base == 0)
+			{
+				return n == base;
+			}
+		}
+		
+		long d = n - 1;		// n - 1 = d * 2^r, with d odd
+		int r = 0;
+		while ((d & 1) == 0)
+		{
+			d >>= 1;
+			r++;
+		}
+		
+		for (long base : MILLER_RABIN_BASES)
+		{
+			long x = powMod(base, d, n);
+			if (x == 1 || x == n - 1)
+			{
+				continue;
+			}
+			
+			boolean witness = true;		// The base proves n composite unless some square reaches n - 1
+			for (int i = 1; i < r && witness; i++)
+			{
+				x = mulMod(x, x, n);
+				witness = x != n - 1;
+			}
+			
+			if (witness)
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Raises a number to a power modulo another.
+	 * @param base The base, less than the modulus.
+	 * @param exponent The exponent; not negative.
+	 * @param modulus The modulus; positive.
+	 * @return base^exponent mod modulus.
+	 */
+	private static long powMod(long base, long exponent, final long modulus)
+	{
+		long result = 1;
+		while (exponent > 0)
+		{
+			if ((exponent & 1) != 0)
+			{
+				result = mulMod(result, base, modulus);
+			}
+			base = mulMod(base, base, modulus);
+			exponent >>= 1;
+		}
+		return result;
+	}
+	
+	/**
+	 * Multiplies two numbers modulo another, without overflowing: directly if both factors fit in 31 bits, by doubling and adding otherwise.
+	 * @param a The first factor, less than the modulus.
+	 * @param b The second factor, less than the modulus.
+	 * @param modulus The modulus; positive.
+	 * @return a * b mod modulus.
+	 */
+	private static long mulMod(long a, long b, final long modulus)
+	{
+		if (((a | b) >>> 31) == 0)
+		{
+			return a * b % modulus;
+		}
+		
+		long result = 0;
+		while (b > 0)
+		{
+			if ((b & 1) != 0)
+			{
+				result = addMod(result, a, modulus);
+			}
+			a = addMod(a, a, modulus);
+			b >>= 1;
+		}
+		return result;
+	}
+	
+	/**
+	 * Adds two numbers modulo another, without overflowing.
+	 * @param a The first term, less than the modulus.
+	 * @param b The second term, less than the modulus.
+	 * @param modulus The modulus; positive.
+	 * @return a + b mod modulus.
+	 */
+	private static long addMod(final long a, final long b, final long modulus)
+	{
+		return a >= modulus - b ? a - (modulus - b) : a + b;
+	}
+	
 	private static void generatePrimes(final int n)
 	{
-		while (isEmpty() || lastPrime() <= n)
+		if (isEmpty() || lastPrime() <= n)
 		{
-			addNextPrime();
+			final ExpansionListener listener = expansionListener;
+			final int oldLargestPrime = isEmpty() ? 0 : lastPrime();
+			final long start = listener == null ? 0 : System.nanoTime();
+			
+			while (isEmpty() || lastPrime() <= n)
+			{
+				addNextPrime();
+			}
+			
+			if (listener != null)
+			{
+				listener.expanded(oldLargestPrime, lastPrime(), lastIndex + 1, System.nanoTime() - start);
+			}
 		}
 	}
 	
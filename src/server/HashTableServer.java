@@ -0,0 +1,417 @@
+package server;
+
+import hashtable.HashTable;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Scanner;
+
+/**
+ * The HashTableServer class serves a HashTable to other processes on the same host, over loopback TCP, using the binary protocol described in Protocol.
+ * A single thread runs an NIO selector loop over every connection. Each time a connection becomes readable, every complete request in its buffer is
+ * answered and the responses are sent back together, so pipelined and batched requests cost one read and one write per batch rather than per request.
+ * GET requests for ASCII keys are looked up directly in the receive buffer, without creating a string.
+ *
+ * As the loop thread is the table's only user, the table needs no locking, as long as no other thread updates it while the server runs.
+ */
+public class HashTableServer implements Closeable
+{
+	private static final int BUFFER_SIZE = 1 << 16;				// Initial size of each connection's buffers
+	private static final int MAX_PENDING_OUTPUT = 1 << 22;		// Bytes of unsent responses at which a connection's requests stop being read
+	private static final int HEADER_LENGTH = 1 + Integer.BYTES;	// Operation byte and key length
+
+	private final HashTable table;				// The table served
+	private final Selector selector;			// Watches the listening socket and the connections
+	private final ServerSocketChannel listener;	// Accepts connections on the loopback interface
+
+
+	/**
+	 * Per-connection state: the bytes received but not yet answered, and the responses not yet sent.
+	 */
+	private static class Connection
+	{
+		private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);	// In write mode
+		private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);	// In write mode
+	}
+
+
+	/**
+	 * Constructor. Binds a server for the given table to a port on the loopback interface. The server does not accept connections until run() is called.
+	 * @param table The table to serve.
+	 * @param port The port to listen on, or 0 for any free port.
+	 * @throws IOException If the port cannot be bound.
+	 */
+	public HashTableServer(final HashTable table, final int port) throws IOException
+	{
+		this.table = table;
+		this.selector = Selector.open();
+		this.listener = ServerSocketChannel.open();
+		listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		listener.configureBlocking(false);
+		listener.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+
+	/**
+	 * Returns the port the server listens on.
+	 * @return The port.
+	 * @throws IOException If the server has been closed.
+	 */
+	public int getPort() throws IOException
+	{
+		return ((InetSocketAddress) listener.getLocalAddress()).getPort();
+	}
+
+
+	/**
+	 * Runs the selector loop on the calling thread until the server is closed.
+	 * @throws IOException If the selector fails.
+	 */
+	public void run() throws IOException
+	{
+		try
+		{
+			while (selector.isOpen())
+			{
+				selector.select();
+
+				final Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+				while (selected.hasNext())
+				{
+					final SelectionKey key = selected.next();
+					selected.remove();
+
+					try
+					{
+						if (key.isAcceptable())
+						{
+							accept();
+						}
+						else
+						{
+							if (key.isReadable())
+							{
+								read(key);
+							}
+							if (key.isValid() && key.isWritable())
+							{
+								write(key);
+							}
+						}
+					}
+					catch (IOException | RuntimeException e)
+					{
+						disconnect(key);	// A broken or misbehaving client only loses its own connection
+					}
+				}
+			}
+		}
+		catch (ClosedSelectorException e)
+		{
+			// Closed by another thread
+		}
+	}
+
+
+	/**
+	 * Stops the server, closing every connection.
+	 * @throws IOException If the listening socket cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		for (SelectionKey key : selector.keys())
+		{
+			key.channel().close();
+		}
+		selector.close();
+		listener.close();
+	}
+
+
+	/**
+	 * Accepts a pending connection and starts watching it for requests.
+	 * @throws IOException If the connection cannot be set up.
+	 */
+	private void accept() throws IOException
+	{
+		final SocketChannel channel = listener.accept();
+		if (channel != null)
+		{
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);	// Responses are already batched; do not delay them further
+			channel.register(selector, SelectionKey.OP_READ, new Connection());
+		}
+	}
+
+
+	/**
+	 * Reads what a connection has sent, answers every complete request, and starts sending the responses.
+	 * @param key The connection's selection key.
+	 * @throws IOException If the connection fails or sends a malformed request.
+	 */
+	private void read(final SelectionKey key) throws IOException
+	{
+		final Connection connection = (Connection) key.attachment();
+
+		if (((SocketChannel) key.channel()).read(connection.in) < 0)
+		{
+			disconnect(key);
+			return;
+		}
+
+		answerRequests(connection);
+		write(key);
+	}
+
+
+	/**
+	 * Sends as many pending responses as the connection accepts, then watches for room to send the rest, if any. Stops reading requests while too many
+	 * responses are unsent, so that a client that does not read cannot exhaust the server's memory.
+	 * @param key The connection's selection key.
+	 * @throws IOException If the connection fails.
+	 */
+	private void write(final SelectionKey key) throws IOException
+	{
+		final Connection connection = (Connection) key.attachment();
+
+		send(key, connection);
+		if (connection.out.position() < MAX_PENDING_OUTPUT && connection.in.position() >= HEADER_LENGTH)
+		{
+			answerRequests(connection);	// Requests held back while too many responses were unsent
+			send(key, connection);
+		}
+
+		final int pendingOutput = connection.out.position();
+		key.interestOps((pendingOutput > 0 ? SelectionKey.OP_WRITE : 0) | (pendingOutput < MAX_PENDING_OUTPUT ? SelectionKey.OP_READ : 0));
+	}
+
+
+	/**
+	 * Sends as many of a connection's pending responses as it accepts without blocking.
+	 * @param key The connection's selection key.
+	 * @param connection The connection.
+	 * @throws IOException If the connection fails.
+	 */
+	private static void send(final SelectionKey key, final Connection connection) throws IOException
+	{
+		connection.out.flip();
+		((SocketChannel) key.channel()).write(connection.out);
+		connection.out.compact();
+	}
+
+
+	/**
+	 * Answers every complete request in a connection's receive buffer, appending the responses to its send buffer. An incomplete request at the end of
+	 * the buffer is kept for the next read, growing the buffer if it cannot hold it whole.
+	 * @param connection The connection.
+	 */
+	private void answerRequests(final Connection connection)
+	{
+		final ByteBuffer in = connection.in;
+		in.flip();
+
+		while (in.remaining() >= HEADER_LENGTH && connection.out.position() < MAX_PENDING_OUTPUT)
+		{
+			final int start = in.position();
+			final byte operation = in.get(start);
+			final int keyLength = checkLength(in.getInt(start + 1));
+			final int keyOffset = start + HEADER_LENGTH;
+			int end = keyOffset + keyLength;
+			int valueLength = 0;
+
+			if (operation == Protocol.PUT)
+			{
+				if (in.limit() < end + Integer.BYTES)
+				{
+					reserve(connection, end + Integer.BYTES - start);
+					break;
+				}
+				valueLength = checkLength(in.getInt(end));
+				end += Integer.BYTES + valueLength;
+			}
+			else if (operation != Protocol.GET && operation != Protocol.DEL)
+			{
+				throw new IllegalArgumentException("Unknown operation " + operation + ".");
+			}
+
+			if (in.limit() < end)
+			{
+				reserve(connection, end - start);
+				break;
+			}
+
+			respond(connection, answer(operation, in, keyOffset, keyLength, valueLength));
+			in.position(end);
+		}
+
+		if (connection.in == in)	// Unless reserve replaced the buffer, keep the incomplete request for the next read
+		{
+			in.compact();
+		}
+	}
+
+
+	/**
+	 * Carries out a request against the table.
+	 * @param operation The operation.
+	 * @param in The receive buffer holding the request.
+	 * @param keyOffset The index of the key's first byte.
+	 * @param keyLength The number of bytes of the key.
+	 * @param valueLength The number of bytes of a PUT's value, which follow the key and its length.
+	 * @return The value to send back, or null if there is none.
+	 */
+	private String answer(final byte operation, final ByteBuffer in, final int keyOffset, final int keyLength, final int valueLength)
+	{
+		if (operation == Protocol.GET)
+		{
+			// An ASCII key reads the same as ISO-8859-1, which the table can look up in place
+			return Protocol.isAscii(in, keyOffset, keyLength)
+				? table.get(in, keyOffset, keyLength)
+				: table.get(Protocol.getString(in, keyOffset, keyLength));
+		}
+
+		final String key = Protocol.getString(in, keyOffset, keyLength);
+
+		if (operation == Protocol.PUT)
+		{
+			return table.put(key, Protocol.getString(in, keyOffset + keyLength + Integer.BYTES, valueLength));
+		}
+		else
+		{
+			return table.remove(key);
+		}
+	}
+
+
+	/**
+	 * Appends a response to a connection's send buffer, growing the buffer if needed.
+	 * @param connection The connection.
+	 * @param value The value to send back, or null if there is none.
+	 */
+	private static void respond(final Connection connection, final String value)
+	{
+		if (value == null)
+		{
+			ensureRoom(connection, 1);
+			connection.out.put(Protocol.MISSING);
+		}
+		else
+		{
+			ensureRoom(connection, 1 + Protocol.maxEncodedLength(value));
+			connection.out.put(Protocol.FOUND);
+			Protocol.putString(connection.out, value);
+		}
+	}
+
+
+	/**
+	 * Makes sure a connection's send buffer has room for a number of bytes.
+	 * @param connection The connection.
+	 * @param room The number of bytes.
+	 */
+	private static void ensureRoom(final Connection connection, final int room)
+	{
+		if (connection.out.remaining() < room)
+		{
+			final ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * connection.out.capacity(), connection.out.position() + room));
+			connection.out.flip();
+			larger.put(connection.out);
+			connection.out = larger;
+		}
+	}
+
+
+	/**
+	 * Makes sure a connection's receive buffer can hold an incomplete request whole, moving the request to the start of a larger buffer if needed.
+	 * @param connection The connection; its receive buffer is in read mode, positioned at the request.
+	 * @param requestLength The length of the request, in bytes.
+	 */
+	private static void reserve(final Connection connection, final int requestLength)
+	{
+		if (requestLength > connection.in.capacity())
+		{
+			final ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * connection.in.capacity(), requestLength));
+			larger.put(connection.in);
+			connection.in = larger;
+		}
+	}
+
+
+	/**
+	 * Checks a key or value length read from a request.
+	 * @param length The length.
+	 * @return The length, if it is valid.
+	 */
+	private static int checkLength(final int length)
+	{
+		if (length < 0 || length > Protocol.MAX_STRING_LENGTH)
+		{
+			throw new IllegalArgumentException("Invalid string length " + length + ".");
+		}
+		return length;
+	}
+
+
+	/**
+	 * Closes a connection and stops watching it.
+	 * @param key The connection's selection key.
+	 */
+	private static void disconnect(final SelectionKey key)
+	{
+		key.cancel();
+		try
+		{
+			key.channel().close();
+		}
+		catch (IOException e)
+		{
+			// The connection is gone either way
+		}
+	}
+
+
+	/**
+	 * Runs a server from the command line. Arguments: the port to listen on (default 7379), then any number of files whose words are loaded as entries
+	 * with the same key and value before serving.
+	 * @param args The command line arguments.
+	 * @throws IOException If the port cannot be bound.
+	 */
+	public static void main(final String[] args) throws IOException
+	{
+		final int port = args.length > 0 ? Integer.parseInt(args[0]) : 7379;
+		final HashTable table = new HashTable();
+
+		for (int i = 1; i < args.length; i++)
+		{
+			try (Scanner input = new Scanner(new FileReader(args[i])))
+			{
+				while (input.hasNext())
+				{
+					table.put(input.next());
+				}
+			}
+			catch (FileNotFoundException e)
+			{
+				e.printStackTrace();
+			}
+		}
+
+		try (HashTableServer server = new HashTableServer(table, port))
+		{
+			System.out.println("Serving " + table.getNumberOfElements() + " entries on port " + server.getPort());
+			server.run();
+		}
+	}
+}
@@ -0,0 +1,314 @@
+package server;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * The LoadClient class measures the throughput and latency of a HashTableServer on the same host. It loads a set of keys into the server, then opens a
+ * number of connections, each on its own thread, that send batches of pipelined GET and PUT requests and wait for their responses. Reports the
+ * requests served per second and percentiles of the round-trip time of a batch.
+ */
+public class LoadClient implements Closeable
+{
+	private static final int BUFFER_SIZE = 1 << 16;	// Initial size of each connection's buffers
+
+	private final SocketChannel channel;	// Blocking connection to the server
+	private ByteBuffer out;					// Requests being built, in write mode
+	private ByteBuffer in;					// Responses received, in write mode
+	private int numRequests;				// Requests in the current batch
+
+
+	/**
+	 * Constructor. Connects to a server on the loopback interface.
+	 * @param port The server's port.
+	 * @throws IOException If the connection cannot be made.
+	 */
+	public LoadClient(final int port) throws IOException
+	{
+		this.channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		channel.socket().setTcpNoDelay(true);
+		this.out = ByteBuffer.allocate(BUFFER_SIZE);
+		this.in = ByteBuffer.allocate(BUFFER_SIZE);
+		this.numRequests = 0;
+	}
+
+
+	/**
+	 * Adds a GET request to the current batch.
+	 * @param key The key to look up.
+	 */
+	public void get(final String key)
+	{
+		request(Protocol.GET, key, null);
+	}
+
+
+	/**
+	 * Adds a PUT request to the current batch.
+	 * @param key The key of the entry.
+	 * @param value The value of the entry.
+	 */
+	public void put(final String key, final String value)
+	{
+		request(Protocol.PUT, key, value);
+	}
+
+
+	/**
+	 * Adds a DEL request to the current batch.
+	 * @param key The key of the entry to remove.
+	 */
+	public void remove(final String key)
+	{
+		request(Protocol.DEL, key, null);
+	}
+
+
+	/**
+	 * Sends the current batch in a single write and reads every response.
+	 * @param values Receives the value of each response, or null for MISSING; may be null if the values are not needed.
+	 * @return The number of FOUND responses.
+	 * @throws IOException If the connection fails.
+	 */
+	public int flush(final List<String> values) throws IOException
+	{
+		out.flip();
+		while (out.hasRemaining())
+		{
+			channel.write(out);
+		}
+		out.clear();
+
+		int found = 0;
+		for (int i = 0; i < numRequests; i++)
+		{
+			fill(1);
+			if (in.get(0) == Protocol.FOUND)
+			{
+				fill(1 + Integer.BYTES);
+				final int length = in.getInt(1);
+				fill(1 + Integer.BYTES + length);
+				if (values != null)
+				{
+					values.add(Protocol.getString(in, 1 + Integer.BYTES, length));
+				}
+				consume(1 + Integer.BYTES + length);
+				found++;
+			}
+			else
+			{
+				if (values != null)
+				{
+					values.add(null);
+				}
+				consume(1);
+			}
+		}
+
+		numRequests = 0;
+		return found;
+	}
+
+
+	/**
+	 * Closes the connection.
+	 * @throws IOException If the connection cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+
+	/**
+	 * Encodes a request into the current batch.
+	 * @param operation The operation.
+	 * @param key The key.
+	 * @param value The value of a PUT, null otherwise.
+	 */
+	private void request(final byte operation, final String key, final String value)
+	{
+		final int room = 1 + Protocol.maxEncodedLength(key) + (value == null ? 0 : Protocol.maxEncodedLength(value));
+		if (out.remaining() < room)
+		{
+			final ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * out.capacity(), out.position() + room));
+			out.flip();
+			larger.put(out);
+			out = larger;
+		}
+
+		out.put(operation);
+		Protocol.putString(out, key);
+		if (value != null)
+		{
+			Protocol.putString(out, value);
+		}
+		numRequests++;
+	}
+
+
+	/**
+	 * Reads from the server until at least a number of bytes are buffered.
+	 * @param length The number of bytes.
+	 * @throws IOException If the connection fails or closes.
+	 */
+	private void fill(final int length) throws IOException
+	{
+		if (in.capacity() < length)
+		{
+			final ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * in.capacity(), length));
+			in.flip();
+			larger.put(in);
+			in = larger;
+		}
+
+		while (in.position() < length)
+		{
+			if (channel.read(in) < 0)
+			{
+				throw new IOException("Server closed the connection.");
+			}
+		}
+	}
+
+
+	/**
+	 * Drops a number of bytes from the start of the receive buffer.
+	 * @param length The number of bytes.
+	 */
+	private void consume(final int length)
+	{
+		in.flip();
+		in.position(length);
+		in.compact();
+	}
+
+
+	/**
+	 * Runs a load test from the command line. Arguments, all optional: the server's port (default 7379), the number of connections (default 4), the
+	 * number of requests per batch (default 64), the number of batches per connection (default 1000), the fraction of requests that are GETs
+	 * (default 0.9), and a file of words to use as keys (default hash_test_file1.txt).
+	 * @param args The command line arguments.
+	 * @throws Exception If a connection fails.
+	 */
+	public static void main(final String[] args) throws Exception
+	{
+		final int port = args.length > 0 ? Integer.parseInt(args[0]) : 7379;
+		final int numConnections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		final int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+		final int numBatches = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+		final double getFraction = args.length > 4 ? Double.parseDouble(args[4]) : 0.9;
+		final String keyFile = args.length > 5 ? args[5] : "hash_test_file1.txt";
+
+		final List<String> keys = new ArrayList<>();
+		try (Scanner input = new Scanner(new FileReader(keyFile)))
+		{
+			while (input.hasNext())
+			{
+				keys.add(input.next());
+			}
+		}
+		catch (FileNotFoundException e)
+		{
+			e.printStackTrace();
+			return;
+		}
+
+		// Load every key, in large batches
+		final LoadClient loader = new LoadClient(port);
+		for (int i = 0; i < keys.size(); i++)
+		{
+			loader.put(keys.get(i), keys.get(i));
+			if (i % 1024 == 1023 || i == keys.size() - 1)
+			{
+				loader.flush(null);
+			}
+		}
+		loader.close();
+
+		final long[][] latencies = new long[numConnections][numBatches];
+		final Thread[] threads = new Thread[numConnections];
+		final long start = System.nanoTime();
+
+		for (int c = 0; c < numConnections; c++)
+		{
+			final long[] connectionLatencies = latencies[c];
+			final long seed = c;
+			threads[c] = new Thread(() ->
+			{
+				final Random rand = new Random(seed);
+				try
+				{
+					final LoadClient client = new LoadClient(port);
+					for (int b = 0; b < numBatches; b++)
+					{
+						for (int r = 0; r < batchSize; r++)
+						{
+							final String key = keys.get(rand.nextInt(keys.size()));
+							if (rand.nextDouble() < getFraction)
+							{
+								client.get(key);
+							}
+							else
+							{
+								client.put(key, key);
+							}
+						}
+
+						final long batchStart = System.nanoTime();
+						client.flush(null);
+						connectionLatencies[b] = System.nanoTime() - batchStart;
+					}
+					client.close();
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+				}
+			});
+			threads[c].start();
+		}
+
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		final long[] all = new long[numConnections * numBatches];
+		for (int c = 0; c < numConnections; c++)
+		{
+			System.arraycopy(latencies[c], 0, all, c * numBatches, numBatches);
+		}
+		Arrays.sort(all);
+
+		System.out.println("Connections: " + numConnections + ", requests per batch: " + batchSize + ", batches per connection: " + numBatches);
+		System.out.printf("Throughput: %.0f requests/s%n", (double) numConnections * numBatches * batchSize / seconds);
+		System.out.printf("Batch round trip: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n", percentile(all, 0.5) / 1e3,
+			percentile(all, 0.99) / 1e3, percentile(all, 0.999) / 1e3, all[all.length - 1] / 1e3);
+	}
+
+
+	/**
+	 * Reads a percentile from sorted samples.
+	 * @param sorted The samples, in increasing order.
+	 * @param fraction The percentile, as a fraction.
+	 * @return The sample at the percentile.
+	 */
+	private static long percentile(final long[] sorted, final double fraction)
+	{
+		return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+	}
+}
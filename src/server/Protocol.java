@@ -0,0 +1,107 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary protocol spoken between HashTableServer and its clients. Every request is answered by exactly one response, in order, so a client may send
+ * any number of requests before reading their responses (pipelining), and may pack many requests into a single write (batching).
+ *
+ * A request is an operation byte followed by the key, as a 4-byte length and its UTF-8 bytes; a PUT then carries the value in the same form. A
+ * response is a status byte: FOUND is followed by a value, as a 4-byte length and its UTF-8 bytes, and MISSING by nothing. GET answers with the value,
+ * PUT with the value it replaced, and DEL with the value it removed. All integers are big-endian.
+ */
+final class Protocol
+{
+	static final byte GET = 1;						// Look up a key
+	static final byte PUT = 2;						// Add or replace an entry
+	static final byte DEL = 3;						// Remove an entry
+
+	static final byte FOUND = 0;					// A value follows
+	static final byte MISSING = 1;					// There was no entry with the key
+
+	static final int MAX_STRING_LENGTH = 1 << 20;	// Longest key or value accepted, in bytes; longer lengths are taken as a broken stream
+
+	private Protocol() {}
+
+
+	/**
+	 * Writes a string as a length and its UTF-8 bytes. ASCII strings, by far the most common, are copied a character at a time without creating an
+	 * array.
+	 * @param out The buffer to write to; must have room for 4 bytes plus three bytes per character.
+	 * @param string The string.
+	 */
+	static void putString(final ByteBuffer out, final String string)
+	{
+		final int lengthPosition = out.position();
+		out.putInt(0);		// Length, filled in below
+
+		int i = 0;
+		while (i < string.length() && string.charAt(i) < 0x80)
+		{
+			out.put((byte) string.charAt(i++));
+		}
+
+		if (i < string.length())	// Not ASCII; start over with the general encoder
+		{
+			out.position(lengthPosition + Integer.BYTES);
+			out.put(string.getBytes(StandardCharsets.UTF_8));
+		}
+
+		out.putInt(lengthPosition, out.position() - lengthPosition - Integer.BYTES);
+	}
+
+
+	/**
+	 * Computes the room putString may need for a string.
+	 * @param string The string.
+	 * @return The maximum number of bytes written.
+	 */
+	static int maxEncodedLength(final String string)
+	{
+		return Integer.BYTES + 3 * string.length();
+	}
+
+
+	/**
+	 * Reads a range of a buffer as a UTF-8 string.
+	 * @param in The buffer.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @return The string.
+	 */
+	static String getString(final ByteBuffer in, final int offset, final int length)
+	{
+		if (in.hasArray())
+		{
+			return new String(in.array(), in.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+		}
+
+		final byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+		{
+			bytes[i] = in.get(offset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * Checks whether a range of a buffer is pure ASCII, in which case its UTF-8 and ISO-8859-1 readings are the same string.
+	 * @param in The buffer.
+	 * @param offset The index of the first byte.
+	 * @param length The number of bytes.
+	 * @return True if and only if every byte of the range is below 0x80.
+	 */
+	static boolean isAscii(final ByteBuffer in, final int offset, final int length)
+	{
+		for (int i = offset; i < offset + length; i++)
+		{
+			if (in.get(i) < 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}